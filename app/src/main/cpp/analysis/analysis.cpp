@@ -1,64 +1,230 @@
 #include <jni.h>
 #include <math.h>
+#include <stdint.h>
+#include <string.h>
+#include <atomic>
+#include <map>
+#include <memory>
+#include <mutex>
+#include <utility>
+#include <vector>
 #include "../fftw3/api/fftw3.h"
 
-extern "C" {
+//Plan cache for the FFT based functions
+//Creating an FFTW plan is much more expensive than executing it, so we keep the plans for the last
+//few transform sizes around together with aligned buffers they have been created for.
+//New plans are created with FFTW_ESTIMATE, so a new size does not stall the analysis. Once the
+//measurement stops, improvePlans() creates FFTW_MEASURE plans for these sizes and saves them as
+//wisdom, which is loaded at startup, so subsequent runs get the measured plans right away.
+//The FFTW planner is global and not thread-safe, so measuring a plan needs the plannerLock. To
+//keep a measurement that is restarted right away from waiting for improvePlans(), each plan is
+//measured within a time limit and improvePlans() gives up as soon as the analysis has needed the
+//planner again. Plans that are no longer in the cache are destroyed by the next thread that holds
+//the plannerLock anyway, so evicting a plan never waits for the planner.
 
-    JNIEXPORT void JNICALL Java_de_rwth_1aachen_phyphox_Analysis_nativePower(JNIEnv *env, jobject obj, jdoubleArray a, jdoubleArray b) {
-        int n = env->GetArrayLength(a);
-        int m = env->GetArrayLength(b);
-        int nm;
-        if (n > m)
-            nm = n;
-        else
-            nm = m;
-        jdouble *x = env->GetDoubleArrayElements(a, 0);
-        jdouble *y = env->GetDoubleArrayElements(b, 0);
+namespace {
 
-        double base = 0.;
-        double exponent = 1.;
-        for (int i = 0; i < nm; i++) {
-            if (i < n)
-                base = x[i];
-            if (i < m)
-                exponent = y[i];
-            if (n > m)
-                x[i] = pow(base, exponent);
-            else
-                y[i] = pow(base, exponent);
+    enum PlanType {
+        COMPLEX, //In-place complex dft on a (2n floats)
+        REAL, //In-place r2r (halfcomplex) forward and backward transforms on a, b only used as second input
+        REAL_TO_COMPLEX //In-place r2c dft on a (n real values in, n/2+1 complex values out)
+    };
+
+    const size_t MAX_PLANS = 8;
+    const double MEASURE_TIME_LIMIT = 0.2; //Maximum time in s to measure a single plan in improvePlans()
+
+    std::recursive_mutex plannerLock; //The FFTW planner (including fftwf_destroy_plan) is not thread-safe
+    std::mutex cacheLock;
+    std::atomic<bool> plannerWanted(false); //Set when the analysis needs a new plan, so improvePlans() stops
+
+    struct Plan {
+        std::mutex lock; //Held while the buffers are in use
+        PlanType type;
+        int n;
+        bool measured = false;
+        float *a = nullptr;
+        float *b = nullptr;
+        fftwf_plan forward = nullptr;
+        fftwf_plan backward = nullptr;
+        unsigned long lastUse = 0;
+
+        Plan(PlanType type, int n) : type(type), n(n) {
         }
 
-        env->ReleaseDoubleArrayElements(a, x, 0);
-        env->ReleaseDoubleArrayElements(b, y, 0);
+        ~Plan() { //Requires the plannerLock (see retirePlan())
+            if (forward)
+                fftwf_destroy_plan(forward);
+            if (backward)
+                fftwf_destroy_plan(backward);
+            fftwf_free(a);
+            fftwf_free(b);
+        }
+
+        bool create(unsigned flags) {
+            std::lock_guard<std::recursive_mutex> planner(plannerLock);
+            if (forward)
+                fftwf_destroy_plan(forward);
+            if (backward)
+                fftwf_destroy_plan(backward);
+            forward = nullptr;
+            backward = nullptr;
+            if (type == COMPLEX) {
+                if (!a)
+                    a = fftwf_alloc_real(2 * (size_t) n);
+                forward = fftwf_plan_dft_1d(n, (fftwf_complex *) a, (fftwf_complex *) a, FFTW_FORWARD, flags);
+            } else if (type == REAL_TO_COMPLEX) {
+                if (!a)
+                    a = fftwf_alloc_real(2 * ((size_t) n / 2 + 1)); //Padded for the in-place output
+                forward = fftwf_plan_dft_r2c_1d(n, a, (fftwf_complex *) a, flags);
+            } else {
+                if (!a)
+                    a = fftwf_alloc_real((size_t) n);
+                if (!b)
+                    b = fftwf_alloc_real((size_t) n);
+                forward = fftwf_plan_r2r_1d(n, a, a, FFTW_R2HC, flags);
+                backward = fftwf_plan_r2r_1d(n, a, a, FFTW_HC2R, flags);
+            }
+            return a && forward && (type != REAL || (b && backward));
+        }
+    };
+
+    std::map<std::pair<int, int>, std::shared_ptr<Plan>> plans;
+    unsigned long useCounter = 0;
+
+    std::mutex retiredLock;
+    std::vector<Plan *> retired; //Plans that are no longer used, but still have to be destroyed
+
+    //Deleter of the plans. The last user of a plan might be an analysis thread, which should not
+    //wait for the plannerLock, so the plan is only destroyed with the next destroyRetired().
+    void retirePlan(Plan *plan) {
+        std::lock_guard<std::mutex> guard(retiredLock);
+        retired.push_back(plan);
+    }
+
+    //Requires the plannerLock
+    void destroyRetired() {
+        std::vector<Plan *> unused;
+        {
+            std::lock_guard<std::mutex> guard(retiredLock);
+            unused.swap(retired);
+        }
+        for (Plan *plan : unused)
+            delete plan;
     }
 
-    JNIEXPORT void JNICALL Java_de_rwth_1aachen_phyphox_Analysis_fftw3complex(JNIEnv *env, jobject obj, jfloatArray xy, jint n) {
-        jfloat *a = env->GetFloatArrayElements(xy, 0);
-        fftwf_complex *fftwa = (fftwf_complex*)a;
+    //Requires the plannerLock
+    std::shared_ptr<Plan> newPlan(PlanType type, int n, bool measure) {
+        destroyRetired();
+        std::shared_ptr<Plan> plan(new Plan(type, n), retirePlan);
+        if (measure) {
+            //With a time limit, FFTW starts with an estimated plan and only keeps the measured one
+            //(and its wisdom) if the measurement finishes in time
+            fftwf_set_timelimit(MEASURE_TIME_LIMIT);
+            bool created = plan->create(FFTW_MEASURE);
+            fftwf_set_timelimit(FFTW_NO_TIMELIMIT);
+            if (!created)
+                return nullptr;
+        }
+        //Use a measured plan from the wisdom if available, but do not measure now
+        plan->measured = plan->create(FFTW_MEASURE | FFTW_WISDOM_ONLY);
+        if (!plan->measured && !plan->create(FFTW_ESTIMATE))
+            return nullptr;
+        return plan;
+    }
+
+    std::shared_ptr<Plan> getPlan(PlanType type, int n) {
+        std::pair<int, int> key(type, n);
+        {
+            std::lock_guard<std::mutex> cache(cacheLock);
+            auto it = plans.find(key);
+            if (it != plans.end()) {
+                it->second->lastUse = ++useCounter;
+                return it->second;
+            }
+        }
 
-        fftwf_plan p;
-        p = fftwf_plan_dft_1d(n, fftwa, fftwa, FFTW_FORWARD, FFTW_ESTIMATE);
-        fftwf_execute(p);
-        fftwf_destroy_plan(p);
+        plannerWanted = true;
+        std::shared_ptr<Plan> plan;
+        {
+            std::lock_guard<std::recursive_mutex> planner(plannerLock);
+            plan = newPlan(type, n, false);
+        }
+        if (!plan)
+            return nullptr;
 
-        env->ReleaseFloatArrayElements(xy, a, 0);
+        std::shared_ptr<Plan> evicted;
+        std::lock_guard<std::mutex> cache(cacheLock);
+        auto it = plans.find(key);
+        if (it != plans.end()) //Another thread has been faster
+            return it->second;
+        if (plans.size() >= MAX_PLANS) {
+            auto oldest = plans.begin();
+            for (auto candidate = plans.begin(); candidate != plans.end(); candidate++) {
+                if (candidate->second->lastUse < oldest->second->lastUse)
+                    oldest = candidate;
+            }
+            evicted = oldest->second; //Still valid for a thread which is currently using it
+            plans.erase(oldest);
+        }
+        plan->lastUse = ++useCounter;
+        plans[key] = plan;
+        return plan;
     }
 
-    JNIEXPORT void JNICALL Java_de_rwth_1aachen_phyphox_Analysis_fftw3crosscorrelation(JNIEnv *env, jobject obj, jfloatArray x, jfloatArray y, jint n) {
-        jfloat *a = env->GetFloatArrayElements(x, 0);
-        jfloat *b = env->GetFloatArrayElements(y, 0);
+    void improvePlans() {
+        plannerWanted = false;
+        std::vector<std::pair<int, int>> keys;
+        {
+            std::lock_guard<std::mutex> cache(cacheLock);
+            for (auto &entry : plans) {
+                if (!entry.second->measured)
+                    keys.push_back(entry.first);
+            }
+        }
+        for (auto &key : keys) {
+            if (plannerWanted)
+                return; //The measurement has been restarted. The remaining plans are improved at the next stop.
+            std::shared_ptr<Plan> plan;
+            {
+                std::lock_guard<std::recursive_mutex> planner(plannerLock);
+                plan = newPlan((PlanType) key.first, key.second, true);
+            }
+            if (!plan || !plan->measured)
+                continue; //Out of time, try again at the next stop
+            std::shared_ptr<Plan> replaced;
+            std::lock_guard<std::mutex> cache(cacheLock);
+            auto it = plans.find(key);
+            if (it != plans.end()) {
+                plan->lastUse = it->second->lastUse;
+                replaced = it->second;
+                it->second = plan;
+            }
+        }
+    }
+}
+
+//The analysis modules hand their data to the native functions in direct buffers, which they keep
+//between cycles, so nothing is copied across JNI. If a buffer is aligned like the buffers a plan has
+//been created for, the plan is executed directly on it. Otherwise the data is copied to the buffers
+//of the plan, which have to be locked while in use.
+
+namespace {
+
+    const uintptr_t BUFFER_ALIGNMENT = 32; //Enough for any SIMD instructions used by FFTW
 
+    bool canExecuteOn(Plan &plan, float *data) {
+        return fftwf_alignment_of(data) == fftwf_alignment_of(plan.a);
+    }
+
+    void crosscorrelation(Plan &plan, float *a, float *b, int n) {
         float n2 = (float)n*(float)n;
 
-        fftwf_plan pa, pb, pr;
-        pa = fftwf_plan_r2r_1d(n, a, a, FFTW_R2HC, FFTW_ESTIMATE);
-        pb = fftwf_plan_r2r_1d(n, b, b, FFTW_R2HC, FFTW_ESTIMATE);
-        fftwf_execute(pa);
-        fftwf_execute(pb);
+        fftwf_execute_r2r(plan.forward, a, a);
+        fftwf_execute_r2r(plan.forward, b, b);
         float c, d, e, f;
         a[0] = a[0]*b[0]/n2;
         a[n/2] = a[n/2]*b[n/2]/n2;
-        for (int i = 0; i < n/2; i++) {
+        for (int i = 1; i < n/2; i++) { //0 and n/2 have no imaginary part and have been handled above
             c = a[i];
             d = b[i];
             e = a[n-i];
@@ -67,43 +233,158 @@ extern "C" {
             a[n-i] = (d*e - c*f)/n2;
         }
 
-        pr = fftwf_plan_r2r_1d(n, a, a, FFTW_HC2R, FFTW_ESTIMATE);
-        fftwf_execute(pr);
-
-        fftwf_destroy_plan(pa);
-        fftwf_destroy_plan(pb);
-        fftwf_destroy_plan(pr);
-
-        env->ReleaseFloatArrayElements(x, a, 0);
-        env->ReleaseFloatArrayElements(y, b, 0);
+        fftwf_execute_r2r(plan.backward, a, a);
     }
 
-    JNIEXPORT void JNICALL Java_de_rwth_1aachen_phyphox_Analysis_fftw3autocorrelation(JNIEnv *env, jobject obj, jfloatArray x, jint n) {
-        jfloat *a = env->GetFloatArrayElements(x, 0);
-
-        fftwf_plan pa, pr;
-        pa = fftwf_plan_r2r_1d(n, a, a, FFTW_R2HC, FFTW_ESTIMATE);
-        fftwf_execute(pa);
+    void autocorrelation(Plan &plan, float *a, int n) {
+        fftwf_execute_r2r(plan.forward, a, a);
 
         a[0] = a[0]*a[0];
         a[n/2] = a[n/2]*a[n/2];
-        for (int i = 0; i < n/2; i++) {
+        for (int i = 1; i < n/2; i++) { //0 and n/2 have no imaginary part and have been handled above
             a[i] = a[i]*a[i] + a[n-i]*a[n-i];
             a[n-i] = 0.f;
         }
 
-        pr = fftwf_plan_r2r_1d(n, a, a, FFTW_HC2R, FFTW_ESTIMATE);
-
         for (int i = 0; i < n; i++) {
             a[i] /= (float)n;
         }
 
-        fftwf_execute(pr);
+        fftwf_execute_r2r(plan.backward, a, a);
+    }
+}
+
+extern "C" {
+
+    //Number of bytes to skip in a direct buffer to reach an address suitable for FFTW
+    JNIEXPORT jint JNICALL Java_de_rwth_1aachen_phyphox_Analysis_nativeAlignmentOffset(JNIEnv *env, jobject obj, jobject buffer) {
+        uintptr_t address = (uintptr_t) env->GetDirectBufferAddress(buffer);
+        return (jint) ((BUFFER_ALIGNMENT - address % BUFFER_ALIGNMENT) % BUFFER_ALIGNMENT);
+    }
+
+    //x has n values and y has m values. The result is written to the longer one
+    JNIEXPORT void JNICALL Java_de_rwth_1aachen_phyphox_Analysis_nativePower(JNIEnv *env, jobject obj, jobject a, jint n, jobject b, jint m) {
+        jdouble *x = (jdouble *) env->GetDirectBufferAddress(a);
+        jdouble *y = (jdouble *) env->GetDirectBufferAddress(b);
+        if (!x || !y)
+            return;
+
+        int nm;
+        if (n > m)
+            nm = n;
+        else
+            nm = m;
+
+        double base = 0.;
+        double exponent = 1.;
+        for (int i = 0; i < nm; i++) {
+            if (i < n)
+                base = x[i];
+            if (i < m)
+                exponent = y[i];
+            if (n > m)
+                x[i] = pow(base, exponent);
+            else
+                y[i] = pow(base, exponent);
+        }
+    }
+
+    JNIEXPORT void JNICALL Java_de_rwth_1aachen_phyphox_Analysis_fftw3complex(JNIEnv *env, jobject obj, jobject xy, jint n) {
+        float *data = (float *) env->GetDirectBufferAddress(xy);
+        if (!data)
+            return;
+        std::shared_ptr<Plan> plan = getPlan(COMPLEX, n);
+        if (!plan)
+            return;
+
+        if (canExecuteOn(*plan, data)) {
+            fftwf_execute_dft(plan->forward, (fftwf_complex *) data, (fftwf_complex *) data);
+        } else {
+            std::lock_guard<std::mutex> guard(plan->lock);
+            memcpy(plan->a, data, 2 * (size_t) n * sizeof(float));
+            fftwf_execute(plan->forward);
+            memcpy(data, plan->a, 2 * (size_t) n * sizeof(float));
+        }
+    }
+
+    //Transform of n real values. x has to hold 2*(n/2+1) floats and receives the first n/2+1 complex
+    //values of the result. The others are the complex conjugates of these.
+    JNIEXPORT void JNICALL Java_de_rwth_1aachen_phyphox_Analysis_fftw3real(JNIEnv *env, jobject obj, jobject x, jint n) {
+        float *data = (float *) env->GetDirectBufferAddress(x);
+        if (!data)
+            return;
+        std::shared_ptr<Plan> plan = getPlan(REAL_TO_COMPLEX, n);
+        if (!plan)
+            return;
+
+        size_t length = 2 * ((size_t) n / 2 + 1) * sizeof(float);
+        if (canExecuteOn(*plan, data)) {
+            fftwf_execute_dft_r2c(plan->forward, data, (fftwf_complex *) data);
+        } else {
+            std::lock_guard<std::mutex> guard(plan->lock);
+            memcpy(plan->a, data, length);
+            fftwf_execute(plan->forward);
+            memcpy(data, plan->a, length);
+        }
+    }
 
-        fftwf_destroy_plan(pa);
-        fftwf_destroy_plan(pr);
+    JNIEXPORT void JNICALL Java_de_rwth_1aachen_phyphox_Analysis_fftw3crosscorrelation(JNIEnv *env, jobject obj, jobject x, jobject y, jint n) {
+        float *a = (float *) env->GetDirectBufferAddress(x);
+        float *b = (float *) env->GetDirectBufferAddress(y);
+        if (!a || !b)
+            return;
+        std::shared_ptr<Plan> plan = getPlan(REAL, n);
+        if (!plan)
+            return;
 
-        env->ReleaseFloatArrayElements(x, a, 0);
+        if (canExecuteOn(*plan, a) && canExecuteOn(*plan, b)) {
+            crosscorrelation(*plan, a, b, n);
+        } else {
+            std::lock_guard<std::mutex> guard(plan->lock);
+            memcpy(plan->a, a, (size_t) n * sizeof(float));
+            memcpy(plan->b, b, (size_t) n * sizeof(float));
+            crosscorrelation(*plan, plan->a, plan->b, n);
+            memcpy(a, plan->a, (size_t) n * sizeof(float));
+        }
+    }
+
+    JNIEXPORT void JNICALL Java_de_rwth_1aachen_phyphox_Analysis_fftw3autocorrelation(JNIEnv *env, jobject obj, jobject x, jint n) {
+        float *a = (float *) env->GetDirectBufferAddress(x);
+        if (!a)
+            return;
+        std::shared_ptr<Plan> plan = getPlan(REAL, n);
+        if (!plan)
+            return;
+
+        if (canExecuteOn(*plan, a)) {
+            autocorrelation(*plan, a, n);
+        } else {
+            std::lock_guard<std::mutex> guard(plan->lock);
+            memcpy(plan->a, a, (size_t) n * sizeof(float));
+            autocorrelation(*plan, plan->a, n);
+            memcpy(a, plan->a, (size_t) n * sizeof(float));
+        }
+    }
+
+    JNIEXPORT void JNICALL Java_de_rwth_1aachen_phyphox_Analysis_fftw3importWisdom(JNIEnv *env, jobject obj, jstring path) {
+        const char *filename = env->GetStringUTFChars(path, 0);
+        {
+            std::lock_guard<std::recursive_mutex> planner(plannerLock);
+            destroyRetired();
+            fftwf_import_wisdom_from_filename(filename); //Fails silently if there is no wisdom yet
+        }
+        env->ReleaseStringUTFChars(path, filename);
+    }
+
+    JNIEXPORT void JNICALL Java_de_rwth_1aachen_phyphox_Analysis_fftw3improvePlans(JNIEnv *env, jobject obj, jstring path) {
+        improvePlans();
+        const char *filename = env->GetStringUTFChars(path, 0);
+        {
+            std::lock_guard<std::recursive_mutex> planner(plannerLock);
+            destroyRetired();
+            fftwf_export_wisdom_to_filename(filename);
+        }
+        env->ReleaseStringUTFChars(path, filename);
     }
 
-}
\ No newline at end of file
+}
@@ -3,11 +3,18 @@ package de.rwth_aachen.phyphox;
 import android.content.Context;
 import android.util.Log;
 
+import java.io.File;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import de.rwth_aachen.phyphox.Helper.Helper;
 
@@ -28,14 +35,161 @@ public class Analysis {
         }
     }
 
-    public static native void nativePower(double[] x, double[] y);
-    public static native void fftw3complex(float[] xy, int n);
-    public static native void fftw3crosscorrelation(float[] x, float[] y, int n);
-    public static native void fftw3autocorrelation(float[] x, int n);
+    public static native int nativeAlignmentOffset(ByteBuffer buffer);
+    public static native void nativePower(DoubleBuffer x, int n, DoubleBuffer y, int m);
+    public static native void fftw3complex(FloatBuffer xy, int n);
+    public static native void fftw3real(FloatBuffer x, int n);
+    public static native void fftw3crosscorrelation(FloatBuffer x, FloatBuffer y, int n);
+    public static native void fftw3autocorrelation(FloatBuffer x, int n);
+    public static native void fftw3importWisdom(String path);
+    public static native void fftw3improvePlans(String path);
+
+    //The native library caches its FFT plans. New sizes get a quick estimated plan, so we measure
+    //better plans when the measurement has stopped and keep them as FFTW wisdom for the next start.
+    //Loading and saving the wisdom happens in the background and only one of these tasks runs at a
+    //time, so the wisdom is never saved before it has been loaded. An improvement that is skipped
+    //because another task is still running is made up for at the next stop.
+    private static final String FFTW_WISDOM_FILE = "fftw_wisdom";
+    private static final AtomicBoolean fftwTaskRunning = new AtomicBoolean(false);
+
+    public static void loadFFTWisdom(Context context) {
+        if (!nativeLib)
+            return;
+        final String path = new File(context.getFilesDir(), FFTW_WISDOM_FILE).getPath();
+        runFFTWTask(new Runnable() {
+            @Override
+            public void run() {
+                fftw3importWisdom(path);
+            }
+        });
+    }
+
+    public static void improveFFTPlans(Context context) {
+        if (!nativeLib)
+            return;
+        final String path = new File(context.getFilesDir(), FFTW_WISDOM_FILE).getPath();
+        runFFTWTask(new Runnable() {
+            @Override
+            public void run() {
+                fftw3improvePlans(path);
+            }
+        });
+    }
+
+    private static void runFFTWTask(final Runnable task) {
+        if (!fftwTaskRunning.compareAndSet(false, true))
+            return;
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    fftwTaskRunning.set(false);
+                }
+            }
+        }, "FFTW");
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+
+    //The native functions work on direct buffers, which the modules keep between cycles, so no
+    //data is copied across JNI. The buffers are aligned like the buffers FFTW plans are created for,
+    //so FFTW can work directly on this memory (see analysis.cpp)
+    private static ByteBuffer allocateNative(int bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes + 32);
+        buffer.position(nativeAlignmentOffset(buffer));
+        return buffer.slice().order(ByteOrder.nativeOrder());
+    }
+
+    //Returns buffer if it can hold n values or a new one, which is larger to avoid frequent reallocations
+    static FloatBuffer nativeFloats(FloatBuffer buffer, int n) {
+        if (buffer != null && buffer.capacity() >= n)
+            return buffer;
+        return allocateNative(4 * Math.max(n, buffer == null ? 0 : 2 * buffer.capacity())).asFloatBuffer();
+    }
+
+    static DoubleBuffer nativeDoubles(DoubleBuffer buffer, int n) {
+        if (buffer != null && buffer.capacity() >= n)
+            return buffer;
+        return allocateNative(8 * Math.max(n, buffer == null ? 0 : 2 * buffer.capacity())).asDoubleBuffer();
+    }
+
+    static double[] ensureCapacity(double[] array, int n) {
+        if (array != null && array.length >= n)
+            return array;
+        return new double[Math.max(n, array == null ? 0 : 2 * array.length)];
+    }
+
+    //Candidates for the maximum (or minimum) of a sliding window as used by maxAM and minAM in
+    //streaming mode. The candidates are kept in the order of their absolute index and each one is
+    //strictly larger (smaller) than all candidates behind it, so the front is the extremum of the
+    //window. Each value is added and removed at most once.
+    static class ExtremumDeque {
+        private final boolean minimum;
+        private long[] index = new long[16];
+        private double[] value = new double[16];
+        private double[] x = new double[16];
+        private int head = 0, tail = 0;
+
+        ExtremumDeque(boolean minimum) {
+            this.minimum = minimum;
+        }
+
+        void clear() {
+            head = 0;
+            tail = 0;
+        }
+
+        boolean isEmpty() {
+            return head == tail;
+        }
+
+        //Like the loops in maxAM and minAM, an equal value does not replace an earlier one and NaN
+        //or an infinite value in the wrong direction never becomes the extremum.
+        void add(long i, double v, double xv) {
+            if (minimum ? !(v < Double.POSITIVE_INFINITY) : !(v > Double.NEGATIVE_INFINITY))
+                return;
+            while (tail > head && (minimum ? value[tail-1] > v : value[tail-1] < v))
+                tail--;
+            if (tail == index.length) {
+                int n = tail - head;
+                if (2*n > index.length) {
+                    index = Arrays.copyOf(index, 2*index.length);
+                    value = Arrays.copyOf(value, 2*value.length);
+                    x = Arrays.copyOf(x, 2*x.length);
+                }
+                System.arraycopy(index, head, index, 0, n);
+                System.arraycopy(value, head, value, 0, n);
+                System.arraycopy(x, head, x, 0, n);
+                head = 0;
+                tail = n;
+            }
+            index[tail] = i;
+            value[tail] = v;
+            x[tail] = xv;
+            tail++;
+        }
+
+        //Remove all candidates before the absolute index first
+        void dropBefore(long first) {
+            while (head < tail && index[head] < first)
+                head++;
+        }
+
+        double value() {
+            return value[head];
+        }
+
+        double x() {
+            return x[head];
+        }
+    }
 
     public static class FFT implements Serializable {
         private int n, logn; //input size, power-of-two filled size, log2 of input size (integer)
         private double [] cos, sin; //Lookup table
+        private double [] zr, zi; //Work arrays for the transform of real input
 
         public int np2;
 
@@ -62,11 +216,57 @@ public class Analysis {
                 cos[i] = Math.cos(-2 * Math.PI * i / np2);
                 sin[i] = Math.sin(-2 * Math.PI * i / np2);
             }
+            zr = new double[np2/2];
+            zi = new double[np2/2];
+        }
+
+        public void calculate(double[] x, double[] y) {
+            if (n < 2)
+                return;
+            transform(x, y, np2, logn);
         }
 
-        public void calculate(Double[] x, Double[] y) {
+        //Transform of real input x (y is ignored on input). Like any real signal, the result is
+        //symmetric, so we only need to calculate half of it: The even and odd values are packed into
+        //the real and imaginary part of a complex input of half the size, which is transformed and
+        //then split into the transforms of the even and odd values to assemble the result.
+        public void calculateReal(double[] x, double[] y) {
             if (n < 2)
                 return;
+            int m = np2 / 2;
+            if (m < 2) {
+                Arrays.fill(y, 0, np2, 0.);
+                transform(x, y, np2, logn);
+                return;
+            }
+
+            for (int k = 0; k < m; k++) {
+                zr[k] = x[2*k];
+                zi[k] = x[2*k+1];
+            }
+
+            transform(zr, zi, m, logn - 1);
+
+            for (int k = 0; k < m; k++) {
+                int mk = k == 0 ? 0 : m - k;
+                //Transform of the even values (e) and of the odd values (o)
+                double er = (zr[k] + zr[mk]) / 2;
+                double ei = (zi[k] - zi[mk]) / 2;
+                double or = (zi[k] + zi[mk]) / 2;
+                double oi = (zr[mk] - zr[k]) / 2;
+                x[k] = er + cos[k] * or - sin[k] * oi;
+                y[k] = ei + cos[k] * oi + sin[k] * or;
+            }
+            x[m] = zr[0] - zi[0];
+            y[m] = 0.;
+            for (int k = 1; k < m; k++) {
+                x[np2 - k] = x[k];
+                y[np2 - k] = -y[k];
+            }
+        }
+
+        //Radix-2 transform of size 2^logSize (np2 or a smaller power of two) using the lookup tables for np2
+        private void transform(double[] x, double[] y, int size, int logSize) {
 
             /***************************************************************
              * fft.c
@@ -92,8 +292,8 @@ public class Analysis {
             double c, s, t1, t2;
 
             j = 0; /* bit-reverse */
-            n2 = np2 / 2;
-            for(int i = 1; i < np2 - 1; i++)
+            n2 = size / 2;
+            for(int i = 1; i < size - 1; i++)
 
             {
                 n1 = n2;
@@ -115,7 +315,7 @@ public class Analysis {
 
             n2 = 1;
 
-            for(int i = 0; i < logn; i++)
+            for(int i = 0; i < logSize; i++)
 
             {
                 n1 = n2;
@@ -127,7 +327,7 @@ public class Analysis {
                     s = sin[a];
                     a += 1 << (logn - i - 1);
 
-                    for (k = j; k < np2; k = k + n2) {
+                    for (k = j; k < size; k = k + n2) {
                         t1 = c * x[k + n1] - s * y[k + n1];
                         t2 = s * x[k + n1] + c * y[k + n1];
                         x[k + n1] = x[k] - t1;
@@ -147,14 +347,38 @@ public class Analysis {
         protected Vector<DataInput> inputs = new Vector<>(); //The local copy of the input data when the analysis module starts its update
         protected Vector<Double[]> inputArrays = new Vector<>(); //The local copy of the input data when the analysis module starts its update
         protected Vector<Integer> inputArraySizes = new Vector<>(); //The local copy of the input data when the analysis module starts its update
+        protected Vector<DataBufferView> inputViews = new Vector<>(); //Read-only views of the input data when the analysis module starts its update (see DataBuffer.getView())
         protected Vector<DataOutput> outputs; //The keys of outputBuffers
         protected PhyphoxExperiment experiment; //experiment reference to access buffers
         protected boolean isStatic = false; //If a module is defined as static, it will only be executed once. This is used to save performance if data does not change
         protected boolean executed = false; //This takes track if the module has been executed at all. Used for static modules.
 
         protected boolean useArray = false;
+        protected boolean useView = false; //Modules that have been ported to primitive views should use these instead of useArray. This avoids boxing the input data on each cycle.
         protected boolean clearInModule = false;
 
+        //Streaming mode (opt-in, requires useView)
+        //A streaming module keeps a running state (sums, extrema etc.) from one update to the next,
+        //so it only needs to process the values that have been added to its inputs since then. If
+        //incremental is set, the state from the last update is still valid and inputAdded and
+        //inputDropped tell the module how many values have been appended to the end of each input
+        //and how many have been removed from its start (for example by a fixed-size buffer).
+        //Otherwise (first update, a buffer has been cleared, the last update failed...) the module
+        //has to reset its state and start over with the full input.
+        //If a streaming module also sets clearInModule, it continues its outputs from the last
+        //update instead of writing them again. In this case the update is only incremental if no
+        //one else has touched the outputs in the meantime and the module has to clear them itself
+        //(see clearOutputs()) whenever it is not incremental.
+        protected boolean streaming = false;
+        protected boolean incremental = false;
+        transient protected int[] inputAdded = null;
+        transient protected int[] inputDropped = null;
+        transient private long[] streamFirst = null; //Absolute index range of each input at the last update
+        transient private long[] streamEnd = null;
+        transient private long[] streamOutputFirst = null; //Absolute index range of each output after the last update
+        transient private long[] streamOutputEnd = null;
+        transient private boolean streamValid = false;
+
         public static class CycleRange {
             int start = -1;
             int stop = -1;
@@ -219,7 +443,78 @@ public class Analysis {
             return false;
         }
 
+        //Collect the buffers this module reads from and writes to. Inputs that are cleared after
+        //reading them (no "keep") count as written. Used by the AnalysisScheduler.
+        void getBufferAccess(Set<DataBuffer> reads, Set<DataBuffer> writes) {
+            for (DataInput input : inputsOriginal) {
+                if (input == null || !input.isBuffer)
+                    continue;
+                if (!input.keep && !input.buffer.isStatic)
+                    writes.add(input.buffer);
+                else
+                    reads.add(input.buffer);
+            }
+            for (DataOutput output : outputs) {
+                if (output != null)
+                    writes.add(output.buffer);
+            }
+        }
+
+        //Clear all outputs that are not set to append
+        protected void clearOutputs() {
+            for (DataOutput output : outputs)
+                if (output != null && !output.append)
+                    output.buffer.clear(false);
+        }
+
+        //Compare the index ranges of the inputs to those of the last update (see streaming). Returns
+        //true if the state of the module can be continued.
+        private boolean compareStreamState(long[] lastFirst, long[] lastEnd) {
+            boolean continuable = streamValid;
+            for (int i = 0; i < streamFirst.length; i++) {
+                inputAdded[i] = (int)(streamEnd[i] - lastEnd[i]);
+                inputDropped[i] = (int)(streamFirst[i] - lastFirst[i]);
+                //Values may only be appended or removed from the start. If all values known from
+                //the last update have been removed (including a buffer being cleared), there is
+                //nothing to continue from.
+                if (inputAdded[i] < 0 || inputDropped[i] < 0 || (inputDropped[i] > 0 && streamFirst[i] >= lastEnd[i]))
+                    continuable = false;
+            }
+
+            if (clearInModule) {
+                if (streamOutputFirst == null || streamOutputFirst.length != outputs.size())
+                    return false;
+                for (int i = 0; i < outputs.size(); i++) {
+                    DataOutput output = outputs.get(i);
+                    if (output == null)
+                        continue;
+                    //Append mode writes everything again in each update
+                    if (output.append || output.buffer.getFirstIndex() != streamOutputFirst[i] || output.buffer.getEndIndex() != streamOutputEnd[i])
+                        return false;
+                }
+            }
+            return continuable;
+        }
+
+        private void saveStreamState() {
+            if (clearInModule) {
+                if (streamOutputFirst == null || streamOutputFirst.length != outputs.size()) {
+                    streamOutputFirst = new long[outputs.size()];
+                    streamOutputEnd = new long[outputs.size()];
+                }
+                for (int i = 0; i < outputs.size(); i++) {
+                    DataOutput output = outputs.get(i);
+                    if (output == null)
+                        continue;
+                    streamOutputFirst[i] = output.buffer.getFirstIndex();
+                    streamOutputEnd[i] = output.buffer.getEndIndex();
+                }
+            }
+            streamValid = true;
+        }
+
         //Wrapper to update the module only if it is not static or has never been executed and to clear the buffer if required
+        //The caller has to hold the dataLock of the experiment (see PhyphoxExperiment.processAnalysis)
         protected void updateIfNotStatic(int thisCycle) {
             if (!runInCycle(thisCycle))
                 return;
@@ -227,43 +522,73 @@ public class Analysis {
             if (!(isStatic && executed)) {
 //                long updateStart = System.nanoTime();
 
-                experiment.dataLock.lock();
-                try {
-                    if (useArray) {
-                        inputArrays.setSize(inputsOriginal.size());
-                        inputArraySizes.setSize(inputsOriginal.size());
-                    } else
-                        inputs.setSize(inputsOriginal.size());
-                    for (int i = 0; i < inputsOriginal.size(); i++) {
-                        if (inputsOriginal.get(i) == null) {
-                            if (useArray) {
-                                inputArrays.set(i, null);
-                                inputArraySizes.set(i, 0);
-                            } else
-                                inputs.set(i, null);
-                        } else {
-                            if (useArray) {
-                                inputArrays.set(i, inputsOriginal.get(i).getArray());
-                                inputArraySizes.set(i, inputsOriginal.get(i).getFilledSize());
-                            } else
-                                inputs.set(i, inputsOriginal.get(i).copy());
-                            if (inputsOriginal.get(i).isBuffer && !inputsOriginal.get(i).keep && !inputsOriginal.get(i).buffer.isStatic)
-                                inputsOriginal.get(i).clear(false);
-                        }
+                if (useView) {
+                    inputViews.setSize(inputsOriginal.size());
+                    inputArraySizes.setSize(inputsOriginal.size());
+                } else if (useArray) {
+                    inputArrays.setSize(inputsOriginal.size());
+                    inputArraySizes.setSize(inputsOriginal.size());
+                } else
+                    inputs.setSize(inputsOriginal.size());
+
+                long[] lastFirst = null, lastEnd = null;
+                if (streaming) {
+                    if (streamFirst == null || streamFirst.length != inputsOriginal.size()) {
+                        streamFirst = new long[inputsOriginal.size()];
+                        streamEnd = new long[inputsOriginal.size()];
+                        inputAdded = new int[inputsOriginal.size()];
+                        inputDropped = new int[inputsOriginal.size()];
+                        streamValid = false;
+                    }
+                    lastFirst = streamFirst.clone();
+                    lastEnd = streamEnd.clone();
+                }
+
+                for (int i = 0; i < inputsOriginal.size(); i++) {
+                    if (inputsOriginal.get(i) == null) {
+                        if (useView) {
+                            inputViews.set(i, null);
+                            inputArraySizes.set(i, 0);
+                        } else if (useArray) {
+                            inputArrays.set(i, null);
+                            inputArraySizes.set(i, 0);
+                        } else
+                            inputs.set(i, null);
+                    } else {
+                        if (useView) {
+                            DataBufferView view = inputsOriginal.get(i).getView();
+                            inputViews.set(i, view);
+                            inputArraySizes.set(i, view.length);
+                            if (streaming && inputsOriginal.get(i).isBuffer) {
+                                //Has to be done before the input is cleared below
+                                DataBuffer buffer = inputsOriginal.get(i).buffer;
+                                streamFirst[i] = buffer.getFirstIndex();
+                                streamEnd[i] = buffer.getEndIndex();
+                            }
+                        } else if (useArray) {
+                            inputArrays.set(i, inputsOriginal.get(i).getArray());
+                            inputArraySizes.set(i, inputsOriginal.get(i).getFilledSize());
+                        } else
+                            inputs.set(i, inputsOriginal.get(i).copy());
+                        if (inputsOriginal.get(i).isBuffer && !inputsOriginal.get(i).keep && !inputsOriginal.get(i).buffer.isStatic)
+                            inputsOriginal.get(i).clear(false);
                     }
-                } finally {
-                    experiment.dataLock.unlock();
                 }
 
-                if (!clearInModule) {
-                    for (DataOutput output : outputs)
-                        if (output != null && !output.append)
-                            output.buffer.clear(false);
-                }
+                if (streaming)
+                    incremental = compareStreamState(lastFirst, lastEnd);
+
+                if (!clearInModule)
+                    clearOutputs();
 
+                if (streaming)
+                    streamValid = false; //Stays false if the update fails, so the next one starts over
 
                 update();
 
+                if (streaming)
+                    saveStreamState();
+
 //                long time = System.nanoTime() - updateStart;
 //                if (time > 1e6)
 //                    Log.d("AnalysisDebug", this.toString() + " update: " + (time*1e-6) + "ms");
@@ -350,14 +675,14 @@ public class Analysis {
 
         protected formulaAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, String formula) throws FormulaParser.FormulaException {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
             this.formula = new FormulaParser(formula);
         }
 
         @Override
         protected void update() {
             if (outputs.size() > 0)
-            formula.execute(inputArrays, outputs.get(0));
+            formula.execute(inputViews, outputs.get(0));
         }
     }
 
@@ -366,7 +691,7 @@ public class Analysis {
 
         protected countAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
         }
 
         @Override
@@ -412,32 +737,60 @@ public class Analysis {
     }
 
     // Get the average value of this buffer (ignoring NaNs)
+    //This is a streaming module: It keeps the sum and the sum of squares of the finite values, so
+    //new values only need to be added and values dropped by a fixed-size buffer subtracted. Both
+    //sums are taken relative to a fixed shift (the first value) to avoid the cancellation of the
+    //naive formula for the variance, and they are recalculated from scratch once as many values
+    //have been dropped as there are left in the buffer, so rounding errors cannot accumulate.
     public static class averageAM extends AnalysisModule implements Serializable {
+        transient private double shift, sum, squares;
+        transient private int count;
+        transient private int droppedSinceExact;
+        transient private DataBufferView last; //Values of the last update, views are never modified afterwards
 
         protected averageAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
+            streaming = true;
+        }
+
+        private void add(double v, double sign) {
+            if (Double.isNaN(v) || Double.isInfinite(v))
+                return;
+            if (count == 0 && sign > 0) {
+                shift = v;
+                sum = 0.;
+                squares = 0.;
+            }
+            double d = v - shift;
+            sum += sign * d;
+            squares += sign * d * d;
+            count += (int)sign;
         }
 
         @Override
         protected void update() {
-            Double in[] = inputArrays.get(0);
+            DataBufferView in = inputViews.get(0);
             int size = inputArraySizes.get(0);
-            if (size == 0)
-                return;
 
-            double sum = 0.;
-            int count = 0;
-            for (int i = 0; i < size; i++) {
-                if (in[i].isNaN() || in[i].isInfinite())
-                    continue;;
-                sum += in[i];
-                count++;
+            if (incremental && droppedSinceExact + inputDropped[0] <= size) {
+                for (int i = 0; i < inputDropped[0]; i++)
+                    add(last.get(i), -1.);
+                droppedSinceExact += inputDropped[0];
+                for (int i = size - inputAdded[0]; i < size; i++)
+                    add(in.get(i), 1.);
+            } else {
+                count = 0;
+                droppedSinceExact = 0;
+                for (int i = 0; i < size; i++)
+                    add(in.get(i), 1.);
             }
-            if (count == 0)
+            last = in;
+
+            if (size == 0 || count == 0)
                 return;
 
-            double avg = sum/count;
+            double avg = shift + sum/count;
 
             if (outputs.size() > 0 && outputs.get(0) != null) {
                 outputs.get(0).append(avg);
@@ -448,15 +801,7 @@ public class Analysis {
                 if (count < 2) {
                     outputs.get(1).append(Double.NaN);
                 }
-                sum = 0.;
-                count = 0;
-                for (int i = 0; i < size; i++) {
-                    if (in[i].isNaN() || in[i].isInfinite())
-                        continue;;
-                    sum += (in[i]-avg)*(in[i]-avg);
-                    count++;
-                }
-                double std = Math.sqrt(sum/(count-1));
+                double std = count < 2 ? Double.NaN : Math.sqrt(Math.max(0., squares - sum*sum/count)/(count-1));
                 outputs.get(1).append(std);
             }
         }
@@ -467,7 +812,7 @@ public class Analysis {
 
         protected addAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
         }
 
         @Override
@@ -479,18 +824,18 @@ public class Analysis {
                 double result = 0;
                 anyInput = false;
 
-                for (int j = 0; j < inputArrays.size(); j++) { //For each input buffer
-                    Double in[] = inputArrays.get(j);
+                for (int j = 0; j < inputViews.size(); j++) { //For each input buffer
+                    DataBufferView in = inputViews.get(j);
                     int size = inputArraySizes.get(j);
                     if (in == null || size == 0) {
                         anyInput = false;
                         break;
                     }
                     if (i < size) { //New value from this iterator
-                        result += in[i];
+                        result += in.get(i);
                         anyInput = true;
                     } else {
-                        result += in[size-1];
+                        result += in.get(size-1);
                     }
                 }
                 if (anyInput) //There was a new value. Append the result.
@@ -508,7 +853,7 @@ public class Analysis {
 
         protected subtractAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
         }
 
         @Override
@@ -519,8 +864,8 @@ public class Analysis {
                 double result = 0;
                 anyInput = false;
 
-                for (int j = 0; j < inputArrays.size(); j++) { //For each input buffer
-                    Double in[] = inputArrays.get(j);
+                for (int j = 0; j < inputViews.size(); j++) { //For each input buffer
+                    DataBufferView in = inputViews.get(j);
                     int size = inputArraySizes.get(j);
                     if (in == null || size == 0) {
                         anyInput = false;
@@ -528,15 +873,15 @@ public class Analysis {
                     }
                     if (i < size) { //New value from this iterator
                         if (j == 0)
-                            result += in[i];
+                            result += in.get(i);
                         else
-                            result -= in[i];
+                            result -= in.get(i);
                         anyInput = true;
                     } else {
                         if (j == 0)
-                            result += in[size-1];
+                            result += in.get(size-1);
                         else
-                            result -= in[size-1];
+                            result -= in.get(size-1);
                     }
                 }
                 if (anyInput) //There was a new value. Append the result.
@@ -554,7 +899,7 @@ public class Analysis {
 
         protected multiplyAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
         }
 
         @Override
@@ -565,18 +910,18 @@ public class Analysis {
                 double result = 1.;
                 anyInput = false;
 
-                for (int j = 0; j < inputArrays.size(); j++) { //For each input buffer
-                    Double in[] = inputArrays.get(j);
+                for (int j = 0; j < inputViews.size(); j++) { //For each input buffer
+                    DataBufferView in = inputViews.get(j);
                     int size = inputArraySizes.get(j);
                     if (in == null || size == 0) {
                         anyInput = false;
                         break;
                     }
                     if (i < size) { //New value from this iterator
-                        result *= in[i];
+                        result *= in.get(i);
                         anyInput = true;
                     } else {
-                        result *= in[size-1];
+                        result *= in.get(size-1);
                     }
                 }
                 if (anyInput) //There was a new value. Append the result.
@@ -594,7 +939,7 @@ public class Analysis {
 
         protected divideAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
         }
 
         @Override
@@ -605,8 +950,8 @@ public class Analysis {
                 double result = 0.;
                 anyInput = false;
 
-                for (int j = 0; j < inputArrays.size(); j++) { //For each input buffer
-                    Double in[] = inputArrays.get(j);
+                for (int j = 0; j < inputViews.size(); j++) { //For each input buffer
+                    DataBufferView in = inputViews.get(j);
                     int size = inputArraySizes.get(j);
                     if (in == null || size == 0) {
                         anyInput = false;
@@ -614,15 +959,15 @@ public class Analysis {
                     }
                     if (i < size) { //New value from this iterator
                         if (j == 0)
-                            result = in[i];
+                            result = in.get(i);
                         else
-                            result /= in[i];
+                            result /= in.get(i);
                         anyInput = true;
                     } else {
                         if (j == 0)
-                            result = in[size-1];
+                            result = in.get(size-1);
                         else
-                            result /= in[size-1];
+                            result /= in.get(size-1);
                     }
                 }
                 if (anyInput) //There was a new value. Append the result.
@@ -638,10 +983,12 @@ public class Analysis {
     // The output has the length of the longest input buffer or the size of the output buffer (whichever is smaller).
     // Missing values in shorter buffers are filled from the last value.
     public static class powerAM extends AnalysisModule implements Serializable {
+        transient private DoubleBuffer nativeA, nativeB;
+        transient private double[] result;
 
         protected powerAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
         }
 
         @Override
@@ -653,30 +1000,28 @@ public class Analysis {
                 int sizeA = inputArraySizes.get(0);
                 int sizeB = inputArraySizes.get(1);
 
-                Double[] a = inputArrays.get(0);
-                Double[] b = inputArrays.get(1);
+                DataBufferView a = inputViews.get(0);
+                DataBufferView b = inputViews.get(1);
 
-                final double ad[] = new double[sizeA];
-                final double bd[] = new double[sizeB];
+                nativeA = nativeDoubles(nativeA, sizeA);
+                nativeB = nativeDoubles(nativeB, sizeB);
 
-                for (int i = 0; i < sizeA; i++) {
-                    ad[i] = a[i];
-                }
-                for (int i = 0; i < sizeB; i++) {
-                    bd[i] = b[i];
-                }
+                nativeA.clear();
+                if (a != null)
+                    nativeA.put(a.data, a.offset, sizeA);
+                nativeB.clear();
+                if (b != null)
+                    nativeB.put(b.data, b.offset, sizeB);
 
-                nativePower(ad, bd);
+                nativePower(nativeA, sizeA, nativeB, sizeB);
 
-                if (sizeA > sizeB) {
-                    for (int i = 0; i < sizeA; i++) {
-                        outputs.get(0).append(ad[i]);
-                    }
-                } else {
-                    for (int i = 0; i < sizeB; i++) {
-                        outputs.get(0).append(bd[i]);
-                    }
-                }
+                //The result is written to the longer input
+                int n = Math.max(sizeA, sizeB);
+                result = ensureCapacity(result, n);
+                DoubleBuffer r = sizeA > sizeB ? nativeA : nativeB;
+                r.clear();
+                r.get(result, 0, n);
+                outputs.get(0).append(result, n);
             } else {
 
                 boolean anyInput = true; //Is there any buffer left with values?
@@ -685,8 +1030,8 @@ public class Analysis {
                     double result = 1.;
                     anyInput = false;
 
-                    for (int j = 0; j < inputArrays.size(); j++) { //For each input buffer
-                        Double in[] = inputArrays.get(j);
+                    for (int j = 0; j < inputViews.size(); j++) { //For each input buffer
+                        DataBufferView in = inputViews.get(j);
                         int size = inputArraySizes.get(j);
                         if (in == null || size == 0) {
                             anyInput = false;
@@ -694,15 +1039,15 @@ public class Analysis {
                         }
                         if (i < size) { //New value from this iterator
                             if (j == 0)
-                                result = in[i];
+                                result = in.get(i);
                             else
-                                result = Math.pow(result, in[i]);
+                                result = Math.pow(result, in.get(i));
                             anyInput = true;
                         } else {
                             if (j == 0)
-                                result = in[size-1];
+                                result = in.get(size-1);
                             else
-                                result = Math.pow(result, in[size-1]);
+                                result = Math.pow(result, in.get(size-1));
                         }
                     }
                     if (anyInput) //There was a new value. Append the result.
@@ -723,7 +1068,7 @@ public class Analysis {
 
         protected gcdAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
         }
 
         @Override
@@ -736,8 +1081,8 @@ public class Analysis {
                 long a = 1;
                 long b = 1;
 
-                for (int j = 0; j < inputArrays.size() && j < 2; j++) { //For each input buffer
-                    Double in[] = inputArrays.get(j);
+                for (int j = 0; j < inputViews.size() && j < 2; j++) { //For each input buffer
+                    DataBufferView in = inputViews.get(j);
                     int size = inputArraySizes.get(j);
                     if (in == null || size == 0) {
                         anyInput = false;
@@ -745,15 +1090,15 @@ public class Analysis {
                     }
                     if (i < size) { //New value from this iterator
                         if (j == 0)
-                            a = Math.round(in[i]);
+                            a = Math.round(in.get(i));
                         else
-                            b = Math.round(in[i]);
+                            b = Math.round(in.get(i));
                         anyInput = true;
                     } else {
                         if (j == 0)
-                            a = Math.round(in[size-1]);
+                            a = Math.round(in.get(size-1));
                         else
-                            b = Math.round(in[size-1]);
+                            b = Math.round(in.get(size-1));
                     }
                 }
                 if (anyInput) { //There was a new value. Append the result.
@@ -778,7 +1123,7 @@ public class Analysis {
 
         protected lcmAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
         }
 
         @Override
@@ -791,8 +1136,8 @@ public class Analysis {
                 long a = 1;
                 long b = 1;
 
-                for (int j = 0; j < inputArrays.size() && j < 2; j++) { //For each input buffer
-                    Double in[] = inputArrays.get(j);
+                for (int j = 0; j < inputViews.size() && j < 2; j++) { //For each input buffer
+                    DataBufferView in = inputViews.get(j);
                     int size = inputArraySizes.get(j);
                     if (in == null || size == 0) {
                         anyInput = false;
@@ -800,15 +1145,15 @@ public class Analysis {
                     }
                     if (i < size) { //New value from this iterator
                         if (j == 0)
-                            a = Math.round(in[i]);
+                            a = Math.round(in.get(i));
                         else
-                            b = Math.round(in[i]);
+                            b = Math.round(in.get(i));
                         anyInput = true;
                     } else {
                         if (j == 0)
-                            a = Math.round(in[size-1]);
+                            a = Math.round(in.get(size-1));
                         else
-                            b = Math.round(in[size-1]);
+                            b = Math.round(in.get(size-1));
                     }
                 }
                 if (anyInput) { //There was a new value. Append the result.
@@ -833,15 +1178,15 @@ public class Analysis {
 
         protected absAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
+            DataBufferView array = inputViews.get(0);
             int size = inputArraySizes.get(0);
             for (int i = 0; i < size; i++)
-                outputs.get(0).append(Math.abs(array[i]));
+                outputs.get(0).append(Math.abs(array.get(i)));
         }
     }
 
@@ -854,20 +1199,20 @@ public class Analysis {
             super(experiment, inputs, outputs);
             this.floor = floor;
             this.ceil = ceil;
-            useArray = true;
+            useView = true;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
+            DataBufferView array = inputViews.get(0);
             int size = inputArraySizes.get(0);
             for (int i = 0; i < size; i++) {
                 if (!floor && !ceil)
-                    outputs.get(0).append(Math.round(array[i]));
+                    outputs.get(0).append(Math.round(array.get(i)));
                 else if (floor) {
-                    outputs.get(0).append(Math.floor(array[i]));
+                    outputs.get(0).append(Math.floor(array.get(i)));
                 } else {
-                    outputs.get(0).append(Math.ceil(array[i]));
+                    outputs.get(0).append(Math.ceil(array.get(i)));
                 }
             }
         }
@@ -879,15 +1224,15 @@ public class Analysis {
 
         protected logAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
+            DataBufferView array = inputViews.get(0);
             int size = inputArraySizes.get(0);
             for (int i = 0; i < size; i++) {
-                outputs.get(0).append(Math.log(array[i]));
+                outputs.get(0).append(Math.log(array.get(i)));
             }
         }
     }
@@ -899,20 +1244,20 @@ public class Analysis {
 
         protected sinAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean deg) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
             this.deg = deg;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
+            DataBufferView array = inputViews.get(0);
             int size = inputArraySizes.get(0);
             if (deg) {
                 for (int i = 0; i < size; i++)
-                    outputs.get(0).append(Math.sin(Math.PI / 180. * array[i]));
+                    outputs.get(0).append(Math.sin(Math.PI / 180. * array.get(i)));
             } else {
                 for (int i = 0; i < size; i++)
-                    outputs.get(0).append(Math.sin(array[i]));
+                    outputs.get(0).append(Math.sin(array.get(i)));
             }
         }
     }
@@ -924,20 +1269,20 @@ public class Analysis {
 
         protected cosAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean deg) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
             this.deg = deg;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
+            DataBufferView array = inputViews.get(0);
             int size = inputArraySizes.get(0);
             if (deg) {
                 for (int i = 0; i < size; i++)
-                    outputs.get(0).append(Math.cos(Math.PI / 180. * array[i]));
+                    outputs.get(0).append(Math.cos(Math.PI / 180. * array.get(i)));
             } else {
                 for (int i = 0; i < size; i++)
-                    outputs.get(0).append(Math.cos(array[i]));
+                    outputs.get(0).append(Math.cos(array.get(i)));
             }
         }
     }
@@ -950,20 +1295,20 @@ public class Analysis {
 
         protected tanAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean deg) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
             this.deg = deg;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
+            DataBufferView array = inputViews.get(0);
             int size = inputArraySizes.get(0);
             if (deg) {
                 for (int i = 0; i < size; i++)
-                    outputs.get(0).append(Math.tan(Math.PI / 180. * array[i]));
+                    outputs.get(0).append(Math.tan(Math.PI / 180. * array.get(i)));
             } else {
                 for (int i = 0; i < size; i++)
-                    outputs.get(0).append(Math.tan(array[i]));
+                    outputs.get(0).append(Math.tan(array.get(i)));
             }
         }
     }
@@ -971,15 +1316,15 @@ public class Analysis {
     public static class sinhAM extends AnalysisModule implements Serializable {
         protected sinhAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
+            DataBufferView array = inputViews.get(0);
             int size = inputArraySizes.get(0);
             for (int i = 0; i < size; i++)
-                outputs.get(0).append(Math.sinh(array[i]));
+                outputs.get(0).append(Math.sinh(array.get(i)));
         }
     }
 
@@ -987,15 +1332,15 @@ public class Analysis {
 
         protected coshAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
+            DataBufferView array = inputViews.get(0);
             int size = inputArraySizes.get(0);
             for (int i = 0; i < size; i++)
-                outputs.get(0).append(Math.cosh(array[i]));
+                outputs.get(0).append(Math.cosh(array.get(i)));
         }
     }
 
@@ -1003,15 +1348,15 @@ public class Analysis {
 
         protected tanhAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
+            DataBufferView array = inputViews.get(0);
             int size = inputArraySizes.get(0);
             for (int i = 0; i < size; i++)
-                outputs.get(0).append(Math.tanh(array[i]));
+                outputs.get(0).append(Math.tanh(array.get(i)));
         }
     }
 
@@ -1020,20 +1365,20 @@ public class Analysis {
 
         protected asinAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean deg) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
             this.deg = deg;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
+            DataBufferView array = inputViews.get(0);
             int size = inputArraySizes.get(0);
             if (deg) {
                 for (int i = 0; i < size; i++)
-                    outputs.get(0).append(180. / Math.PI * Math.asin(array[i]));
+                    outputs.get(0).append(180. / Math.PI * Math.asin(array.get(i)));
             } else {
                 for (int i = 0; i < size; i++)
-                    outputs.get(0).append(Math.asin(array[i]));
+                    outputs.get(0).append(Math.asin(array.get(i)));
             }
         }
     }
@@ -1043,20 +1388,20 @@ public class Analysis {
 
         protected acosAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean deg) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
             this.deg = deg;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
+            DataBufferView array = inputViews.get(0);
             int size = inputArraySizes.get(0);
             if (deg) {
                 for (int i = 0; i < size; i++)
-                    outputs.get(0).append(180. / Math.PI * Math.acos(array[i]));
+                    outputs.get(0).append(180. / Math.PI * Math.acos(array.get(i)));
             } else {
                 for (int i = 0; i < size; i++)
-                    outputs.get(0).append(Math.acos(array[i]));
+                    outputs.get(0).append(Math.acos(array.get(i)));
             }
         }
     }
@@ -1066,20 +1411,20 @@ public class Analysis {
 
         protected atanAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean deg) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
             this.deg = deg;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
+            DataBufferView array = inputViews.get(0);
             int size = inputArraySizes.get(0);
             if (deg) {
                 for (int i = 0; i < size; i++)
-                    outputs.get(0).append(180. / Math.PI * Math.atan(array[i]));
+                    outputs.get(0).append(180. / Math.PI * Math.atan(array.get(i)));
             } else {
                 for (int i = 0; i < size; i++)
-                    outputs.get(0).append(Math.atan(array[i]));
+                    outputs.get(0).append(Math.atan(array.get(i)));
             }
         }
     }
@@ -1089,23 +1434,23 @@ public class Analysis {
 
         protected atan2AM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean deg) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
             this.deg = deg;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
-            Double array2[] = inputArrays.get(1);
+            DataBufferView array = inputViews.get(0);
+            DataBufferView array2 = inputViews.get(1);
             int size = inputArraySizes.get(0);
             if (size > inputArraySizes.get(1))
                 size = inputArraySizes.get(1);
             if (deg) {
                 for (int i = 0; i < size; i++)
-                    outputs.get(0).append(180. / Math.PI * Math.atan2(array[i], array2[i]));
+                    outputs.get(0).append(180. / Math.PI * Math.atan2(array.get(i), array2.get(i)));
             } else {
                 for (int i = 0; i < size; i++)
-                    outputs.get(0).append(Math.atan2(array[i], array2[i]));
+                    outputs.get(0).append(Math.atan2(array.get(i), array2.get(i)));
             }
         }
     }
@@ -1115,15 +1460,15 @@ public class Analysis {
 
         protected firstAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
         }
 
         @Override
         protected void update() {
             //Just get the first value and append it to each buffer
             for (int i = 0; i < outputs.size(); i++) {
-                if (outputs.get(i) != null && i < inputArrays.size() && inputArrays.get(i) != null && inputArraySizes.get(i) > 0) {
-                    outputs.get(i).append(inputArrays.get(i)[0]);
+                if (outputs.get(i) != null && i < inputViews.size() && inputViews.get(i) != null && inputArraySizes.get(i) > 0) {
+                    outputs.get(i).append(inputViews.get(i).get(0));
                 }
             }
 
@@ -1140,42 +1485,49 @@ public class Analysis {
     //In multiple mode input3 may set a threshold: A local maximum will be searched in ranges of consecutive values above the threshold, Default: 0
     public static class maxAM extends AnalysisModule implements Serializable {
         private boolean multiple = false;
+        transient private ExtremumDeque candidates;
+        transient private long start; //Absolute index of the first value of input1 since the state has been reset
+        transient private boolean hadX; //Whether the x values of the candidates have been taken from input2 (otherwise they are the absolute index)
+        transient private boolean continuable; //False if some x values had to be generated although input2 has been given
 
         protected maxAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean multiple) {
             super(experiment, inputs, outputs);
             this.multiple = multiple;
+            useView = true;
+            //Only the maximum of the whole dataset can be continued from the last update
+            streaming = !multiple;
         }
 
         @Override
         protected void update() {
-            double threshold = 0.;
+            DataBufferView xIn = inputViews.get(0);
+            int xSize = inputArraySizes.get(0);
+            DataBufferView y = inputViews.get(1);
+            int n = inputArraySizes.get(1);
 
-            //Get iterators, values do not make sense here.
-            Vector<Iterator> its = new Vector<>();
-            for (int i = 0; i < 2; i++) {
-                if (inputs.get(i) != null)
-                    its.add(inputs.get(i).getIterator());
-                else
-                    its.add(null);
+            if (!multiple) {
+                updateStreaming(xIn, xSize, y, n);
+                return;
             }
 
-            if (multiple && inputs.size() > 2 && inputs.get(2) != null)
-                threshold = inputs.get(2).getValue();
+            double threshold = 0.;
+            if (inputViews.size() > 2 && inputViews.get(2) != null)
+                threshold = inputArraySizes.get(2) > 0 ? inputViews.get(2).get(inputArraySizes.get(2)-1) : Double.NaN;
 
             double max = Double.NEGATIVE_INFINITY; //This will hold the maximum value
             double x = Double.NEGATIVE_INFINITY; //The x location of the maximum
             double currentX = -1; //Current x during iteration
 
-            while (its.get(1).hasNext()) { //For each value of input1
-                double v = (double)its.get(1).next();
+            for (int i = 0; i < n; i++) { //For each value of input1
+                double v = y.get(i);
 
                 //if input2 is given set x to this value. Otherwise generate x by incrementing it by 1.
-                if (its.get(0) != null && its.get(0).hasNext())
-                    currentX = (double)its.get(0).next();
+                if (i < xSize)
+                    currentX = xIn.get(i);
                 else
                     currentX += 1;
 
-                if (multiple && v < threshold) {
+                if (v < threshold) {
                     if (!Double.isInfinite(x)) {
                         if (outputs.size() > 0 && outputs.get(0) != null) {
                             outputs.get(0).append(max);
@@ -1204,6 +1556,46 @@ public class Analysis {
             }
 
         }
+
+        private void updateStreaming(DataBufferView xIn, int xSize, DataBufferView y, int n) {
+            boolean hasX = xSize > 0;
+            int from = 0;
+            if (incremental && continuable && hasX == hadX && (!hasX || inputDropped[0] == inputDropped[1])) {
+                start += inputDropped[1];
+                candidates.dropBefore(start);
+                from = n - inputAdded[1];
+            } else {
+                if (candidates == null)
+                    candidates = new ExtremumDeque(false);
+                candidates.clear();
+                start = 0;
+            }
+            hadX = hasX;
+            continuable = !hasX || xSize >= n;
+
+            double currentX = from > 0 && from <= xSize ? xIn.get(from-1) : -1; //Only needed if input2 is shorter than input1
+            for (int i = from; i < n; i++) {
+                //if input2 is given use its value as x. Otherwise x is the index, which is stored as absolute index as the start of the buffer may move.
+                if (i < xSize)
+                    currentX = xIn.get(i);
+                else
+                    currentX += 1;
+                candidates.add(start + i, y.get(i), hasX ? currentX : start + i);
+            }
+
+            //Done. Append result to output1 and output2 if used.
+            if (candidates.isEmpty())
+                return;
+            double x = hasX ? candidates.x() : candidates.x() - start;
+            if (!Double.isInfinite(x)) {
+                if (outputs.size() > 0 && outputs.get(0) != null) {
+                    outputs.get(0).append(candidates.value());
+                }
+                if (outputs.size() > 1 && outputs.get(1) != null) {
+                    outputs.get(1).append(x);
+                }
+            }
+        }
     }
 
     //Get the minimum of the whole dataset.
@@ -1216,42 +1608,49 @@ public class Analysis {
     //In multiple mode input3 may set a threshold: A local minimum will be searched in ranges of consecutive values below the threshold, Default: 0
     public static class minAM extends AnalysisModule implements Serializable {
         private boolean multiple = false;
+        transient private ExtremumDeque candidates;
+        transient private long start; //Absolute index of the first value of input1 since the state has been reset
+        transient private boolean hadX; //Whether the x values of the candidates have been taken from input2 (otherwise they are the absolute index)
+        transient private boolean continuable; //False if some x values had to be generated although input2 has been given
 
         protected minAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean multiple) {
             super(experiment, inputs, outputs);
             this.multiple = multiple;
+            useView = true;
+            //Only the minimum of the whole dataset can be continued from the last update
+            streaming = !multiple;
         }
 
         @Override
         protected void update() {
-            double threshold = 0.;
+            DataBufferView xIn = inputViews.get(0);
+            int xSize = inputArraySizes.get(0);
+            DataBufferView y = inputViews.get(1);
+            int n = inputArraySizes.get(1);
 
-            //Get iterators, values do not make sense here.
-            Vector<Iterator> its = new Vector<>();
-            for (int i = 0; i < 2; i++) {
-                if (inputs.get(i) != null)
-                    its.add(inputs.get(i).getIterator());
-                else
-                    its.add(null);
+            if (!multiple) {
+                updateStreaming(xIn, xSize, y, n);
+                return;
             }
 
-            if (multiple && inputs.size() > 2 && inputs.get(2) != null)
-                threshold = inputs.get(2).getValue();
+            double threshold = 0.;
+            if (inputViews.size() > 2 && inputViews.get(2) != null)
+                threshold = inputArraySizes.get(2) > 0 ? inputViews.get(2).get(inputArraySizes.get(2)-1) : Double.NaN;
 
             double min = Double.POSITIVE_INFINITY; //This will hold the minimum value
             double x = Double.NEGATIVE_INFINITY; //The x location of the minimum
             double currentX = -1; //Current x during iteration
 
-            while (its.get(1).hasNext()) { //For each value of input1
-                double v = (double)its.get(1).next();
+            for (int i = 0; i < n; i++) { //For each value of input1
+                double v = y.get(i);
 
                 //if input2 is given set x to this value. Otherwise generate x by incrementing it by 1.
-                if (its.get(0) != null && its.get(0).hasNext())
-                    currentX = (double)its.get(0).next();
+                if (i < xSize)
+                    currentX = xIn.get(i);
                 else
                     currentX += 1;
 
-                if (multiple && v > threshold) {
+                if (v > threshold) {
                     if (!Double.isInfinite(x)) {
                         if (outputs.size() > 0 && outputs.get(0) != null) {
                             outputs.get(0).append(min);
@@ -1263,7 +1662,7 @@ public class Analysis {
                         x = Double.NEGATIVE_INFINITY;
                     }
                 } else if (v < min) {
-                    //Set maximum and location of maximum
+                    //Set minimum and location of minimum
                     min = v;
                     x = currentX;
                 }
@@ -1280,6 +1679,46 @@ public class Analysis {
             }
 
         }
+
+        private void updateStreaming(DataBufferView xIn, int xSize, DataBufferView y, int n) {
+            boolean hasX = xSize > 0;
+            int from = 0;
+            if (incremental && continuable && hasX == hadX && (!hasX || inputDropped[0] == inputDropped[1])) {
+                start += inputDropped[1];
+                candidates.dropBefore(start);
+                from = n - inputAdded[1];
+            } else {
+                if (candidates == null)
+                    candidates = new ExtremumDeque(true);
+                candidates.clear();
+                start = 0;
+            }
+            hadX = hasX;
+            continuable = !hasX || xSize >= n;
+
+            double currentX = from > 0 && from <= xSize ? xIn.get(from-1) : -1; //Only needed if input2 is shorter than input1
+            for (int i = from; i < n; i++) {
+                //if input2 is given use its value as x. Otherwise x is the index, which is stored as absolute index as the start of the buffer may move.
+                if (i < xSize)
+                    currentX = xIn.get(i);
+                else
+                    currentX += 1;
+                candidates.add(start + i, y.get(i), hasX ? currentX : start + i);
+            }
+
+            //Done. Append result to output1 and output2 if used.
+            if (candidates.isEmpty())
+                return;
+            double x = hasX ? candidates.x() : candidates.x() - start;
+            if (!Double.isInfinite(x)) {
+                if (outputs.size() > 0 && outputs.get(0) != null) {
+                    outputs.get(0).append(candidates.value());
+                }
+                if (outputs.size() > 1 && outputs.get(1) != null) {
+                    outputs.get(1).append(x);
+                }
+            }
+        }
     }
 
     //Find the x value where the input crosses a given threshold.
@@ -1621,11 +2060,13 @@ public class Analysis {
     //If the input length is not a power of two the input will be filled with zeros until it is a power of two
     public static class fftAM extends AnalysisModule implements Serializable {
         private FFT fft;
+        transient private FloatBuffer xy;
+        transient private double[] re, im;
 
         protected fftAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
 
-            useArray = true;
+            useView = true;
             if (!nativeLib)
                 fft = new FFT();
         }
@@ -1635,32 +2076,58 @@ public class Analysis {
 
             if (nativeLib) {
 
-                if (inputArrays.size() == 0)
+                if (inputViews.size() == 0)
                     return;
 
                 int size = inputArraySizes.get(0);
                 if (size < 2)
                     return;
 
-                final float xy[] = new float[2 * size];
+                DataBufferView reIn = inputViews.get(0);
+                DataBufferView imIn = inputViews.size() > 1 ? inputViews.get(1) : null;
+                int imSize = imIn != null ? inputArraySizes.get(1) : 0;
 
-                for (int i = 0; i < size; i++) {
-                    xy[2 * i] = inputArrays.get(0)[i].floatValue();
-                    xy[2 * i + 1] = (inputArrays.size() > 1 && inputArraySizes.get(1) > i ? inputArrays.get(1)[i].floatValue() : 0.f);
-                }
+                re = ensureCapacity(re, size);
+                im = ensureCapacity(im, size);
+                xy = nativeFloats(xy, 2 * size);
 
-                fftw3complex(xy, size);
+                if (imSize == 0) {
+                    //Real input: Only the first half of the result has to be calculated
+                    for (int i = 0; i < size; i++)
+                        xy.put(i, (float) reIn.get(i));
 
-                //Append the real part of the result to output1 and the imaginary part to output2 (if used)
-                for (int i = 0; i < size; i++) {
-                    if (outputs.size() > 0 && outputs.get(0) != null)
-                        outputs.get(0).append(xy[2 * i]);
-                    if (outputs.size() > 1 && outputs.get(1) != null)
-                        outputs.get(1).append(xy[2 * i + 1]);
+                    fftw3real(xy, size);
+
+                    for (int i = 0; i <= size / 2; i++) {
+                        re[i] = xy.get(2 * i);
+                        im[i] = xy.get(2 * i + 1);
+                    }
+                    for (int i = size / 2 + 1; i < size; i++) {
+                        re[i] = re[size - i];
+                        im[i] = -im[size - i];
+                    }
+                } else {
+                    for (int i = 0; i < size; i++) {
+                        xy.put(2 * i, (float) reIn.get(i));
+                        xy.put(2 * i + 1, i < imSize ? (float) imIn.get(i) : 0.f);
+                    }
+
+                    fftw3complex(xy, size);
+
+                    for (int i = 0; i < size; i++) {
+                        re[i] = xy.get(2 * i);
+                        im[i] = xy.get(2 * i + 1);
+                    }
                 }
+
+                //Append the real part of the result to output1 and the imaginary part to output2 (if used)
+                if (outputs.size() > 0 && outputs.get(0) != null)
+                    outputs.get(0).append(re, size);
+                if (outputs.size() > 1 && outputs.get(1) != null)
+                    outputs.get(1).append(im, size);
             } else {
 
-                int size = inputArrays.get(0).length;
+                int size = inputArraySizes.get(0);
                 if (size < 2)
                     return;
 
@@ -1668,30 +2135,28 @@ public class Analysis {
                     fft.prepare(size);
                 }
 
-                Double x[] = Arrays.copyOf(inputArrays.get(0), fft.np2);
-                Double y[];
-                if (inputArrays.size() > 1)
-                    y = Arrays.copyOf(inputArrays.get(1), fft.np2);
-                else
-                    y = new Double[fft.np2];
+                //Copy the inputs and fill any unused values with zeros
+                re = ensureCapacity(re, fft.np2);
+                im = ensureCapacity(im, fft.np2);
+                DataBufferView reIn = inputViews.get(0);
+                DataBufferView imIn = inputViews.size() > 1 ? inputViews.get(1) : null;
+                int imSize = imIn != null ? Math.min(inputArraySizes.get(1), fft.np2) : 0;
+                System.arraycopy(reIn.data, reIn.offset, re, 0, size);
+                Arrays.fill(re, size, fft.np2, 0.);
 
-                //Fill any unused inputs with zeros
-                for (int i = 0; i < fft.np2; i++) {
-                    if (x[i] == null)
-                        x[i] = 0.;
-                    if (y[i] == null)
-                        y[i] = 0.;
+                if (imSize == 0) {
+                    fft.calculateReal(re, im);
+                } else {
+                    System.arraycopy(imIn.data, imIn.offset, im, 0, imSize);
+                    Arrays.fill(im, imSize, fft.np2, 0.);
+                    fft.calculate(re, im);
                 }
 
-                fft.calculate(x, y);
-
                 //Append the real part of the result to output1 and the imaginary part to output2 (if used)
-                for (int i = 0; i < size; i++) {
-                    if (outputs.size() > 0 && outputs.get(0) != null)
-                        outputs.get(0).append(x[i]);
-                    if (outputs.size() > 1 && outputs.get(1) != null)
-                        outputs.get(1).append(y[i]);
-                }
+                if (outputs.size() > 0 && outputs.get(0) != null)
+                    outputs.get(0).append(re, size);
+                if (outputs.size() > 1 && outputs.get(1) != null)
+                    outputs.get(1).append(im, size);
 
             }
         }
@@ -1776,42 +2241,52 @@ public class Analysis {
     //input6 is the precision in samples (optional, default: 1)
     //output1 is the periodicity in units of input1
     public static class periodicityAM extends AnalysisModule implements Serializable {
+        transient private FloatBuffer correlation;
 
         protected periodicityAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
+            useView = true;
+        }
+
+        private boolean hasInput(int i) {
+            return inputViews.size() > i && inputViews.get(i) != null;
+        }
+
+        //Last value of an input or NaN if it is empty
+        private double getInputValue(int i) {
+            return inputArraySizes.get(i) > 0 ? inputViews.get(i).get(inputArraySizes.get(i)-1) : Double.NaN;
         }
 
         @Override
         protected void update() {
-            //Get arrays for random access
-            Double x[] = inputs.get(0).buffer.getArray();
-            Double y[] = inputs.get(1).buffer.getArray();
+            DataBufferView x = inputViews.get(0);
+            DataBufferView y = inputViews.get(1);
 
-            int n = inputs.get(1).buffer.getFilledSize();
+            int n = inputArraySizes.get(1);
 
             //Get dx and overlap
-            int dx = (int)inputs.get(2).getValue();
+            int dx = (int)getInputValue(2);
             if (dx <= 0)
                 return;
 
             //Overlap is optional...
             int overlap = 0;
-            if (inputs.size() >= 4 && inputs.get(3) != null)
-                overlap = (int)inputs.get(3).getValue();
+            if (hasInput(3))
+                overlap = (int)getInputValue(3);
 
             boolean userSelectedRange = false;
 
             //min period is optional...
             int minPeriod = 0;
-            if (inputs.size() >= 5 && inputs.get(4) != null) {
-                minPeriod = (int) Math.floor(inputs.get(4).getValue());
+            if (hasInput(4)) {
+                minPeriod = (int) Math.floor(getInputValue(4));
                 userSelectedRange = true;
             }
 
             //max period is optional...
             int maxPeriod = Integer.MAX_VALUE;
-            if (inputs.size() >= 6 && inputs.get(5) != null) {
-                maxPeriod = (int) Math.ceil(inputs.get(5).getValue());
+            if (hasInput(5)) {
+                maxPeriod = (int) Math.ceil(getInputValue(5));
                 userSelectedRange = true;
             }
 
@@ -1829,6 +2304,18 @@ public class Analysis {
                 if (maxPeriod > x2-x1)
                     maxPeriod = x2-x1;
 
+                //With the native library, the autocorrelation of the window is calculated for all
+                //displacements at once by FFT. The window is zero-padded to twice its size, so the
+                //circular correlation does not wrap around.
+                boolean fftCorrelation = nativeLib && minPeriod < maxPeriod;
+                if (fftCorrelation) {
+                    int size = 2 * (x2 - x1);
+                    correlation = nativeFloats(correlation, size);
+                    for (int j = 0; j < size; j++)
+                        correlation.put(j, j < x2 - x1 ? (float) y.get(x1 + j) : 0.f);
+                    fftw3autocorrelation(correlation, size);
+                }
+
                 int firstNegative = -1;
                 int maxPosition = -1;
                 double maxValue = Double.NEGATIVE_INFINITY;
@@ -1841,9 +2328,14 @@ public class Analysis {
                     step = 2; //Until we find the first negative value, we can go faster...
 
                 for (int i = minPeriod; i < maxPeriod; i += step) { //Displacement i for each value of input1
-                    double sum = 0.;
-                    for (int j = x1; j < x2 - i; j++) { //For each value of input1 minus the current displacement
-                        sum += y[j] * y[j + i]; //Product of normal and displaced data
+                    double sum;
+                    if (fftCorrelation)
+                        sum = correlation.get(i);
+                    else {
+                        sum = 0.;
+                        for (int j = x1; j < x2 - i; j++) { //For each value of input1 minus the current displacement
+                            sum += y.get(j) * y.get(j + i); //Product of normal and displaced data
+                        }
                     }
                     sum /= (double) (x2-x1-i); //Normalize to the number of values at this displacement
 
@@ -1873,11 +2365,11 @@ public class Analysis {
                     double dy = 0.5 * (maxValueRight - maxValueLeft);
                     double d2y = 2*maxValue - maxValueLeft - maxValueRight;
                     double m = dy / d2y;
-                    xMax = x[x1+maxPosition] + 0.5*m*(x[x1+maxPosition+1] - x[x1+maxPosition-1]) - x[x1];
+                    xMax = x.get(x1+maxPosition) + 0.5*m*(x.get(x1+maxPosition+1) - x.get(x1+maxPosition-1)) - x.get(x1);
                 }
 //Log.d("test", "min: " + minPeriod + ", max: " + maxPeriod + ", x1: " + x1 + ", pos: " + maxPosition + ", period: " + xMax);
                 if (outputs.size() > 0 && outputs.get(0) != null)
-                    outputs.get(0).append(x[x1]);
+                    outputs.get(0).append(x.get(x1));
                 if (outputs.size() > 1 && outputs.get(1) != null)
                     outputs.get(1).append(xMax);
             }
@@ -1887,31 +2379,35 @@ public class Analysis {
     //Simple differentiation by calculating the difference of neighboring points
     //The resulting array has exactly one element less than the input array
     public static class differentiateAM extends AnalysisModule implements Serializable {
+        transient private double[] result;
 
         protected differentiateAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
+            useView = true;
+            //Streaming: The differences of the old values are already in the output and only need to be continued
+            streaming = true;
+            clearInModule = true;
         }
 
         @Override
         protected void update() {
-            double v, last = Double.NaN;
-            boolean first = true;
+            DataBufferView in = inputViews.get(0);
+            int n = inputArraySizes.get(0);
 
-            //The actual calculation
-            Iterator it = inputs.get(0).getIterator();
-            if (it == null) //non-buffer values are ignored
+            int from = 1;
+            if (incremental && inputDropped[0] == 0)
+                from = Math.max(n - inputAdded[0], 1);
+            else
+                clearOutputs();
+
+            if (from >= n)
                 return;
+
             //Calculate difference of neighbors
-            while (it.hasNext()) {
-                if (first) { //The first value is just stored
-                    last = (double)it.next();
-                    first = false;
-                    continue;
-                }
-                v = (double)it.next();
-                outputs.get(0).append(v-last);
-                last = v;
-            }
+            result = ensureCapacity(result, n - from);
+            for (int i = from; i < n; i++)
+                result[i - from] = in.get(i) - in.get(i-1);
+            outputs.get(0).append(result, n - from);
         }
     }
 
@@ -1919,24 +2415,40 @@ public class Analysis {
     //So, first value will be v0, second will be v0+v1, third v0+v1+v2 etc.
     //The resulting array has exactly as many elements as the input array
     public static class integrateAM extends AnalysisModule implements Serializable {
+        transient private double sum;
+        transient private double[] result;
 
         protected integrateAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
+            useView = true;
+            //Streaming: The sum is continued from the last update, so only new values need to be added
+            streaming = true;
+            clearInModule = true;
         }
 
         @Override
         protected void update() {
-            double sum = 0.;
+            DataBufferView in = inputViews.get(0);
+            int n = inputArraySizes.get(0);
 
-            //The actual calculation
-            Iterator it = inputs.get(0).getIterator();
-            if (it == null) //non-buffer values are ignored
+            int from = 0;
+            if (incremental && inputDropped[0] == 0)
+                from = n - inputAdded[0];
+            else {
+                clearOutputs();
+                sum = 0.;
+            }
+
+            if (from >= n)
                 return;
+
             //Calculate the sum
-            while (it.hasNext()) {
-                sum += (double)it.next();
-                outputs.get(0).append(sum);
+            result = ensureCapacity(result, n - from);
+            for (int i = from; i < n; i++) {
+                sum += in.get(i);
+                result[i - from] = sum;
             }
+            outputs.get(0).append(result, n - from);
         }
     }
 
@@ -1947,9 +2459,12 @@ public class Analysis {
     //This does not work if both have the same size. Pad one input to match the target total size first.
     //The size of the output is the difference of both input sizes.
     public static class crosscorrelationAM extends AnalysisModule implements Serializable {
+        transient private FloatBuffer nativeA, nativeB;
+        transient private double[] result;
+
         protected crosscorrelationAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
         }
 
         @Override
@@ -1962,49 +2477,44 @@ public class Analysis {
                 if (sizeA == 0 || sizeB == 0)
                     return;
 
-                Double[] a = inputArrays.get(0);
-                Double[] b = inputArrays.get(1);
-
-                final float af[] = new float[size];
-                final float bf[] = new float[size];
+                //Put the larger input in af and the smaller one in bf, both zero-padded to size
+                DataBufferView a = inputViews.get(0);
+                DataBufferView b = inputViews.get(1);
+                if (sizeA <= sizeB) {
+                    DataBufferView swap = a;
+                    a = b;
+                    b = swap;
+                }
 
-                if (sizeA > sizeB) {
-                    for (int i = 0; i < sizeA; i++) {
-                        af[i] = a[i].floatValue();
-                    }
-                    for (int i = 0; i < sizeB; i++) {
-                        bf[i] = b[i].floatValue();
-                    }
-                } else {
-                    for (int i = 0; i < sizeA; i++) {
-                        bf[i] = a[i].floatValue();
-                    }
-                    for (int i = 0; i < sizeB; i++) {
-                        af[i] = b[i].floatValue();
-                    }
+                nativeA = nativeFloats(nativeA, size);
+                nativeB = nativeFloats(nativeB, size);
+                for (int i = 0; i < size; i++) {
+                    nativeA.put(i, i < a.length ? (float) a.get(i) : 0.f);
+                    nativeB.put(i, i < b.length ? (float) b.get(i) : 0.f);
                 }
 
-                fftw3crosscorrelation(af, bf, size);
+                fftw3crosscorrelation(nativeA, nativeB, size);
 
-                //Append the real part of the result to output1 and the imaginary part to output2 (if used)
-                for (int i = 0; i < Math.abs(sizeA - sizeB); i++) {
-                    if (outputs.size() > 0 && outputs.get(0) != null)
-                        outputs.get(0).append(af[i]);
-                }
+                int n = Math.abs(sizeA - sizeB);
+                result = ensureCapacity(result, n);
+                for (int i = 0; i < n; i++)
+                    result[i] = nativeA.get(i);
+                if (outputs.size() > 0 && outputs.get(0) != null)
+                    outputs.get(0).append(result, n);
             } else {
 
-                Double a[], b[];
+                DataBufferView a, b;
                 int asize, bsize;
                 //Put the larger input in a and the smaller one in b
                 if (inputArraySizes.get(0) > inputArraySizes.get(1)) {
-                    a = inputArrays.get(0);
+                    a = inputViews.get(0);
                     asize = inputArraySizes.get(0);
-                    b = inputArrays.get(1);
+                    b = inputViews.get(1);
                     bsize = inputArraySizes.get(1);
                 } else {
-                    a = inputArrays.get(1);
+                    a = inputViews.get(1);
                     asize = inputArraySizes.get(1);
-                    b = inputArrays.get(0);
+                    b = inputViews.get(0);
                     bsize = inputArraySizes.get(0);
                 }
 
@@ -2016,7 +2526,7 @@ public class Analysis {
                 for (int i = 0; i < compRange; i++) {
                     double sum = 0.;
                     for (int j = 0; j < bsize; j++) {
-                        sum += a[j+i]*b[j];
+                        sum += a.get(j+i)*b.get(j);
                     }
                     sum /= (double)(compRange); //Normalize bynumber of values
                     outputs.get(0).append(sum);
@@ -2648,32 +3158,80 @@ public class Analysis {
     //With dropIncomplete false, it will output n values
     public static class movingaverageAM extends AnalysisModule implements Serializable {
         boolean dropIncomplete = false;
+        transient private int lastWidth;
+        transient private double windowSum; //Sum of the finite values in the window ending at windowEnd
+        transient private int nonFinite; //Number of NaN or infinite values in that window
+        transient private int windowEnd = -1; //Index of the last value in the window, -1 if there is none
+        transient private int windowExact; //Index at which windowSum has last been calculated from scratch
+        transient private double[] result;
 
         protected movingaverageAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean dropIncomplete) {
             super(experiment, inputs, outputs);
             this.dropIncomplete = dropIncomplete;
-            useArray = true;
+            useView = true;
+            //Streaming: Only the averages for new values are appended to the output
+            streaming = true;
+            clearInModule = true;
+        }
+
+        private void addToWindow(double v, int sign) {
+            if (Double.isNaN(v) || Double.isInfinite(v))
+                nonFinite += sign;
+            else
+                windowSum += sign * v;
         }
 
         @Override
         protected void update() {
             int width = 10;
 
-            Double[] data = inputArrays.get(0);
-            if (inputArrays.size() > 1 && inputArrays.get(1) != null && inputArraySizes.get(1) > 0)
-                width = inputArrays.get(1)[inputArraySizes.get(1)-1].intValue();
+            DataBufferView data = inputViews.get(0);
+            int n = inputArraySizes.get(0);
+            if (inputViews.size() > 1 && inputViews.get(1) != null && inputArraySizes.get(1) > 0)
+                width = (int)inputViews.get(1).get(inputArraySizes.get(1)-1);
 
             int start = dropIncomplete ? width : 0;
 
-            for (int i = start; i < inputArraySizes.get(0); i++) {
+            int from = start;
+            if (incremental && inputDropped[0] == 0 && width == lastWidth)
+                from = Math.max(n - inputAdded[0], start);
+            else {
+                clearOutputs();
+                windowEnd = -1;
+            }
+            lastWidth = width;
+
+            if (from >= n)
+                return;
+
+            result = ensureCapacity(result, n - from);
+            for (int i = from; i < n; i++) {
                 int substart = Math.max(i-width, 0);
-                double sum = 0.0;
-                for (int j = substart; j <= i; j++) {
-                    sum += data[j];
+                if (width < 0 || windowEnd < 0 || windowEnd != i-1 || i - windowExact > width) {
+                    //Sum up the whole window. This is also done once the window has moved by its
+                    //full width, so rounding errors of the moving sum do not accumulate.
+                    windowSum = 0.0;
+                    nonFinite = 0;
+                    for (int j = substart; j <= i; j++)
+                        addToWindow(data.get(j), 1);
+                    windowExact = i;
+                } else {
+                    addToWindow(data.get(i), 1);
+                    if (i-width-1 >= 0)
+                        addToWindow(data.get(i-width-1), -1);
+                }
+                windowEnd = i;
+
+                double sum = windowSum;
+                if (nonFinite > 0) {
+                    //NaN and infinite values cannot be removed from a sum again
+                    sum = 0.0;
+                    for (int j = substart; j <= i; j++)
+                        sum += data.get(j);
                 }
-                sum /= (double)(i - substart + 1);
-                outputs.get(0).append(sum);
+                result[i - from] = sum / (double)(i - substart + 1);
             }
+            outputs.get(0).append(result, n - from);
         }
     }
 
@@ -0,0 +1,196 @@
+package de.rwth_aachen.phyphox;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//The AnalysisScheduler runs the analysis modules of an experiment on a small pool of worker threads
+//Modules are executed in the order of the experiment file, but only as far as this order matters:
+//A module has to wait for an earlier module if one of them writes to a buffer that the other one
+//reads or writes (note that reading a buffer without "keep" clears it, which counts as writing).
+//Modules without such a dependency run in parallel. The caller holds the dataLock of the experiment
+//for the whole pass, so the workers do not need to lock anything on their own.
+
+class AnalysisScheduler {
+    private static final int MAX_WORKERS = 4;
+
+    private final List<Analysis.AnalysisModule> modules;
+    private final int[][] successors; //Modules that have to wait for module i
+    private final int[] dependencyCount; //Number of modules that module i has to wait for
+    private final boolean parallel; //False if the modules form a single chain anyway
+
+    private static ExecutorService executor = null;
+
+    AnalysisScheduler(List<Analysis.AnalysisModule> modules) {
+        this.modules = new ArrayList<>(modules);
+        int n = this.modules.size();
+
+        //Build the dependency graph by keeping track of the last module writing to each buffer and
+        //the modules that have read it since then
+        List<Set<Integer>> successorSets = new ArrayList<>();
+        dependencyCount = new int[n];
+        Map<DataBuffer, Integer> lastWriter = new HashMap<>();
+        Map<DataBuffer, List<Integer>> readersSinceWrite = new HashMap<>();
+
+        for (int i = 0; i < n; i++) {
+            successorSets.add(new HashSet<Integer>());
+            Set<DataBuffer> reads = new HashSet<>();
+            Set<DataBuffer> writes = new HashSet<>();
+            this.modules.get(i).getBufferAccess(reads, writes);
+            reads.removeAll(writes);
+
+            Set<Integer> dependencies = new HashSet<>();
+            for (DataBuffer buffer : reads) {
+                Integer writer = lastWriter.get(buffer);
+                if (writer != null)
+                    dependencies.add(writer);
+            }
+            for (DataBuffer buffer : writes) {
+                Integer writer = lastWriter.get(buffer);
+                if (writer != null)
+                    dependencies.add(writer);
+                List<Integer> readers = readersSinceWrite.get(buffer);
+                if (readers != null)
+                    dependencies.addAll(readers);
+            }
+
+            for (int dependency : dependencies)
+                successorSets.get(dependency).add(i);
+            dependencyCount[i] = dependencies.size();
+
+            for (DataBuffer buffer : reads) {
+                List<Integer> readers = readersSinceWrite.get(buffer);
+                if (readers == null) {
+                    readers = new ArrayList<>();
+                    readersSinceWrite.put(buffer, readers);
+                }
+                readers.add(i);
+            }
+            for (DataBuffer buffer : writes) {
+                lastWriter.put(buffer, i);
+                readersSinceWrite.remove(buffer);
+            }
+        }
+
+        successors = new int[n][];
+        int independent = 0;
+        for (int i = 0; i < n; i++) {
+            successors[i] = new int[successorSets.get(i).size()];
+            int j = 0;
+            for (int successor : successorSets.get(i))
+                successors[i][j++] = successor;
+            if (dependencyCount[i] == 0)
+                independent++;
+        }
+
+        //If every module depends on its predecessor, there is nothing to gain from the workers
+        boolean chain = independent <= 1;
+        for (int i = 0; i < n && chain; i++) {
+            if (successors[i].length > 1)
+                chain = false;
+        }
+        parallel = n > 1 && !chain && Runtime.getRuntime().availableProcessors() > 1;
+    }
+
+    boolean isFor(List<Analysis.AnalysisModule> modules) {
+        return this.modules.equals(modules);
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            int workers = Math.max(2, Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors()));
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(workers, workers, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "AnalysisWorker-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            pool.allowCoreThreadTimeOut(true); //Do not keep idle threads around when no experiment is running
+            executor = pool;
+        }
+        return executor;
+    }
+
+    private void runModule(int i, int cycle) {
+        Analysis.AnalysisModule mod = modules.get(i);
+        try {
+            mod.updateIfNotStatic(cycle);
+        } catch (Exception e) {
+            Log.e("processAnalysis", "Unhandled exception in analysis module " + mod.toString() + ".", e);
+        }
+    }
+
+    //Run all modules once. Returns when all modules have finished. Has to be called while holding
+    //the dataLock of the experiment.
+    void run(final int cycle) {
+        int n = modules.size();
+        if (!parallel) {
+            for (int i = 0; i < n; i++) {
+                Thread.yield();
+                runModule(i, cycle);
+            }
+            return;
+        }
+
+        final AtomicInteger[] remaining = new AtomicInteger[n];
+        for (int i = 0; i < n; i++)
+            remaining[i] = new AtomicInteger(dependencyCount[i]);
+        final CountDownLatch done = new CountDownLatch(n);
+        final ExecutorService pool = getExecutor();
+
+        class Task implements Runnable {
+            final int i;
+
+            Task(int i) {
+                this.i = i;
+            }
+
+            @Override
+            public void run() {
+                try {
+                    runModule(i, cycle);
+                } finally {
+                    for (int successor : successors[i]) {
+                        if (remaining[successor].decrementAndGet() == 0)
+                            pool.execute(new Task(successor));
+                    }
+                    done.countDown();
+                }
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (dependencyCount[i] == 0)
+                pool.execute(new Task(i));
+        }
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                //We must not return while workers are still using the buffers
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+}
@@ -1,6 +1,9 @@
 package de.rwth_aachen.phyphox;
 
 import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.Toast;
 
 import androidx.multidex.MultiDexApplication;
 
@@ -8,4 +11,24 @@ import androidx.multidex.MultiDexApplication;
 
 public class App extends MultiDexApplication {
     public PhyphoxExperiment experiment = null;
+    public Runnable onSessionsRecovered = null; //Called on the main thread if journals have been recovered, so the experiment list can be reloaded
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        Analysis.loadFFTWisdom(this);
+
+        //Turn journals of measurements that did not end regularly into states (see SessionJournal).
+        //This only happens once per process, so no journal of this process can be mistaken for one
+        //that has been left behind.
+        new Thread(() -> {
+            if (SessionJournal.recover(this) > 0) {
+                new Handler(Looper.getMainLooper()).post(() -> {
+                    Toast.makeText(this, R.string.recoveredSessionSuccess, Toast.LENGTH_LONG).show();
+                    if (onSessionsRecovered != null)
+                        onSessionsRecovered.run();
+                });
+            }
+        }, "SessionJournal").start();
+    }
 }
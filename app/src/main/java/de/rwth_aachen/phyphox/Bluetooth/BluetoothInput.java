@@ -62,13 +62,18 @@ public class BluetoothInput extends Bluetooth {
      */
     private Vector<DataOutput> data = new Vector<>();
 
-    private Lock dataLock;
+    private Lock inputLock;
 
     /**
      * Used to store data in mode "poll" before it will be retrieved all together
      */
     protected HashMap<Integer, List<Double>> outputs;
 
+    /**
+     * Values received by notifications until the experiment moves them to the buffers
+     */
+    private final InputQueue queue = new InputQueue();
+
     /**
      * Create a new BluetoothInput.
      *
@@ -98,7 +103,7 @@ public class BluetoothInput extends Bluetooth {
             throw new PhyphoxFile.phyphoxFileException(context.getResources().getString(R.string.bt_exception_rate));
         }
 
-        this.dataLock = lock;
+        this.inputLock = lock;
 
         if (rate <= 0)
             this.period = 0; // as fast as possible
@@ -288,7 +293,7 @@ public class BluetoothInput extends Bluetooth {
 
     /**
      * Called when there was a notification that the value of a Characteristic has changed.
-     * Write data to the buffer immediately.
+     * Queue the data for the buffers immediately.
      *
      * @param data           data read from the characteristic
      * @param characteristic characteristic that got the notification
@@ -301,27 +306,75 @@ public class BluetoothInput extends Bluetooth {
         ArrayList<Characteristic> characteristics = mapping.get(characteristic);
         double t = experimentTimeReference.getExperimentTime();
 
-        List<Double>[] outputs = new ArrayList[characteristics.size()];
-        for (Characteristic c : characteristics) {
-            outputs[characteristics.indexOf(c)] = convertData(data, c.inputConversionFunction);
-        }
+        //Hand the data to the experiment through the queue, so we do not have to wait for the
+        //inputLock as notifications may arrive at high rates.
+        if (enqueueData(data, characteristic, characteristics, t))
+            return;
 
-        //Append the data to available buffers
-        dataLock.lock();
+        //The queue is full as the analysis has not picked up the data for a long time. Stage the
+        //queued values and this notification directly instead.
+        queue.cancel();
+        inputLock.lock();
         try {
+            queue.drain(this.data);
             for (Characteristic c : characteristics) {
-                for (Double v: outputs[characteristics.indexOf(c)])
-                    this.data.get(c.index).append(v);
-                this.data.get(c.index).markSet();
+                for (Double v : convertData(data, c.inputConversionFunction))
+                    this.data.get(c.index).stage(v);
+                this.data.get(c.index).stageMarkSet();
             }
             // append time to buffer if extra=time is set
             if (saveTime.containsKey(characteristic)) {
-                this.data.get(saveTime.get(characteristic)).append(t);
-                this.data.get(saveTime.get(characteristic)).markSet();
+                this.data.get(saveTime.get(characteristic)).stage(t);
+                this.data.get(saveTime.get(characteristic)).stageMarkSet();
             }
         } finally {
-            dataLock.unlock();
+            inputLock.unlock();
+        }
+    }
+
+    /**
+     * Add the values of a notification to the queue and publish them as a whole.
+     *
+     * @param data            data read from the characteristic
+     * @param characteristic  characteristic that got the notification
+     * @param characteristics characteristics mapped to this characteristic
+     * @param t               time of the notification
+     * @return false if the queue is full. Nothing has been published in this case.
+     */
+    private boolean enqueueData(byte[] data, BluetoothGattCharacteristic characteristic, ArrayList<Characteristic> characteristics, double t) {
+        for (Characteristic c : characteristics) {
+            try {
+                if (!c.inputConversionFunction.enqueue(data, queue, c.index))
+                    return false;
+            } catch (Exception e) {
+                // keep the values converted so far
+            }
+            if (!queue.offerMarkSet(c.index))
+                return false;
         }
+        // append time to buffer if extra=time is set
+        Integer timeIndex = saveTime.get(characteristic);
+        if (timeIndex != null) {
+            if (!queue.offer(timeIndex, t) || !queue.offerMarkSet(timeIndex))
+                return false;
+        }
+        queue.publish();
+        return true;
+    }
+
+    /**
+     * Stage the values received by notifications in the buffers. This is called by the experiment
+     * before it commits the staged values and requires the inputLock.
+     */
+    public void commitQueued() {
+        queue.drain(data);
+    }
+
+    /**
+     * Drop the values received by notifications that have not been staged yet. Requires the inputLock.
+     */
+    public void discardQueued() {
+        queue.clear();
     }
 
 
@@ -332,22 +385,22 @@ public class BluetoothInput extends Bluetooth {
         double t = experimentTimeReference.getExperimentTime();
 
         //Append the data to available buffers
-        dataLock.lock();
+        inputLock.lock();
         try {
             for (ArrayList<Characteristic> al : mapping.values()) {
                 for (Characteristic c : al) {
                     for (Double v: outputs.get(c.index))
-                        data.get(c.index).append(v);
-                    data.get(c.index).markSet();
+                        data.get(c.index).stage(v);
+                    data.get(c.index).stageMarkSet();
                 }
             }
             // append time to buffers
             for (Integer i : saveTime.values()) {
-                data.get(i).append(t);
-                data.get(i).markSet();
+                data.get(i).stage(t);
+                data.get(i).stageMarkSet();
             }
         } finally {
-            dataLock.unlock();
+            inputLock.unlock();
             outputs.clear(); // remove values from receivedData because it is retrieved now
         }
     }
@@ -23,16 +23,89 @@ public class ConversionsInput {
         protected List<Double> convert(byte[] data) {
             return new ArrayList<>();
         }
+
+        //Convert the data and add the values for buffer i to the queue. Returns false if the queue
+        //is full. Conversions used for high data rates override this to skip the list of boxed values.
+        protected boolean enqueue(byte[] data, InputQueue queue, int i) {
+            for (Double v : convert(data))
+                if (!queue.offer(i, v))
+                    return false;
+            return true;
+        }
+    }
+
+    //Decoder for the fixed-size values of the common functions below. It is resolved from the name
+    //of the function when the experiment is loaded and reads a value directly from the received
+    //bytes, so the conversion neither needs reflection nor a copy of the data for each value.
+    static class Decoder implements Serializable {
+        final int size;
+        final boolean signed;
+        final boolean floatingPoint;
+        final boolean bigEndian;
+
+        private Decoder(int size, boolean signed, boolean floatingPoint, boolean bigEndian) {
+            this.size = size;
+            this.signed = signed;
+            this.floatingPoint = floatingPoint;
+            this.bigEndian = bigEndian;
+        }
+
+        //Returns null if there is no decoder for this function
+        static Decoder forName(String name) {
+            switch (name) {
+                case "int8": return new Decoder(1, true, false, false);
+                case "uInt8":
+                case "singleByte": return new Decoder(1, false, false, false);
+                case "uInt16LittleEndian": return new Decoder(2, false, false, false);
+                case "uInt16BigEndian": return new Decoder(2, false, false, true);
+                case "int16LittleEndian": return new Decoder(2, true, false, false);
+                case "int16BigEndian": return new Decoder(2, true, false, true);
+                case "uInt24LittleEndian": return new Decoder(3, false, false, false);
+                case "uInt24BigEndian": return new Decoder(3, false, false, true);
+                case "int24LittleEndian": return new Decoder(3, true, false, false);
+                case "int24BigEndian": return new Decoder(3, true, false, true);
+                case "uInt32LittleEndian": return new Decoder(4, false, false, false);
+                case "uInt32BigEndian": return new Decoder(4, false, false, true);
+                case "int32LittleEndian": return new Decoder(4, true, false, false);
+                case "int32BigEndian": return new Decoder(4, true, false, true);
+                case "float32LittleEndian": return new Decoder(4, true, true, false);
+                case "float32BigEndian": return new Decoder(4, true, true, true);
+                case "float64LittleEndian": return new Decoder(8, true, true, false);
+                case "float64BigEndian": return new Decoder(8, true, true, true);
+                default: return null;
+            }
+        }
+
+        //Decode the value starting at data[index]. The caller has to make sure that there are enough bytes.
+        double decode(byte[] data, int index) {
+            long bits = 0;
+            if (bigEndian) {
+                for (int i = 0; i < size; i++)
+                    bits = (bits << 8) | (data[index + i] & 0xFF);
+            } else {
+                for (int i = size - 1; i >= 0; i--)
+                    bits = (bits << 8) | (data[index + i] & 0xFF);
+            }
+            if (floatingPoint)
+                return size == 4 ? Float.intBitsToFloat((int)bits) : Double.longBitsToDouble(bits);
+            if (signed && size < 8) {
+                int shift = 64 - 8 * size;
+                bits = (bits << shift) >> shift;
+            }
+            return bits;
+        }
     }
 
     public static class SimpleInputConversion extends InputConversion implements Serializable {
-        private final Method conversionFunction;
+        private final transient Method conversionFunction;
+        private final Decoder decoder;
         int offset;
         int repeating;
         int length;
         public SimpleInputConversion(Method conversionFunction, XmlPullParser xpp) {
             super();
             this.conversionFunction = conversionFunction;
+            this.decoder = Decoder.forName(conversionFunction.getName());
             try {
                 this.offset = Integer.parseInt(xpp.getAttributeValue(null, "offset"));
             } catch (Exception e) {
@@ -50,17 +123,29 @@ public class ConversionsInput {
             }
         }
 
+        //Number of bytes available for the value at index, limited by the length attribute
+        private int available(byte[] data, int index) {
+            int actualLength = data.length - index;
+            if (length > 0 && length < actualLength)
+                actualLength = length;
+            return actualLength;
+        }
+
         @Override
         protected List<Double> convert(byte[] data) {
             List<Double> out = new ArrayList<>();
             try {
                 int index = offset;
                 while (index < data.length) {
-                    int actualLength = data.length - index;
-                    if (length > 0 && length < actualLength)
-                        actualLength = length;
-                    byte[] subdata = Arrays.copyOfRange(data, index, index + actualLength);
-                    out.add((Double) conversionFunction.invoke(null, subdata));
+                    int actualLength = available(data, index);
+                    if (decoder != null) {
+                        if (index < 0 || actualLength < decoder.size)
+                            break;
+                        out.add(decoder.decode(data, index));
+                    } else {
+                        byte[] subdata = Arrays.copyOfRange(data, index, index + actualLength);
+                        out.add((Double) conversionFunction.invoke(null, subdata));
+                    }
                     if (repeating > 0)
                         index += repeating;
                     else
@@ -71,6 +156,24 @@ public class ConversionsInput {
                 return out;
             }
         }
+
+        @Override
+        protected boolean enqueue(byte[] data, InputQueue queue, int i) {
+            if (decoder == null)
+                return super.enqueue(data, queue, i);
+            int index = offset;
+            while (index >= 0 && index < data.length) {
+                if (available(data, index) < decoder.size)
+                    break;
+                if (!queue.offer(i, decoder.decode(data, index)))
+                    return false;
+                if (repeating > 0)
+                    index += repeating;
+                else
+                    break;
+            }
+            return true;
+        }
     }
 
     /* private helper functions */
@@ -200,7 +303,7 @@ public class ConversionsInput {
     public static double float64LittleEndian (byte[] data) {
         long bits = 0;
         for (int i = 0; i < 8; i++) {
-            bits |= (data[i] & 0xFF) << (8 * i);
+            bits |= (long)(data[i] & 0xFF) << (8 * i);
         }
         return Double.longBitsToDouble(bits);
     }
@@ -208,7 +311,7 @@ public class ConversionsInput {
     public static double float64BigEndian (byte[] data) {
         long bits = 0;
         for (int i = 0; i < 8; i++) {
-            bits |= (data[i] & 0xFF) << (8 * (7-i));
+            bits |= (long)(data[i] & 0xFF) << (8 * (7-i));
         }
         return Double.longBitsToDouble(bits);
     }
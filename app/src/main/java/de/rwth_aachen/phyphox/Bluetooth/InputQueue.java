@@ -0,0 +1,69 @@
+package de.rwth_aachen.phyphox.Bluetooth;
+
+import java.util.Vector;
+
+import de.rwth_aachen.phyphox.DataOutput;
+
+//Lock-free queue for the values received by a BluetoothInput
+//Notifications of a device are delivered one after another by the GATT callbacks, so the queue has
+//a single producer, which adds the values of a notification with offer() and makes them visible
+//as a whole with publish(). The experiment is the only consumer and moves the published values
+//to the staging area of the buffers at the start of each analysis cycle (see
+//PhyphoxExperiment.commitInput()), so the callbacks never wait for the inputLock.
+//Each entry is a value for the buffer with the given index or, for a negative index -1-i, a call
+//to markSet() of buffer i.
+
+class InputQueue {
+    private static final int CAPACITY = 16384; //Needs to be a power of two
+
+    private final int[] targets = new int[CAPACITY];
+    private final double[] values = new double[CAPACITY];
+
+    private volatile int head = 0; //Next entry to be read by the consumer
+    private volatile int tail = 0; //End of the published entries
+    private int pending = 0; //End of the entries written by the producer, only used by the producer
+
+    //Add a value for buffer i. Returns false if the queue is full.
+    boolean offer(int i, double value) {
+        if (pending - head == CAPACITY)
+            return false;
+        targets[pending & (CAPACITY - 1)] = i;
+        values[pending & (CAPACITY - 1)] = value;
+        pending++;
+        return true;
+    }
+
+    //Add a call to markSet() for buffer i. Returns false if the queue is full.
+    boolean offerMarkSet(int i) {
+        return offer(-1-i, 0.0);
+    }
+
+    //Make the entries offered since the last call visible to the consumer
+    void publish() {
+        tail = pending;
+    }
+
+    //Drop the entries offered since the last call to publish()
+    void cancel() {
+        pending = tail;
+    }
+
+    //Stage all published entries in the buffers. Requires the inputLock, which makes sure that
+    //there is only one consumer at a time.
+    void drain(Vector<DataOutput> buffers) {
+        int end = tail;
+        for (int n = head; n != end; n++) {
+            int i = targets[n & (CAPACITY - 1)];
+            if (i >= 0)
+                buffers.get(i).stage(values[n & (CAPACITY - 1)]);
+            else
+                buffers.get(-1-i).stageMarkSet();
+        }
+        head = end;
+    }
+
+    //Drop all published entries. Requires the inputLock.
+    void clear() {
+        head = tail;
+    }
+}
@@ -0,0 +1,176 @@
+package de.rwth_aachen.phyphox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+//Buffered writer for the CSV export (see DataExport.CsvFormat)
+//The CSV export used to format each value with a DecimalFormat and to write each row as a new
+//String to an unbuffered stream, which takes minutes for long measurements with millions of values.
+//The CsvWriter formats the values directly into a reusable byte array, which is handed to the
+//stream in large blocks. The number format is the same as before: Ten significant digits in
+//scientific notation ("0.000000000E0"). Like DecimalFormat, the value is rounded half-even based on
+//its shortest decimal representation (as given by Double.toString()).
+
+class CsvWriter {
+    private static final int BUFFER_SIZE = 65536;
+    private static final int MAX_NUMBER_LENGTH = 32;
+
+    //Powers of ten that can be represented exactly as a double
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final MathContext SIGNIFICANT_DIGITS = new MathContext(10, RoundingMode.HALF_EVEN);
+    private static final byte[] NAN = "NaN".getBytes();
+    private static final byte[] INFINITY = "\u221E".getBytes(); //DecimalFormat writes infinity as the symbol
+    private static final byte[] NEGATIVE_INFINITY = "-\u221E".getBytes();
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int count = 0;
+    private final byte separator;
+    private final byte decimalPoint;
+
+    //Result of the last call to round()
+    private long mantissa;
+    private int exponent;
+
+    CsvWriter(OutputStream out, char separator, char decimalPoint) {
+        this.out = out;
+        this.separator = (byte)separator;
+        this.decimalPoint = (byte)decimalPoint;
+    }
+
+    private void reserve(int n) throws IOException {
+        if (count + n > buffer.length)
+            flush();
+    }
+
+    //Write the buffered data to the stream. This does not flush the stream itself.
+    void flush() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    void write(byte[] b) throws IOException {
+        if (b.length > buffer.length) {
+            flush();
+            out.write(b);
+            return;
+        }
+        reserve(b.length);
+        System.arraycopy(b, 0, buffer, count, b.length);
+        count += b.length;
+    }
+
+    void write(String s) throws IOException {
+        write(s.getBytes());
+    }
+
+    void writeSeparator() throws IOException {
+        reserve(1);
+        buffer[count++] = separator;
+    }
+
+    void writeNewLine() throws IOException {
+        reserve(1);
+        buffer[count++] = '\n';
+    }
+
+    void writeNaN() throws IOException {
+        write(NAN);
+    }
+
+    //Write v in the format "0.000000000E0"
+    void writeNumber(double v) throws IOException {
+        if (Double.isNaN(v)) {
+            write(NAN);
+            return;
+        }
+        if (Double.isInfinite(v)) {
+            write(v > 0 ? INFINITY : NEGATIVE_INFINITY);
+            return;
+        }
+
+        reserve(MAX_NUMBER_LENGTH);
+        if (v < 0 || (v == 0 && 1/v < 0)) {
+            buffer[count++] = '-';
+            v = -v;
+        }
+        round(v);
+
+        //Ten digits, the decimal point behind the first one
+        int end = count + 11;
+        long m = mantissa;
+        for (int i = end - 1; i > count + 1; i--) {
+            buffer[i] = (byte)('0' + (int)(m % 10));
+            m /= 10;
+        }
+        buffer[count + 1] = decimalPoint;
+        buffer[count] = (byte)('0' + (int)m);
+        count = end;
+
+        buffer[count++] = 'E';
+        int e = exponent;
+        if (e < 0) {
+            buffer[count++] = '-';
+            e = -e;
+        }
+        if (e >= 100)
+            buffer[count++] = (byte)('0' + e / 100);
+        if (e >= 10)
+            buffer[count++] = (byte)('0' + (e / 10) % 10);
+        buffer[count++] = (byte)('0' + e % 10);
+    }
+
+    //Round the non-negative value v to ten significant digits, so that v is about mantissa * 10^(exponent-9)
+    private void round(double v) {
+        if (v == 0) {
+            mantissa = 0;
+            exponent = 0;
+            return;
+        }
+
+        int e = (int)Math.floor(Math.log10(v));
+        for (int attempt = 0; attempt < 2; attempt++) {
+            int k = 9 - e;
+            if (k > 22 || k < -22)
+                break;
+            //A single multiplication or division by an exact power of ten, so the scaled value is
+            //correctly rounded and only off by about 1e-6 from the exact product
+            double scaled = k >= 0 ? v * POWERS_OF_TEN[k] : v / POWERS_OF_TEN[-k];
+            if (scaled < 1e9) { //log10 is not exact near powers of ten
+                e--;
+                continue;
+            }
+            if (scaled >= 1e10) {
+                e++;
+                continue;
+            }
+            double fraction = scaled - Math.floor(scaled);
+            if (Math.abs(fraction - 0.5) < 1e-4)
+                break; //Too close to a tie to decide on the rounded value
+            mantissa = (long)Math.floor(scaled + 0.5);
+            exponent = e;
+            if (mantissa == 10000000000L) {
+                mantissa = 1000000000L;
+                exponent++;
+            }
+            return;
+        }
+
+        //Slow, but exact for ties and very large or small values
+        BigDecimal rounded = new BigDecimal(Double.toString(v)).round(SIGNIFICANT_DIGITS);
+        BigDecimal unscaled = new BigDecimal(rounded.unscaledValue());
+        int digits = unscaled.precision();
+        mantissa = unscaled.longValue();
+        for (int i = digits; i < 10; i++)
+            mantissa *= 10;
+        exponent = digits - 1 - rounded.scale();
+    }
+}
@@ -7,13 +7,10 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 //Databuffer class
@@ -25,11 +22,11 @@ interface BufferNotification {
 
 public class DataBuffer implements Serializable {
     public String name; //The key name
-    private List<Double> buffer; //The actual buffer
+    private DataBufferStorage buffer; //The actual buffer
     public int size; //The target size
     public double value; //The last added value for easy access and graceful returning NaN for empty buffers
     public boolean isStatic = false; //If set to static, this buffer should only be filled once and cannot be cleared thereafter
-    public Double [] init = new Double[0];
+    public double[] init = new double[0];
     public boolean staticAndSet = false;
     public boolean linkedToUserInput = false; //If set to true, we should avoid overwriting this value by global operations, i.e.: Do not clear on a reset event.
 
@@ -41,17 +38,22 @@ public class DataBuffer implements Serializable {
     transient private FloatBufferRepresentation floatCopyBarValue = null; //If a float copy for bar charts has been requested, we keep it around as it will probably be requested again...
     transient private FloatBufferRepresentation floatCopyBarAxis = null; //If a float copy for bar charts has been requested, we keep it around as it will probably be requested again...
     transient private List<ExperimentTimeReferenceSet> experimentTimeReferenceSets = null;
+    transient private double[] viewData = null; //Backing array of the views handed out by getView(), see there
+    transient private int viewOffset = 0;
+    transient private long viewFirst = 0; //Absolute index (see DataBufferStorage) of the value at viewOffset
+    transient private long viewEnd = 0;
+    transient private DataBufferView lastView = null;
+    transient private double[] staged = null; //Values from data producers that have not yet been committed, see stage()
+    transient private int stagedCount = 0;
+    transient private boolean stagedSet = false;
     transient public final Object experimentTimeReferenceSetsLock = new Object();
     ExperimentTimeReference experimentTimeReference;
     boolean linearTime = false;
     private double lineWidth = 1.0; //Used to calculate the right geometry of bar charts
 
-    private int floatCopyCapacity = 0;
-    private int floatCopyBarValueCapacity = 0;
-    private int floatCopyBarAxisCapacity = 0;
-
     private double min = Double.NaN;
     private double max = Double.NaN;
+    private long monotonicFrom = 0; //Absolute index (see DataBufferStorage) from which on the values do not decrease and are not NaN, see isMonotonic()
 
     //Contructor. Set key name and target size.
     protected DataBuffer(String name, int size, ExperimentTimeReference experimentTimeReference) {
@@ -59,25 +61,25 @@ public class DataBuffer implements Serializable {
         this.size = size;
         this.name = name;
 
-        //Note on the choice of LinkedList over ArrayList
+        //Note on the storage
         //For data acquisition during an experiment we require the ability to append data
-        //consistently fast, which fails for the ArrayList if it needs to be extended and copied to
-        //a new memory block. Hence, for a long time, phyphox used LinkedList for unlimited buffers
-        //and ArrayList for ones with a fixed size. However, ArrayList is also problematic for the
-        //fixed sized ones, because if the first element needs to be removed with inflowing data,
-        //the entire array needs to be shifted, which again takes a lot of time.
-        //Therefore, both situations now use the LinkedArray.
-        //A faster alternative for fixed-size buffers could be an ArrayList as a ring buffer (i.e.
-        //with a moving index pointing to the start and a filled size to keep track of the number
-        //of elements which wrap around at the end), but this complicated several implementations
-        //below, which would need separate versions for both buffer times. At this point, this does
-        //not seem necessary.
-
-        this.buffer = new LinkedList<>();
+        //consistently fast. For a long time, phyphox used a LinkedList of boxed Doubles, which
+        //costs about 40 bytes per value and keeps the garbage collector busy on long runs.
+        //Fixed-size buffers now use a primitive ring buffer and unlimited buffers a chunked
+        //primitive array (see DataBufferStorage.java).
+
+        this.buffer = createStorage(size);
 
         this.value = Double.NaN;
     }
 
+    private static DataBufferStorage createStorage(int size) {
+        if (size > 0)
+            return new DataBufferStorage.Ring(size);
+        else
+            return new DataBufferStorage.Chunked();
+    }
+
     //Analysis and view modules can register to learn about updates
     public void register(BufferNotification listener) {
         updateListeners.add(listener);
@@ -139,7 +141,7 @@ public class DataBuffer implements Serializable {
         double last = this.value;
         this.value = value; //Update last value
         if (this.size > 0 && buffer.size()+1 > this.size) { //If the buffer becomes larger than the target size, remove the first item (queue!)
-            buffer.remove(0);
+            buffer.removeFirst(1);
             min = Double.NaN;
             max = Double.NaN;
             if (floatCopy != null) {
@@ -176,6 +178,7 @@ public class DataBuffer implements Serializable {
             }
 
         }
+        updateMonotonic(last, value);
         buffer.add(value);
         if (!Double.isNaN(min) && !Double.isInfinite(min))
             min = Math.min(min, value);
@@ -184,48 +187,22 @@ public class DataBuffer implements Serializable {
 
         if (floatCopy != null) {
             synchronized (floatCopy.lock) {
-                if (floatCopyCapacity < floatCopy.offset + floatCopy.size + 1) {
-                    if (floatCopyCapacity < buffer.size() * 2)
-                        floatCopyCapacity *= 2;
-                    FloatBuffer newData = ByteBuffer.allocateDirect(floatCopyCapacity * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
-                    floatCopy.data.position(floatCopy.offset);
-                    newData.put(floatCopy.data);
-                    floatCopy.data = newData;
-                    floatCopy.offset = 0;
-                }
-                floatCopy.data.put(floatCopy.offset + floatCopy.size, (float) value);
+                floatCopy.reserve(1);
+                floatCopy.data.put(floatCopy.offset + floatCopy.size, toGLFloat(value));
                 floatCopy.size++;
             }
         }
 
         if (floatCopyBarValue != null) {
             synchronized (floatCopyBarValue.lock) {
-                if (floatCopyBarValueCapacity < floatCopyBarValue.offset + floatCopyBarValue.size + 6) {
-                    if (floatCopyBarValueCapacity < buffer.size() * 2 * 6)
-                        floatCopyBarValueCapacity *= 2;
-                    FloatBuffer newData = ByteBuffer.allocateDirect(floatCopyBarValueCapacity * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
-                    floatCopyBarValue.data.position(floatCopyBarValue.offset);
-                    newData.put(floatCopyBarValue.data);
-                    floatCopyBarValue.data = newData;
-                    floatCopyBarValue.offset = 0;
-                }
-
+                floatCopyBarValue.reserve(6);
                 putBarValueValue(floatCopyBarValue.data, last, floatCopyBarValue.offset + floatCopyBarValue.size);
                 floatCopyBarValue.size += 6;
             }
         }
         if (floatCopyBarAxis != null) {
             synchronized (floatCopyBarAxis.lock) {
-                if (floatCopyBarAxisCapacity < floatCopyBarAxis.offset + floatCopyBarAxis.size + 6) {
-                    if (floatCopyBarAxisCapacity < buffer.size() * 2 * 6)
-                        floatCopyBarAxisCapacity *= 2;
-                    FloatBuffer newData = ByteBuffer.allocateDirect(floatCopyBarAxisCapacity * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
-                    floatCopyBarAxis.data.position(floatCopyBarAxis.offset);
-                    newData.put(floatCopyBarAxis.data);
-                    floatCopyBarAxis.data = newData;
-                    floatCopyBarAxis.offset = 0;
-                }
-
+                floatCopyBarAxis.reserve(6);
                 putBarAxisValue(floatCopyBarAxis.data, last, value, floatCopyBarAxis.offset + floatCopyBarAxis.size);
                 floatCopyBarAxis.size += 6;
             }
@@ -260,8 +237,43 @@ public class DataBuffer implements Serializable {
         return buffer.size();
     }
 
+    //Keep track of the values being in ascending order when appending value after last
+    private void updateMonotonic(double last, double value) {
+        if (Double.isNaN(value))
+            monotonicFrom = buffer.end() + 1;
+        else if (value < last) //Also false if last is NaN (or the buffer is empty)
+            monotonicFrom = buffer.end();
+    }
+
+    //True if the values in the buffer never decrease and none of them is NaN, like the time stamps
+    //of a measurement. Values in such a buffer can be found by a binary search (see
+    //DataBufferView.indexAbove()). A ring buffer becomes monotonic again once the last decreasing
+    //value has been pushed out.
+    public boolean isMonotonic() {
+        return monotonicFrom <= buffer.first();
+    }
+
+    //Absolute index (see DataBufferStorage) of the oldest value and of the position behind the
+    //newest value. Streaming analysis modules use these to find out which values have been added
+    //or dropped since their last update.
+    long getFirstIndex() {
+        return buffer.first();
+    }
+
+    long getEndIndex() {
+        return buffer.end();
+    }
+
     //Append a double-array with [count] entries.
     public void append(Double value[], Integer count, boolean notify) {
+        double[] primitive = new double[count];
+        for (int i = 0; i < count; i++)
+            primitive[i] = value[i];
+        append(primitive, count, notify);
+    }
+
+    //Append a primitive double-array with [count] entries.
+    public void append(double value[], int count, boolean notify) {
         if (staticAndSet)
             return;
         if (4*count < buffer.size() && (!Double.isNaN(min) || !Double.isNaN(max) || floatCopy != null || floatCopyBarValue != null || floatCopyBarAxis != null || experimentTimeReferenceSets != null)) {
@@ -270,24 +282,20 @@ public class DataBuffer implements Serializable {
                 append(value[i], false);
             }
         } else {
-            //Just dump the data into the array and make sure it does not overflow.
+            //Just dump the data into the array. The ring buffer of fixed-size buffers drops the
+            //oldest items if the buffer becomes larger than the target size (queue!)
+            long end = buffer.end();
+            double last = this.value;
+            for (int i = 0; i < count; i++) {
+                if (Double.isNaN(value[i]))
+                    monotonicFrom = end + i + 1;
+                else if (value[i] < last)
+                    monotonicFrom = end + i;
+                last = value[i];
+            }
             if (count > 0)
                 this.value = value[count - 1]; //Update last value
-            if (this.size > 0) {
-                if (count >= this.size) {
-                    buffer.clear();
-                    buffer.addAll(Arrays.asList(value).subList(count - this.size, count));
-                } else if (buffer.size() + count > this.size) { //If the buffer becomes larger than the target size, remove the first items (queue!)
-                    Double[] remainder = buffer.subList(count, this.size).toArray(new Double[0]);
-                    buffer.clear();
-                    buffer.addAll(Arrays.asList(remainder));
-                    buffer.addAll(Arrays.asList(value));
-                } else {
-                    buffer.addAll(Arrays.asList(value));
-                }
-            } else {
-                buffer.addAll(Arrays.asList(value));
-            }
+            buffer.addAll(value, 0, count);
             min = Double.NaN;
             max = Double.NaN;
             floatCopy = null;
@@ -324,7 +332,7 @@ public class DataBuffer implements Serializable {
     }
 
     //Wrapper function to set this buffer's static-state
-    public void setInit(Double[] init) {
+    public void setInit(double[] init) {
         this.init = init;
         this.append(init, init.length, false);
         if (init.length > 0)
@@ -373,7 +381,7 @@ public class DataBuffer implements Serializable {
         max = Double.NaN;
 
         if (reset)
-            this.append(init, init.length);
+            this.append(init, init.length, true);
 
         if (notify)
             notifyListeners(true, reset);
@@ -388,14 +396,119 @@ public class DataBuffer implements Serializable {
             staticAndSet = true;
     }
 
+    //Data producers (sensors, Bluetooth devices etc.) do not write to the buffer directly. Instead
+    //they stage their values while holding the inputLock of the experiment, which is only held for
+    //the short moment it takes to stage a set of values. The staged values are moved to the buffer
+    //by commitStaged(), which is called by the consumers (analysis, views, remote server) while
+    //they hold the dataLock. This way a producer never has to wait for a long analysis pass and the
+    //consumers still see a consistent state of all buffers as a producer's set of values is always
+    //committed as a whole.
+    public void stage(double value) {
+        if (staged == null)
+            staged = new double[16];
+        else if (stagedCount == staged.length) {
+            double[] newStaged = new double[2*staged.length];
+            System.arraycopy(staged, 0, newStaged, 0, stagedCount);
+            staged = newStaged;
+        }
+        staged[stagedCount++] = value;
+    }
+
+    //Staged version of markSet(), see stage()
+    public void stageMarkSet() {
+        stagedSet = true;
+    }
+
+    //The last staged value or the last value of the buffer if nothing has been staged. Only valid
+    //while holding the inputLock.
+    public double getStagedValue() {
+        if (stagedCount > 0)
+            return staged[stagedCount-1];
+        return value;
+    }
+
+    //Move all staged values to the buffer. Requires the dataLock as well as the inputLock.
+    void commitStaged() {
+        if (stagedCount > 0) {
+            append(staged, stagedCount, true);
+            stagedCount = 0;
+            if (staged.length > 4096)
+                staged = null; //Do not keep a large array around after a long pause of the analysis
+        }
+        if (stagedSet) {
+            markSet();
+            stagedSet = false;
+        }
+    }
+
+    //Drop all staged values. Requires the inputLock.
+    void discardStaged() {
+        stagedCount = 0;
+        stagedSet = false;
+    }
+
     //Retrieve the iterator
     public Iterator<Double> getIterator() {
-        return buffer.iterator();
+        return new Iterator<Double>() {
+            int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < buffer.size();
+            }
+
+            @Override
+            public Double next() {
+                if (i >= buffer.size())
+                    throw new NoSuchElementException();
+                return buffer.get(i++);
+            }
+        };
     }
 
     //Get all values as a double array
     public Double[] getArray() {
-        return buffer.toArray(new Double[0]);
+        int n = buffer.size();
+        Double[] ret = new Double[n];
+        for (int i = 0; i < n; i++)
+            ret[i] = buffer.get(i);
+        return ret;
+    }
+
+    //Get a read-only view of all values without boxing them.
+    //The values within a view are never modified afterwards, so the view remains a consistent
+    //snapshot even after the buffer has been unlocked and changed again. Consecutive views share
+    //the same array: Values appended since the last view are written behind the range of the
+    //previous view and dropped values just move the offset, so only new values need to be copied
+    //and an unchanged buffer returns the same view again.
+    //This is synchronized as multiple analysis modules may read the same buffer in parallel.
+    public synchronized DataBufferView getView() {
+        long first = buffer.first();
+        long end = buffer.end();
+        int n = buffer.size();
+        if (viewData != null && first >= viewFirst && first <= viewEnd && end >= viewEnd) {
+            if (first == viewFirst && end == viewEnd && lastView != null)
+                return lastView;
+            int writeAt = viewOffset + (int)(viewEnd - viewFirst);
+            int newValues = (int)(end - viewEnd);
+            if (writeAt + newValues <= viewData.length) {
+                buffer.copyTo(n - newValues, viewData, writeAt, newValues);
+                viewOffset += (int)(first - viewFirst);
+                viewFirst = first;
+                viewEnd = end;
+                lastView = new DataBufferView(viewData, viewOffset, n);
+                return lastView;
+            }
+        }
+        //No previous view or not enough room for the new values. Start a new array with some
+        //room to grow.
+        viewData = new double[Math.max(2 * n, 16)];
+        buffer.copyTo(0, viewData, 0, n);
+        viewOffset = 0;
+        viewFirst = first;
+        viewEnd = end;
+        lastView = new DataBufferView(viewData, 0, n);
+        return lastView;
     }
 
     public FloatBufferRepresentation getFloatBuffer() {
@@ -405,35 +518,35 @@ public class DataBuffer implements Serializable {
 
         if (floatCopy == null) {
             FloatBuffer data = ByteBuffer.allocateDirect(n * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
-            floatCopyCapacity = n;
-            Iterator it = getIterator();
-            int i = 0;
-            while (it.hasNext() && i < n) {
-                double x = (double) it.next();
-                if ((Double.isNaN(x) || Double.isInfinite(x)))
-                    data.put(-3.4e38f);
-                else
-                    data.put((float) x);
-                //This is a bit hacky, but should work in any reasonable situation. Some OpenGL ES
-                // implementations (HTC One X, some Samsungs, ...) seem to not properly handle NaN,
-                // which makes it impossible to detect invalid data points in the vertex and/or
-                // fragment shader. The behavior seems to be unspecified with some devices
-                // interpreting NaN as zero (Samsung?) and some devices failing all subsequent
-                // calculations ans eventually interpreting the resulting NaN as zero (HTC One X
-                // draws a line to the canvas zero coordinate.
-                // The value 3.4e38f is close to the smallest possible number represented by a
-                // float32 (I do not dare to use the exact minimum as it might be altered by
-                // rounding or shader optimization), so it should not occur by accident in any
-                // reasonable use case and we use it to tag invalid values. The vertex shader will
-                // simply check for values below -3.3e38f and mark them for the fragment shader to
-                // be discarded.
-                i++;
+            for (int i = 0; i < n; i++) {
+                data.put(toGLFloat(buffer.get(i)));
             }
             floatCopy = new FloatBufferRepresentation(data, 0, n);
         }
         return floatCopy;
     }
 
+    //Convert a value for the float copy used by the OpenGL graphs.
+    //This is a bit hacky, but should work in any reasonable situation. Some OpenGL ES
+    // implementations (HTC One X, some Samsungs, ...) seem to not properly handle NaN,
+    // which makes it impossible to detect invalid data points in the vertex and/or
+    // fragment shader. The behavior seems to be unspecified with some devices
+    // interpreting NaN as zero (Samsung?) and some devices failing all subsequent
+    // calculations ans eventually interpreting the resulting NaN as zero (HTC One X
+    // draws a line to the canvas zero coordinate.
+    // The value 3.4e38f is close to the smallest possible number represented by a
+    // float32 (I do not dare to use the exact minimum as it might be altered by
+    // rounding or shader optimization), so it should not occur by accident in any
+    // reasonable use case and we use it to tag invalid values. The vertex shader will
+    // simply check for values below -3.3e38f and mark them for the fragment shader to
+    // be discarded.
+    private static float toGLFloat(double x) {
+        if ((Double.isNaN(x) || Double.isInfinite(x)))
+            return -3.4e38f;
+        else
+            return (float) x;
+    }
+
     public FloatBufferRepresentation getFloatBufferBarAxis(double lineWidth) {
         this.lineWidth = lineWidth;
         int n = buffer.size()*6;
@@ -442,15 +555,11 @@ public class DataBuffer implements Serializable {
 
         if (floatCopyBarAxis == null) {
             FloatBuffer data = ByteBuffer.allocateDirect(n * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
-            floatCopyBarAxisCapacity = n;
-            Iterator it = getIterator();
-            int i = 0;
             double last = Double.NaN;
-            while (it.hasNext() && i < n) {
-                double value = (double)it.next();
+            for (int i = 0; i < n; i+=6) {
+                double value = buffer.get(i/6);
                 putBarAxisValue(data, last, value, i);
                 last = value;
-                i+=6;
             }
             floatCopyBarAxis = new FloatBufferRepresentation(data, 0, n);
         }
@@ -464,15 +573,11 @@ public class DataBuffer implements Serializable {
 
         if (floatCopyBarValue == null) {
             FloatBuffer data = ByteBuffer.allocateDirect(n * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
-            floatCopyBarValueCapacity = n;
-            Iterator it = getIterator();
-            int i = 0;
             double last = Double.NaN;
-            while (it.hasNext() && i < n) {
-                double value = (double)it.next();
+            for (int i = 0; i < n; i+=6) {
+                double value = buffer.get(i/6);
                 putBarValueValue(data, last, i);
                 last = value;
-                i+=6;
             }
             floatCopyBarValue = new FloatBufferRepresentation(data, 0, n);
         }
@@ -492,12 +597,12 @@ public class DataBuffer implements Serializable {
 
         if (experimentTimeReferenceSets == null && !experimentTimeReference.timeMappings.isEmpty()) {
             experimentTimeReferenceSets = new ArrayList<>();
-            Iterator it = getIterator();
             int lastReferenceIndex = -1;
             int lastchange = 0;
+            int n = buffer.size();
             int i = 0;
-            while (it.hasNext()) {
-                double value = (double)it.next();
+            for (; i < n; i++) {
+                double value = buffer.get(i);
                 int referenceIndex = isLinearTime ? experimentTimeReference.getReferenceIndexFromLinearTime(value) : experimentTimeReference.getReferenceIndexFromExperimentTime(value);
                 if (lastReferenceIndex < 0)
                     lastReferenceIndex = referenceIndex;
@@ -506,7 +611,6 @@ public class DataBuffer implements Serializable {
                     lastchange = i;
                     lastReferenceIndex = referenceIndex;
                 }
-                i++;
             }
             experimentTimeReferenceSets.add(new ExperimentTimeReferenceSet(lastchange, i-lastchange, experimentTimeReference.getExperimentTimeReferenceByIndex(lastReferenceIndex), experimentTimeReference.getSystemTimeReferenceByIndex(lastReferenceIndex), lastReferenceIndex, experimentTimeReference.getPausedByIndex(lastReferenceIndex)));
         }
@@ -516,19 +620,20 @@ public class DataBuffer implements Serializable {
     //Get all values as a short array. The data will be scaled so that (-/+)1 matches (-/+)Short.MAX_VALUE, used for audio data
     public short[] getShortArray() {
         short[] ret = new short[buffer.size()];
-        Iterator it = getIterator();
-        int i = 0;
-        while (it.hasNext()) {
-            ret[i] = (short)(((double)it.next())*(Short.MAX_VALUE)); //Rescale data to short range
-            i++;
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = (short)(buffer.get(i)*(Short.MAX_VALUE)); //Rescale data to short range
         }
         return ret;
     }
 
     public DataBuffer copy() {
         DataBuffer db = new DataBuffer(this.name, this.size, this.experimentTimeReference);
-        db.append(this.getArray(), this.getFilledSize());
+        db.buffer = this.buffer.copy();
+        int n = db.buffer.size();
+        if (n > 0)
+            db.value = db.buffer.get(n - 1);
         db.isStatic = this.isStatic;
+        db.monotonicFrom = this.monotonicFrom;
         return db;
     }
 
@@ -540,10 +645,17 @@ public class DataBuffer implements Serializable {
         if (buffer.size() == 0)
             return Double.NaN;
 
-        min = Collections.min(buffer, new minComparator());
-
-        if (Double.isInfinite(min))
-            min = Double.NaN;
+        //Ignore NaN and infinite values. If there is no finite value, the result is NaN
+        double result = Double.NaN;
+        int n = buffer.size();
+        for (int i = 0; i < n; i++) {
+            double v = buffer.get(i);
+            if (Double.isNaN(v) || Double.isInfinite(v))
+                continue;
+            if (Double.isNaN(result) || v < result)
+                result = v;
+        }
+        min = result;
 
         return min;
     }
@@ -556,39 +668,33 @@ public class DataBuffer implements Serializable {
         if (buffer.size() == 0)
             return Double.NaN;
 
-        max = Collections.max(buffer, new maxComparator());
-
-        if (Double.isInfinite(max))
-            max = Double.NaN;
-
-        return max;
-    }
-
-    class minComparator implements Comparator<Double> {
-        public int compare(Double a, Double b) {
-            if (Double.isNaN(a) || Double.isInfinite(a))
-                return 1;
-            if (Double.isNaN(b) || Double.isInfinite(b))
-                return -1;
-            return Double.compare(a, b);
+        //Ignore NaN and infinite values. If there is no finite value, the result is NaN
+        double result = Double.NaN;
+        int n = buffer.size();
+        for (int i = 0; i < n; i++) {
+            double v = buffer.get(i);
+            if (Double.isNaN(v) || Double.isInfinite(v))
+                continue;
+            if (Double.isNaN(result) || v > result)
+                result = v;
         }
-    }
+        max = result;
 
-    class maxComparator implements Comparator<Double> {
-        public int compare(Double a, Double b) {
-            if (Double.isNaN(a) || Double.isInfinite(a))
-                return -1;
-            if (Double.isNaN(b) || Double.isInfinite(b))
-                return 1;
-            return Double.compare(a, b);
-        }
+        return max;
     }
 }
 
+//Float copy of a buffer as it is uploaded to the GPU. The valid values are stored contiguously in
+//data from offset to offset+size. Appending writes behind the valid range and dropping old values
+//only moves the offset forward, so values never change once they have been written. Only if the end
+//of the backing buffer is reached, the valid range is moved back to the start (or into a larger
+//buffer) and the generation is incremented. Therefore, a consumer that remembers the generation and
+//the end of the range it has already copied only needs to copy the newly appended values.
 class FloatBufferRepresentation {
     FloatBuffer data;
     int size;
     int offset;
+    int generation = 0;
     transient public final Object lock = new Object();
 
     FloatBufferRepresentation(FloatBuffer data, int offset, int size) {
@@ -596,6 +702,30 @@ class FloatBufferRepresentation {
         this.size = size;
         this.offset = offset;
     }
+
+    //Make sure that [count] values can be written behind the valid range. Has to be called while
+    //holding the lock.
+    void reserve(int count) {
+        int capacity = data.capacity();
+        if (offset + size + count <= capacity)
+            return;
+        int required = size + count;
+        data.position(offset);
+        data.limit(offset + size);
+        if (2 * required <= capacity) {
+            //Plenty of space, the old values at the start just need to be discarded
+            data.compact();
+            data.clear();
+        } else {
+            FloatBuffer newData = ByteBuffer.allocateDirect(2 * required * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+            newData.put(data);
+            newData.clear();
+            data.clear();
+            data = newData;
+        }
+        offset = 0;
+        generation++;
+    }
 }
 
 class ExperimentTimeReferenceSet {
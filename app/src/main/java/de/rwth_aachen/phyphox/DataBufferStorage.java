@@ -0,0 +1,284 @@
+package de.rwth_aachen.phyphox;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+//Primitive storage for the values of a DataBuffer
+//For data acquisition during an experiment we require the ability to append data consistently
+//fast and without creating a boxed Double for every single value. Fixed-size buffers therefore
+//use a ring buffer (a moving index to the first element and a filled size, which wrap around at
+//the end of the array) and unlimited buffers use a list of fixed-size chunks, so that growing the
+//buffer never requires copying the data that has already been recorded.
+
+abstract class DataBufferStorage implements Serializable {
+
+    //Every value that has ever been added gets a consecutive absolute index. This is the absolute
+    //index of the oldest element, so the stored values are those from first to first+size()
+    protected long first = 0;
+
+    //Number of elements currently stored
+    abstract int size();
+
+    long first() {
+        return first;
+    }
+
+    long end() {
+        return first + size();
+    }
+
+    //Get the element at index i (0 being the oldest element)
+    abstract double get(int i);
+
+    //Append a single value
+    abstract void add(double value);
+
+    //Remove the n oldest values
+    abstract void removeFirst(int n);
+
+    //Remove all values
+    abstract void clear();
+
+    //Create an independent copy with the same contents
+    abstract DataBufferStorage copy();
+
+    //Copy [length] values starting at index [from] into dst at dstOffset
+    void copyTo(int from, double[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i++)
+            dst[dstOffset + i] = get(from + i);
+    }
+
+    //Append [count] values from a primitive array
+    void addAll(double[] values, int offset, int count) {
+        for (int i = 0; i < count; i++)
+            add(values[offset + i]);
+    }
+
+    //Ring buffer for buffers with a fixed target size. The array grows until it reaches the target
+    //size, so a large buffer which is never filled does not claim its full memory from the start.
+    static class Ring extends DataBufferStorage {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final int capacity; //The maximum number of elements (target size of the DataBuffer)
+        private double[] data;
+        private int start = 0; //Index of the oldest element in data
+        private int count = 0; //Number of elements in data
+
+        Ring(int capacity) {
+            this.capacity = capacity;
+            this.data = new double[Math.min(capacity, INITIAL_CAPACITY)];
+        }
+
+        private Ring(Ring src) {
+            this.first = src.first;
+            this.capacity = src.capacity;
+            this.data = new double[Math.min(capacity, Math.max(src.count, INITIAL_CAPACITY))];
+            src.copyTo(0, this.data, 0, src.count);
+            this.count = src.count;
+        }
+
+        private void grow(int minCapacity) {
+            int newLength = Math.min(capacity, Math.max(minCapacity, data.length * 2));
+            double[] newData = new double[newLength];
+            copyTo(0, newData, 0, count);
+            data = newData;
+            start = 0;
+        }
+
+        @Override
+        int size() {
+            return count;
+        }
+
+        @Override
+        double get(int i) {
+            int index = start + i;
+            if (index >= data.length)
+                index -= data.length;
+            return data[index];
+        }
+
+        @Override
+        void add(double value) {
+            if (count == capacity) {
+                //Full: Overwrite the oldest element
+                data[start] = value;
+                start++;
+                if (start == data.length)
+                    start = 0;
+                first++;
+                return;
+            }
+            if (count == data.length)
+                grow(count + 1);
+            int index = start + count;
+            if (index >= data.length)
+                index -= data.length;
+            data[index] = value;
+            count++;
+        }
+
+        @Override
+        void addAll(double[] values, int offset, int count) {
+            if (count >= capacity) {
+                //Only the last [capacity] values will survive
+                offset += count - capacity;
+                first += this.count + count - capacity;
+                count = capacity;
+                this.start = 0;
+                this.count = 0;
+            }
+            int overflow = this.count + count - capacity;
+            if (overflow > 0)
+                removeFirst(overflow);
+            if (this.count + count > data.length)
+                grow(this.count + count);
+            int index = start + this.count;
+            if (index >= data.length)
+                index -= data.length;
+            int firstPart = Math.min(count, data.length - index);
+            System.arraycopy(values, offset, data, index, firstPart);
+            System.arraycopy(values, offset + firstPart, data, 0, count - firstPart);
+            this.count += count;
+        }
+
+        @Override
+        void removeFirst(int n) {
+            if (n >= count) {
+                clear();
+                return;
+            }
+            start += n;
+            if (start >= data.length)
+                start -= data.length;
+            count -= n;
+            first += n;
+        }
+
+        @Override
+        void clear() {
+            first += count;
+            start = 0;
+            count = 0;
+        }
+
+        @Override
+        DataBufferStorage copy() {
+            return new Ring(this);
+        }
+
+        @Override
+        void copyTo(int from, double[] dst, int dstOffset, int length) {
+            int index = start + from;
+            if (index >= data.length)
+                index -= data.length;
+            int firstPart = Math.min(length, data.length - index);
+            System.arraycopy(data, index, dst, dstOffset, firstPart);
+            System.arraycopy(data, 0, dst, dstOffset + firstPart, length - firstPart);
+        }
+    }
+
+    //Chunked storage for unlimited buffers. New chunks are appended as needed and the data is never
+    //moved once written.
+    static class Chunked extends DataBufferStorage {
+        private static final int CHUNK_SHIFT = 12;
+        private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT; //4096 values or 32kB per chunk
+        private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+        private final ArrayList<double[]> chunks = new ArrayList<>();
+        private int head = 0; //Index of the oldest element within the first chunk
+        private int count = 0;
+
+        Chunked() {
+        }
+
+        private Chunked(Chunked src) {
+            this.first = src.first;
+            int n = src.count;
+            for (int i = 0; i < n; i += CHUNK_SIZE) {
+                double[] chunk = new double[CHUNK_SIZE];
+                int length = Math.min(CHUNK_SIZE, n - i);
+                src.copyTo(i, chunk, 0, length);
+                chunks.add(chunk);
+            }
+            this.count = n;
+        }
+
+        @Override
+        int size() {
+            return count;
+        }
+
+        @Override
+        double get(int i) {
+            int index = head + i;
+            return chunks.get(index >>> CHUNK_SHIFT)[index & CHUNK_MASK];
+        }
+
+        @Override
+        void add(double value) {
+            int index = head + count;
+            if ((index >>> CHUNK_SHIFT) == chunks.size())
+                chunks.add(new double[CHUNK_SIZE]);
+            chunks.get(index >>> CHUNK_SHIFT)[index & CHUNK_MASK] = value;
+            count++;
+        }
+
+        @Override
+        void addAll(double[] values, int offset, int count) {
+            while (count > 0) {
+                int index = head + this.count;
+                if ((index >>> CHUNK_SHIFT) == chunks.size())
+                    chunks.add(new double[CHUNK_SIZE]);
+                int inChunk = index & CHUNK_MASK;
+                int length = Math.min(count, CHUNK_SIZE - inChunk);
+                System.arraycopy(values, offset, chunks.get(index >>> CHUNK_SHIFT), inChunk, length);
+                offset += length;
+                count -= length;
+                this.count += length;
+            }
+        }
+
+        @Override
+        void removeFirst(int n) {
+            if (n >= count) {
+                clear();
+                return;
+            }
+            head += n;
+            count -= n;
+            first += n;
+            int drop = head >>> CHUNK_SHIFT;
+            if (drop > 0) {
+                chunks.subList(0, drop).clear();
+                head &= CHUNK_MASK;
+            }
+        }
+
+        @Override
+        void clear() {
+            first += count;
+            chunks.clear();
+            head = 0;
+            count = 0;
+        }
+
+        @Override
+        DataBufferStorage copy() {
+            return new Chunked(this);
+        }
+
+        @Override
+        void copyTo(int from, double[] dst, int dstOffset, int length) {
+            int index = head + from;
+            while (length > 0) {
+                int inChunk = index & CHUNK_MASK;
+                int n = Math.min(length, CHUNK_SIZE - inChunk);
+                System.arraycopy(chunks.get(index >>> CHUNK_SHIFT), inChunk, dst, dstOffset, n);
+                index += n;
+                dstOffset += n;
+                length -= n;
+            }
+        }
+    }
+}
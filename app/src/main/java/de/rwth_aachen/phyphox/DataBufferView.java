@@ -0,0 +1,33 @@
+package de.rwth_aachen.phyphox;
+
+//Read-only view on the values of a buffer (see DataBuffer.getView())
+public class DataBufferView {
+    final double[] data;
+    final int offset;
+    public final int length;
+
+    DataBufferView(double[] data, int offset, int length) {
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public double get(int i) {
+        return data[offset + i];
+    }
+
+    //Index of the first value greater than threshold or length if there is none. The values have
+    //to be in ascending order (see DataBuffer.isMonotonic()).
+    int indexAbove(double threshold) {
+        int lo = 0;
+        int hi = length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (data[offset + mid] > threshold)
+                hi = mid;
+            else
+                lo = mid + 1;
+        }
+        return lo;
+    }
+}
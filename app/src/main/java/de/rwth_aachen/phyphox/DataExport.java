@@ -2,7 +2,8 @@ package de.rwth_aachen.phyphox;
 
 import static de.rwth_aachen.phyphox.Helper.DataExportUtility.MIME_TYPE_CSV_MINI;
 import static de.rwth_aachen.phyphox.Helper.DataExportUtility.MIME_TYPE_CSV_ZIP;
-import static de.rwth_aachen.phyphox.Helper.DataExportUtility.MIME_TYPE_XLS;
+import static de.rwth_aachen.phyphox.Helper.DataExportUtility.MIME_TYPE_NPZ;
+import static de.rwth_aachen.phyphox.Helper.DataExportUtility.MIME_TYPE_XLSX;
 
 import android.app.Activity;
 import android.app.AlertDialog;
@@ -18,16 +19,11 @@ import android.widget.RadioButton;
 import android.widget.RadioGroup;
 import com.google.android.material.bottomsheet.BottomSheetDialog;
 
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellStyle;
-import org.apache.poi.ss.usermodel.Font;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
@@ -35,8 +31,10 @@ import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.Vector;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -78,13 +76,15 @@ public class DataExport implements Serializable {
         //The set consists of an arbitrary number of sourceMappings. So each entry in the dataSet has a name and a dataBuffer-source
         Vector<SourceMapping> sources = new Vector<>();
 
-        //We will also hold an array with all the data. The idea is to let all dataSets collect their
+        //We will also hold a snapshot of all the data. The idea is to let all dataSets collect their
         // data as fast as possible (like a snapshot) and then take care of pushing the data to an
         // exporter. So after instantiating an ExportSet (with a name), addSource is called for
         // each dataBuffer that should be added to the collection. Then getData is called so the
         // content of these buffers is collected and finally the dataSet is given to an instance
         // of ExportFormat (see below).
-        Double[][] data;
+        //The snapshot consists of read-only views (see DataBuffer.getView()), so the values are
+        // neither copied nor boxed and the buffers can be changed while the export is written.
+        DataBufferView[] data;
 
         //constructor with name for this set
         ExportSet(String name) {
@@ -98,10 +98,16 @@ public class DataExport implements Serializable {
 
         //Retrieve all data from the dataBuffers
         public void getData() {
-            data = new Double[sources.size()][];
-            for (int i = 0; i < sources.size(); i++) {
-                DataBuffer buffer = experiment.getBuffer(sources.get(i).source); //Get the buffer for this source
-                data[i] = buffer.getArray(); //Get all data as a double array
+            data = new DataBufferView[sources.size()];
+            experiment.dataLock.lock(); //Consistent snapshot of all buffers
+            try {
+                experiment.commitInput();
+                for (int i = 0; i < sources.size(); i++) {
+                    DataBuffer buffer = experiment.getBuffer(sources.get(i).source); //Get the buffer for this source
+                    data[i] = buffer.getView(); //Get all data as a view
+                }
+            } finally {
+                experiment.dataLock.unlock();
             }
         }
     }
@@ -152,18 +158,12 @@ public class DataExport implements Serializable {
         protected File export (List<ExportSet> sets, File exportPath, boolean minimalistic, Context ctx) {
             File file = new File(exportPath, "/"+getFilename(minimalistic)); // Create a file with default filename in the given path
 
-            DecimalFormat format = (DecimalFormat) NumberFormat.getInstance(Locale.ENGLISH);
-            format.applyPattern("0.000000000E0");
-            DecimalFormatSymbols dfs = format.getDecimalFormatSymbols();
-            dfs.setDecimalSeparator(decimalPoint);
-            format.setDecimalFormatSymbols(dfs);
-            format.setGroupingUsed(false);
-
             try { // A lot can go wrong here... Let's catch em all...
-                FileOutputStream stream = new FileOutputStream(file); //Open a basic output stream
+                OutputStream stream = new BufferedOutputStream(new FileOutputStream(file), 65536); //Open a buffered output stream
                 ZipOutputStream zstream = null;
                 if (!minimalistic)
                     zstream = new ZipOutputStream(stream); //We will pack all datasets into a single zip
+                CsvWriter writer = new CsvWriter(minimalistic ? stream : zstream, separator, decimalPoint); //Formats the data into large blocks (see CsvWriter.java)
                 try {
                     for (ExportSet set : sets) { // For each dataset...
                         ZipEntry entry;
@@ -180,82 +180,28 @@ public class DataExport implements Serializable {
                                 header += separator;
                         }
                         header += "\n";
-                        if (minimalistic)
-                            stream.write(header.getBytes());
-                        else
-                            zstream.write(header.getBytes()); //Write the header to the zip-file
+                        writer.write(header);
 
                         //Then add all the data
                         for (int i = 0; i < set.data[0].length; i++) { //For each row of data... The first column determines the number of rows
-                            //Construct the data row
-                            StringBuilder data = new StringBuilder();
                             for (int j = 0; j < set.data.length; j++) { //For each column within this row
                                 if (i < set.data[j].length) //Do we have data for this cell?
-                                    data.append(format.format(set.data[j][i])); //Add it to the row
+                                    writer.writeNumber(set.data[j].get(i)); //Add it to the row
                                 else
-                                    data.append("NaN"); //No data? Enter NaN in the row
+                                    writer.writeNaN(); //No data? Enter NaN in the row
                                 if (j < set.data.length - 1)
-                                    data.append(separator);
+                                    writer.writeSeparator();
                             }
-                            data.append("\n");
-                            if (minimalistic)
-                                stream.write(data.toString().getBytes());
-                            else
-                                zstream.write(data.toString().getBytes()); //Write to zip-file
+                            writer.writeNewLine();
                         }
+                        writer.flush();
 
                         if (!minimalistic)
                             zstream.closeEntry(); //This dataset is complete. Close its file within the zip
                     }
                     //Add meta data in a separate folder
-                    if (!minimalistic) {
-                        ZipEntry entry;
-                        entry = new ZipEntry("meta/device.csv");
-                        zstream.putNextEntry(entry);
-                        zstream.write(("\"property\""+separator+"\"value\"\n").getBytes());
-
-                        StringBuilder data = new StringBuilder();
-                        for (Metadata.DeviceMetadata deviceMetadata : Metadata.DeviceMetadata.values()) {
-                            if (deviceMetadata == Metadata.DeviceMetadata.sensorMetadata || deviceMetadata == Metadata.DeviceMetadata.uniqueID || deviceMetadata == Metadata.DeviceMetadata.camera2api || deviceMetadata == Metadata.DeviceMetadata.camera2apiFull)
-                                continue;
-                            String identifier = deviceMetadata.toString();
-                            data.append("\"").append(identifier).append("\"").append(separator);
-                            data.append("\"").append(new Metadata(identifier, ctx).get("")).append("\"").append("\n");
-                        }
-                        for (SensorInput.SensorName sensor : SensorInput.SensorName.values()) {
-                            for (Metadata.SensorMetadata sensorMetadata : Metadata.SensorMetadata.values()) {
-                                String identifier = sensorMetadata.toString();
-                                data.append("\"").append(sensor.name()).append(" ").append(identifier).append("\"").append(separator);
-                                data.append("\"").append(new Metadata(sensor.name()+identifier, ctx).get("")).append("\"").append("\n");
-                            }
-                        }
-                        zstream.write(data.toString().getBytes()); //Write to zip-file
-                        zstream.closeEntry();
-
-                        entry = new ZipEntry("meta/time.csv");
-                        zstream.putNextEntry(entry);
-                        zstream.write(("\"event\""+separator+"\"experiment time\""+separator+"\"system time\""+separator+"\"system time text\"\n").getBytes());
-
-                        DecimalFormat longformat = (DecimalFormat) NumberFormat.getInstance(Locale.ENGLISH);
-                        longformat.applyPattern("############0.000");
-                        longformat.setDecimalFormatSymbols(dfs);
-                        longformat.setGroupingUsed(false);
-
-                        data = new StringBuilder();
-                        SimpleDateFormat dateFormat;
-                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
-                            dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS 'UTC'XXX");
-                        else
-                            dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS 'UTC'Z");
-                        for (ExperimentTimeReference.TimeMapping timeMapping : experiment.experimentTimeReference.timeMappings) {
-                            data.append("\"").append(timeMapping.event.name()).append("\"").append(separator);
-                            data.append(format.format(timeMapping.experimentTime)).append(separator);
-                            data.append(longformat.format(timeMapping.systemTime/1000.)).append(separator);
-                            data.append("\"").append(dateFormat.format(timeMapping.systemTime)).append("\"").append("\n");
-                        }
-                        zstream.write(data.toString().getBytes()); //Write to zip-file
-                        zstream.closeEntry();
-                    }
+                    if (!minimalistic)
+                        writeMeta(zstream, ctx);
                 } catch (Exception e) {
                     //This could be done better. Any error during CSV/ZIP compiling ends up here
                     Log.e("csvExport", "Unhandled exception during write.", e);
@@ -273,6 +219,63 @@ public class DataExport implements Serializable {
             return file;
         }
 
+        //Write the meta data (device and time reference) as CSV files into the folder "meta" of a zip file
+        protected void writeMeta(ZipOutputStream zstream, Context ctx) throws IOException {
+            DecimalFormat format = (DecimalFormat) NumberFormat.getInstance(Locale.ENGLISH);
+            format.applyPattern("0.000000000E0");
+            DecimalFormatSymbols dfs = format.getDecimalFormatSymbols();
+            dfs.setDecimalSeparator(decimalPoint);
+            format.setDecimalFormatSymbols(dfs);
+            format.setGroupingUsed(false);
+
+            ZipEntry entry;
+            entry = new ZipEntry("meta/device.csv");
+            zstream.putNextEntry(entry);
+            zstream.write(("\"property\""+separator+"\"value\"\n").getBytes());
+
+            StringBuilder data = new StringBuilder();
+            for (Metadata.DeviceMetadata deviceMetadata : Metadata.DeviceMetadata.values()) {
+                if (deviceMetadata == Metadata.DeviceMetadata.sensorMetadata || deviceMetadata == Metadata.DeviceMetadata.uniqueID || deviceMetadata == Metadata.DeviceMetadata.camera2api || deviceMetadata == Metadata.DeviceMetadata.camera2apiFull)
+                    continue;
+                String identifier = deviceMetadata.toString();
+                data.append("\"").append(identifier).append("\"").append(separator);
+                data.append("\"").append(new Metadata(identifier, ctx).get("")).append("\"").append("\n");
+            }
+            for (SensorInput.SensorName sensor : SensorInput.SensorName.values()) {
+                for (Metadata.SensorMetadata sensorMetadata : Metadata.SensorMetadata.values()) {
+                    String identifier = sensorMetadata.toString();
+                    data.append("\"").append(sensor.name()).append(" ").append(identifier).append("\"").append(separator);
+                    data.append("\"").append(new Metadata(sensor.name()+identifier, ctx).get("")).append("\"").append("\n");
+                }
+            }
+            zstream.write(data.toString().getBytes()); //Write to zip-file
+            zstream.closeEntry();
+
+            entry = new ZipEntry("meta/time.csv");
+            zstream.putNextEntry(entry);
+            zstream.write(("\"event\""+separator+"\"experiment time\""+separator+"\"system time\""+separator+"\"system time text\"\n").getBytes());
+
+            DecimalFormat longformat = (DecimalFormat) NumberFormat.getInstance(Locale.ENGLISH);
+            longformat.applyPattern("############0.000");
+            longformat.setDecimalFormatSymbols(dfs);
+            longformat.setGroupingUsed(false);
+
+            data = new StringBuilder();
+            SimpleDateFormat dateFormat;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
+                dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS 'UTC'XXX");
+            else
+                dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS 'UTC'Z");
+            for (ExperimentTimeReference.TimeMapping timeMapping : experiment.experimentTimeReference.timeMappings) {
+                data.append("\"").append(timeMapping.event.name()).append("\"").append(separator);
+                data.append(format.format(timeMapping.experimentTime)).append(separator);
+                data.append(longformat.format(timeMapping.systemTime/1000.)).append(separator);
+                data.append("\"").append(dateFormat.format(timeMapping.systemTime)).append("\"").append("\n");
+            }
+            zstream.write(data.toString().getBytes()); //Write to zip-file
+            zstream.closeEntry();
+        }
+
         @Override
         protected String getType (boolean minimalistic) {
             if (minimalistic)
@@ -289,7 +292,10 @@ public class DataExport implements Serializable {
         }
     }
 
-    //This class implements an Microsoft Excel export using the Apache POI library
+    //This class implements a Microsoft Excel export (xlsx)
+    //The workbook is streamed into the file row by row (see XlsxWriter.java), so the export needs
+    //very little memory even for long measurements. Sets with more rows than an Excel worksheet
+    //can hold are continued on additional sheets.
     protected class ExcelFormat extends ExportFormat implements Serializable {
         //Nothing to do or configure in the constructor
         ExcelFormat() {
@@ -304,118 +310,95 @@ public class DataExport implements Serializable {
         protected File export (List<ExportSet> sets, File exportPath, boolean minimalistic, Context ctx) {
             File file = new File(exportPath, "/"+getFilename(minimalistic)); //Create file with default filename
 
-            //New excel workbook
-            Workbook wb = new HSSFWorkbook();
-            //Create a style (just bold font) for the table header
-            Font font= wb.createFont();
-            font.setBold(true);
-            CellStyle cs = wb.createCellStyle();
-            cs.setFont(font);
-
             try { // A lot can go wrong here. Catch em all...
-                for (ExportSet set : sets) { //For each dataset...
-                    Sheet sheet = wb.createSheet(set.name);//..create a new sheet within the Excel document
-
-                    //Create the header row and fill it
-                    Row row = sheet.createRow(0);
-                    for (int j = 0; j < set.data.length; j++) {
-                        Cell c = row.createCell(j);
-                        c.setCellValue(set.sources.get(j).getSecureName());
-                        c.setCellStyle(cs);
+                XlsxWriter wb = new XlsxWriter(new BufferedOutputStream(new FileOutputStream(file), 65536));
+                try { //Let's catch errors while writing separately
+                    for (ExportSet set : sets) { //For each dataset...
+                        int rows = set.data.length > 0 ? set.data[0].length : 0; //Number of rows determined by first entry in dataset
+                        int i = 0;
+                        int part = 1;
+                        do {
+                            wb.startSheet(part == 1 ? set.name : set.name + " (" + part + ")"); //..create a new sheet within the Excel document
+
+                            //Create the header row and fill it
+                            wb.startRow();
+                            for (int j = 0; j < set.data.length; j++)
+                                wb.writeString(set.sources.get(j).getSecureName(), true);
+                            wb.endRow();
+
+                            //Create all the data rows that fit on this sheet
+                            int end = (int)Math.min(rows, (long)i + XlsxWriter.MAX_ROWS - 1);
+                            for (; i < end; i++) { //For each row of data
+                                wb.startRow();
+                                for (int j = 0; j < set.data.length; j++) { //For each column
+                                    if (i < set.data[j].length) //Is there data for this cell?
+                                        wb.writeNumber(set.data[j].get(i)); //Yepp, enter it
+                                    else
+                                        wb.writeString("NaN", false); //Nope, no data. Fill NaN into this cell
+                                }
+                                wb.endRow();
+                            }
+                            wb.endSheet();
+                            part++;
+                        } while (i < rows);
                     }
 
-                    //Create all the data rows
-                    for (int i = 0; i < set.data[0].length; i++) { //For each row of data (number of rows determined by first entry in dataset)
-                        row = sheet.createRow(i+1);
-                        for (int j = 0; j < set.data.length; j++) { //For each column
-                            Cell c = row.createCell(j);
-                            if (i < set.data[j].length) //Is there data for this cell?
-                                c.setCellValue(set.data[j][i]); //Yepp, enter it
-                            else
-                                c.setCellValue("NaN"); //Nope, no data. Fill NaN into this cell
+                    if (!minimalistic) {
+                        wb.startSheet("Metadata Device");
+                        wb.startRow();
+                        wb.writeString("proeprty", true);
+                        wb.writeString("value", true);
+                        wb.endRow();
+
+                        for (Metadata.DeviceMetadata deviceMetadata : Metadata.DeviceMetadata.values()) {
+                            if (deviceMetadata == Metadata.DeviceMetadata.sensorMetadata || deviceMetadata == Metadata.DeviceMetadata.uniqueID || deviceMetadata == Metadata.DeviceMetadata.camera2api || deviceMetadata == Metadata.DeviceMetadata.camera2apiFull)
+                                continue;
+                            String identifier = deviceMetadata.toString();
+
+                            wb.startRow();
+                            wb.writeString(identifier, false);
+                            wb.writeString(new Metadata(identifier, ctx).get(""), false);
+                            wb.endRow();
                         }
-                    }
-                }
+                        for (SensorInput.SensorName sensor : SensorInput.SensorName.values()) {
+                            for (Metadata.SensorMetadata sensorMetadata : Metadata.SensorMetadata.values()) {
+                                String identifier = sensorMetadata.toString();
 
-                if (!minimalistic) {
-                    Sheet sheet;
-                    Row row;
-                    Cell c;
-
-                    sheet = wb.createSheet("Metadata Device");//..create a new sheet within the Excel document
-                    row = sheet.createRow(0);
-                    c = row.createCell(0);
-                    c.setCellValue("proeprty");
-                    c.setCellStyle(cs);
-                    c = row.createCell(1);
-                    c.setCellValue("value");
-                    c.setCellStyle(cs);
-
-                    int i = 1;
-                    StringBuilder data = new StringBuilder();
-                    for (Metadata.DeviceMetadata deviceMetadata : Metadata.DeviceMetadata.values()) {
-                        if (deviceMetadata == Metadata.DeviceMetadata.sensorMetadata || deviceMetadata == Metadata.DeviceMetadata.uniqueID || deviceMetadata == Metadata.DeviceMetadata.camera2api || deviceMetadata == Metadata.DeviceMetadata.camera2apiFull)
-                            continue;
-                        String identifier = deviceMetadata.toString();
-
-                        row = sheet.createRow(i);
-                        row.createCell(0).setCellValue(identifier);
-                        row.createCell(1).setCellValue(new Metadata(identifier, ctx).get(""));
-                        i++;
-                    }
-                    for (SensorInput.SensorName sensor : SensorInput.SensorName.values()) {
-                        for (Metadata.SensorMetadata sensorMetadata : Metadata.SensorMetadata.values()) {
-                            String identifier = sensorMetadata.toString();
-
-                            row = sheet.createRow(i);
-                            row.createCell(0).setCellValue(sensor.name() + " " + identifier);
-                            row.createCell(1).setCellValue(new Metadata(sensor.name()+identifier, ctx).get(""));
-                            i++;
+                                wb.startRow();
+                                wb.writeString(sensor.name() + " " + identifier, false);
+                                wb.writeString(new Metadata(sensor.name()+identifier, ctx).get(""), false);
+                                wb.endRow();
+                            }
                         }
-                    }
+                        wb.endSheet();
 
-                    sheet = wb.createSheet("Metadata Time");//..create a new sheet within the Excel document
-                    row = sheet.createRow(0);
-                    c = row.createCell(0);
-                    c.setCellValue("event");
-                    c.setCellStyle(cs);
-                    c = row.createCell(1);
-                    c.setCellValue("experiment time");
-                    c.setCellStyle(cs);
-                    c = row.createCell(2);
-                    c.setCellValue("system time");
-                    c.setCellStyle(cs);
-                    c = row.createCell(3);
-                    c.setCellValue("system time text");
-                    c.setCellStyle(cs);
-
-                    i = 1;
-                    data = new StringBuilder();
-                    SimpleDateFormat dateFormat;
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
-                        dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS 'UTC'XXX");
-                    else
-                        dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS 'UTC'Z");
-                    for (ExperimentTimeReference.TimeMapping timeMapping : experiment.experimentTimeReference.timeMappings) {
-                        row = sheet.createRow(i);
-                        row.createCell(0).setCellValue(timeMapping.event.name());
-                        row.createCell(1).setCellValue(timeMapping.experimentTime);
-                        row.createCell(2).setCellValue(timeMapping.systemTime / 1000.);
-                        row.createCell(3).setCellValue(dateFormat.format(timeMapping.systemTime));
-                        i++;
-                    }
-                }
+                        wb.startSheet("Metadata Time");
+                        wb.startRow();
+                        wb.writeString("event", true);
+                        wb.writeString("experiment time", true);
+                        wb.writeString("system time", true);
+                        wb.writeString("system time text", true);
+                        wb.endRow();
 
-                //We now have our Excel document. Let's write it to the file.
-                FileOutputStream os = null;
-                try { //Let's catch errors while writing separately
-                    os = new FileOutputStream(file);
-                    wb.write(os);
+                        SimpleDateFormat dateFormat;
+                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
+                            dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS 'UTC'XXX");
+                        else
+                            dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS 'UTC'Z");
+                        for (ExperimentTimeReference.TimeMapping timeMapping : experiment.experimentTimeReference.timeMappings) {
+                            wb.startRow();
+                            wb.writeString(timeMapping.event.name(), false);
+                            wb.writeNumber(timeMapping.experimentTime);
+                            wb.writeNumber(timeMapping.systemTime / 1000.);
+                            wb.writeString(dateFormat.format(timeMapping.systemTime), false);
+                            wb.endRow();
+                        }
+                        wb.endSheet();
+                    }
                 } catch (Exception e) {
                     Log.e("excelExport", "Unhandled exception during write.", e);
                 } finally {
-                    if (os != null)
-                        os.close();
+                    wb.close();
                 }
 
             } catch (Exception e) {
@@ -428,12 +411,81 @@ public class DataExport implements Serializable {
         @Override
         //This mime-typ is ugly, but seems to be the "official" one, while there are many others in use.
         protected String getType (boolean minimalistic) {
-            return MIME_TYPE_XLS;
+            return MIME_TYPE_XLSX;
+        }
+
+        @Override
+        protected String getFilename (boolean minimalistic) {
+            return filenameBase + ".xlsx";
+        }
+    }
+
+    //Binary export as NumPy archive (npz), which is a zip file with an npy file for each column (see
+    //NpyWriter.java). The values are stored as little-endian float64, which takes a fraction of the
+    //space of the text formats, is much faster to write and can be loaded with numpy.load() without
+    //any parsing. Each column becomes the entry "<set name>/<column name>" of the archive. Unlike the
+    //Excel format, columns of the same set may have different lengths, so missing values are not
+    //filled with NaN. The meta data is added as CSV files like in the CSV export.
+    protected class NumpyFormat extends ExportFormat implements Serializable {
+        //Nothing to do or configure in the constructor
+        NumpyFormat() {
+        }
+
+        @Override
+        protected String getName() {
+            return "NumPy (npz, binary)";
+        }
+
+        //Entry names are paths within the zip file, so they should not contain any path separators
+        private String sanitize(String name) {
+            String sanitized = name.replaceAll("[/\\\\:*?\"<>|\\x00-\\x1f]", "_").trim();
+            return sanitized.isEmpty() ? "_" : sanitized;
+        }
+
+        @Override
+        protected File export (List<ExportSet> sets, File exportPath, boolean minimalistic, Context ctx) {
+            File file = new File(exportPath, "/"+getFilename(minimalistic)); //Create file with default filename
+
+            try { // A lot can go wrong here. Catch em all...
+                ZipOutputStream zstream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+                try {
+                    NpyWriter writer = new NpyWriter(zstream);
+                    Set<String> names = new HashSet<>();
+                    for (ExportSet set : sets) { //For each dataset...
+                        String setName = sanitize(set.name);
+                        for (int j = 0; j < set.data.length; j++) { //...write each column
+                            String name = setName + "/" + sanitize(set.sources.get(j).name);
+                            String unique = name;
+                            for (int k = 2; names.contains(unique); k++)
+                                unique = name + " (" + k + ")";
+                            names.add(unique);
+                            writer.write(unique + ".npy", set.data[j]);
+                        }
+                    }
+
+                    //Add meta data in a separate folder
+                    if (!minimalistic)
+                        new CsvFormat().writeMeta(zstream, ctx);
+                } catch (Exception e) {
+                    Log.e("npzExport", "Unhandled exception during write.", e);
+                } finally {
+                    zstream.close();
+                }
+            } catch (Exception e) {
+                Log.e("npzExport", "Unhandled exception.", e);
+            }
+
+            return file;
+        }
+
+        @Override
+        protected String getType (boolean minimalistic) {
+            return MIME_TYPE_NPZ;
         }
 
         @Override
         protected String getFilename (boolean minimalistic) {
-            return filenameBase + ".xls";
+            return filenameBase + ".npz";
         }
     }
 
@@ -444,7 +496,8 @@ public class DataExport implements Serializable {
             new CsvFormat('\t', '.', "CSV (Tabulator, decimal point)"),
             new CsvFormat(';', '.', "CSV (Semicolon, decimal point)"),
             new CsvFormat('\t', ',', "CSV (Tabulator, decimal comma)"),
-            new CsvFormat(';', ',', "CSV (Semicolon, decimal comma)")
+            new CsvFormat(';', ',', "CSV (Semicolon, decimal comma)"),
+            new NumpyFormat()
     };
 
     //The constructor just has to store a reference to the experiment
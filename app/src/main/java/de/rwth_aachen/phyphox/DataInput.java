@@ -72,6 +72,17 @@ public class DataInput implements Serializable {
         }
     }
 
+    //Get a read-only view of all values without boxing (see DataBuffer.getView())
+    public DataBufferView getView() {
+        if (isBuffer) {
+            return buffer.getView();
+        } else if (isEmpty) {
+            return new DataBufferView(new double[0], 0, 0);
+        } else {
+            return new DataBufferView(new double[]{value}, 0, 1);
+        }
+    }
+
     //Get all values as a short array. The data will be scaled so that (-/+)1 matches (-/+)Short.MAX_VALUE, used for audio data
     public short[] getShortArray() {
         if (isBuffer) {
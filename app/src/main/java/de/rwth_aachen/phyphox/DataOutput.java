@@ -50,6 +50,10 @@ public class DataOutput implements Serializable {
         buffer.append(value, count);
     }
 
+    public void append(double value[], int count) {
+        buffer.append(value, count, true);
+    }
+
     public boolean isStatic() {
         return buffer.isStatic;
     }
@@ -65,4 +69,13 @@ public class DataOutput implements Serializable {
     public void markSet() {
         buffer.markSet();
     }
+
+    //Stage values from a data producer, see DataBuffer.stage()
+    public void stage(double value) {
+        buffer.stage(value);
+    }
+
+    public void stageMarkSet() {
+        buffer.stageMarkSet();
+    }
 }
@@ -195,6 +195,7 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
 
     boolean proximityLock = false;
     boolean backgroundMode = false;
+    boolean sessionJournal = false;
     PowerManager.WakeLock wakeLock = null;
     PowerManager.WakeLock backgroundWakeLock = null; // Wake lock for background recording
 
@@ -439,6 +440,10 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
         }
         // Release background wake lock
         releaseBackgroundWakeLock();
+        //The journal is only needed if the experiment ends unexpectedly. If the activity is just
+        //recreated, the experiment and its journal continue.
+        if (experiment != null && isFinishing())
+            experiment.discardJournal();
     }
 
     @Override
@@ -775,6 +780,7 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
         settings =  PreferenceManager.getDefaultSharedPreferences(this);
         proximityLock = settings.getBoolean("proximityLock", false);
         backgroundMode = settings.getBoolean("backgroundMode", false);
+        sessionJournal = settings.getBoolean("sessionJournal", false);
         if (proximityLock && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
             PowerManager powerManager = (PowerManager) getBaseContext().getSystemService(Context.POWER_SERVICE);
             if (powerManager.isWakeLockLevelSupported(PowerManager.PROXIMITY_SCREEN_OFF_WAKE_LOCK))
@@ -1588,6 +1594,10 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
             dialog.show();
         }
 
+        //Record the data, so it can be recovered if the app does not end regularly
+        if (sessionJournal)
+            experiment.startJournal(getFilesDir());
+
         //Set measurement state
         measuring = true;
 
@@ -1633,6 +1643,7 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
                     }
                     millisUntilFinished = muf;
                     invalidateOptionsMenu();
+                    experiment.announceChange();
                 }
 
                 public void onFinish() {
@@ -1641,6 +1652,7 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
             }.start();
         }
         invalidateOptionsMenu();
+        experiment.announceChange();
     }
 
     //Start a timed measurement
@@ -1734,6 +1746,7 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
                 }
                 millisUntilFinished = muf;
                 invalidateOptionsMenu();
+                experiment.announceChange();
             }
 
             public void onFinish() {
@@ -1741,6 +1754,7 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
             }
         }.start();
         invalidateOptionsMenu();
+        experiment.announceChange();
     }
 
     //Stop the measurement
@@ -1771,8 +1785,12 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
         //be careful as stopMeasurement might be called without a valid experiment
         if (experiment != null) {
             experiment.stopAllIO();
+            experiment.announceChange(); //Tell the remote clients, as there might not be another analysis cycle
         }
 
+        //Now that the analysis is idle, replace quick FFT plans with measured ones (see Analysis.java)
+        Analysis.improveFFTPlans(this);
+
         //refresh the options menu
         invalidateOptionsMenu();
     }
@@ -1784,11 +1802,19 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
         stopMeasurement();
 
         experiment.dataLock.lock(); //Synced, do not allow another thread to meddle here...
+        experiment.inputLock.lock(); //Also keep the inputs from staging old values while we are clearing them
         try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                for (BluetoothInput bti : experiment.bluetoothInputs)
+                    bti.discardQueued();
+            }
             for (DataBuffer buffer : experiment.dataBuffers)
-                if (!buffer.linkedToUserInput)
+                if (!buffer.linkedToUserInput) {
+                    buffer.discardStaged();
                     buffer.clear(true);
+                }
         } finally {
+            experiment.inputLock.unlock();
             experiment.dataLock.unlock();
         }
 
@@ -1797,6 +1823,7 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
         experiment.newUserInput = true;
         if (remote != null && serverEnabled)
             remote.forceFullUpdate = true;
+        experiment.announceChange();
     }
 
     //Start the remote server (see remoteServer class)
@@ -87,6 +87,7 @@ import java.util.zip.CRC32;
 
 import de.rwth_aachen.phyphox.Bluetooth.BluetoothExperimentLoader;
 import de.rwth_aachen.phyphox.Bluetooth.BluetoothScanDialog;
+import de.rwth_aachen.phyphox.App;
 import de.rwth_aachen.phyphox.Experiment;
 import de.rwth_aachen.phyphox.ExperimentList.datasource.AssetExperimentLoader;
 import de.rwth_aachen.phyphox.ExperimentList.handler.BluetoothScanner;
@@ -192,6 +193,16 @@ public class ExperimentListActivity extends AppCompatActivity {
     protected void onResume() {
         super.onResume();
         experimentRepository.loadAndShowMainExperimentList(this);
+
+        //Journals of measurements that did not end regularly are recovered in the background when
+        //the app starts (see App and SessionJournal). Show the new states once they are ready.
+        ((App) getApplicationContext()).onSessionsRecovered = () -> experimentRepository.loadAndShowMainExperimentList(this);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        ((App) getApplicationContext()).onSessionsRecovered = null;
     }
 
     @Override
@@ -5,7 +5,7 @@ import android.os.SystemClock;
 import android.util.Log;
 
 import java.io.Serializable;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 public class ExperimentTimeReference implements Serializable {
@@ -32,7 +32,34 @@ public class ExperimentTimeReference implements Serializable {
         }
     }
 
-    public List<TimeMapping> timeMappings = new LinkedList<>();
+    public List<TimeMapping> timeMappings = new ArrayList<>();
+
+    //The start times of all reference sets as arrays, so the set of a given time can be found by a
+    //binary search. Graphs and buffers look up every single value, so this is built once for each
+    //change of timeMappings instead of walking the list each time.
+    private static class Table {
+        final int size;
+        final TimeMapping last; //Together with size used to notice changes of timeMappings
+        final double[] experimentTimes;
+        final double[] linearTimes;
+
+        Table(List<TimeMapping> timeMappings) {
+            size = timeMappings.size();
+            last = size > 0 ? timeMappings.get(size - 1) : null;
+            experimentTimes = new double[size];
+            linearTimes = new double[size];
+            for (int i = 0; i < size; i++) {
+                TimeMapping mapping = timeMappings.get(i);
+                experimentTimes[i] = mapping.experimentTime;
+                linearTimes[i] = (mapping.systemTime - timeMappings.get(0).systemTime) * 0.001;
+            }
+        }
+    }
+    private transient volatile Table table = null;
+    //Result of the last lookups. Consecutive values usually belong to the same set, so this is
+    //checked before searching.
+    private transient int lastExperimentTimeIndex = 0;
+    private transient int lastLinearTimeIndex = 0;
 
     ExperimentTimeReference(Listener listener) {
         this.listener = listener;
@@ -80,6 +107,7 @@ public class ExperimentTimeReference implements Serializable {
 
     public void reset() {
         timeMappings.clear();
+        table = null;
         if (listener != null)
             listener.onExperimentTimeReferenceUpdated(this);
     }
@@ -109,18 +137,42 @@ public class ExperimentTimeReference implements Serializable {
         return (System.currentTimeMillis() - timeMappings.get(0).systemTime) * 0.001;
     }
 
+    private Table getTable() {
+        Table t = table;
+        int size = timeMappings.size();
+        if (t == null || t.size != size || (size > 0 && t.last != timeMappings.get(size - 1))) {
+            t = new Table(timeMappings);
+            table = t;
+        }
+        return t;
+    }
+
+    //Index of the last set starting at or before t or 0 if there is none. hint is checked first.
+    private static int findIndex(double[] times, double t, int hint) {
+        int n = times.length;
+        if (hint < n && (hint == 0 || times[hint] <= t) && (hint + 1 >= n || !(times[hint + 1] <= t)))
+            return hint;
+        int lo = 1;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[mid] <= t)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo - 1;
+    }
+
     public int getReferenceIndexFromExperimentTime(double t) {
-        int i = 0;
-        while (timeMappings.size() > i+1 && timeMappings.get(i+1).experimentTime <= t)
-            i++;
+        int i = findIndex(getTable().experimentTimes, t, lastExperimentTimeIndex);
+        lastExperimentTimeIndex = i;
         return i;
     }
 
     public int getReferenceIndexFromLinearTime(double t) {
-        int i = 0;
-        while (timeMappings.size() > i+1 && (timeMappings.get(i+1).systemTime - timeMappings.get(0).systemTime) * 0.001 <= t) {
-            i++;
-        }
+        int i = findIndex(getTable().linearTimes, t, lastLinearTimeIndex);
+        lastLinearTimeIndex = i;
         return i;
     }
 
@@ -1,7 +1,16 @@
 package de.rwth_aachen.phyphox;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Vector;
 
+//The FormulaParser parses a formula into a tree of operations. Since the formula is evaluated for
+//every element of its inputs on every analysis cycle, the tree is not evaluated directly. Instead,
+//it is compiled into a flat list of instructions that work on blocks of values. Operations on
+//constants are folded at compile time and operations on single values ([1] instead of [1_]) are
+//only calculated once per execution, so the inner loops only see plain double arrays.
+
 public class FormulaParser {
     Source base = null;
 
@@ -33,217 +42,156 @@ public class FormulaParser {
         Source(Double value) {
             this.value = value;
         }
-
-        public Double get(Vector<Double[]> in, int i) throws FormulaException {
-            if (node != null) {
-                return node.calculate(in, i);
-            } else if (index != null) {
-                if (index >= in.size())
-                    throw new FormulaException("Index too large.");
-                Double[] thisIn = in.get(index);
-                if (thisIn.length == 0)
-                    throw new FormulaException("Empty input.");
-                if (single) {
-                    return thisIn[thisIn.length-1];
-                } else {
-                    if (i > thisIn.length)
-                        throw new FormulaException("Input too short.");
-                    return thisIn[i];
-                }
-            } else
-                return value;
-        }
     }
 
     class FormulaNode {
-        Function func;
+        int func;
         Source in1, in2;
 
-        FormulaNode(Function func, Source in1, Source in2) {
+        FormulaNode(int func, Source in1, Source in2) {
             this.func = func;
             this.in1 = in1;
             this.in2 = in2;
         }
-
-        public Double calculate(Vector<Double[]> in, int i) throws FormulaException {
-            return func.apply(in1.get(in, i), in2 != null ? in2.get(in, i) : null);
-        }
-
-    }
-
-    static class Function {
-        protected Double apply (Double in1, Double in2) {
-            return Double.NaN;
-        }
-    }
-
-    static class AddFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return in1+in2;
-        }
-    }
-
-    static class MultiplyFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return in1*in2;
-        }
-    }
-
-    static class SubtractFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return in1-in2;
-        }
-    }
-
-    static class DivideFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return in1/in2;
-        }
-    }
-
-    static class ModuloFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return in1%in2;
-        }
-    }
-
-    static class PowerFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return Math.pow(in1, in2);
-        }
     }
 
-    static class MinusFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return -in1;
-        }
-    }
-
-    static class SqrtFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return Math.sqrt(in1);
-        }
-    }
-
-    static class SinFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return Math.sin(in1);
-        }
-    }
-
-    static class CosFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return Math.cos(in1);
-        }
-    }
-
-    static class TanFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return Math.tan(in1);
-        }
-    }
-
-    static class AsinFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return Math.asin(in1);
-        }
-    }
-
-    static class AcosFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return Math.acos(in1);
-        }
-    }
-
-    static class AtanFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return Math.atan(in1);
-        }
-    }
-
-    static class Atan2Function extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return Math.atan2(in1, in2);
-        }
-    }
-
-    static class SinhFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return Math.sinh(in1);
-        }
-    }
-
-    static class CoshFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return Math.cosh(in1);
-        }
-    }
-
-    static class TanhFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return Math.tanh(in1);
-        }
-    }
-
-    static class ExpFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return Math.exp(in1);
-        }
-    }
-
-    static class LogFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return Math.log(in1);
-        }
-    }
-
-    static class AbsFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return Math.abs(in1);
-        }
-    }
-
-    static class SignFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return Math.signum(in1);
-        }
-    }
-
-    static class HeavisideFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            if (in1.isNaN())
-                return Double.NaN;
-            return in1 >= 0 ? 1.0 : 0.0;
-        }
-    }
-
-    static class RoundFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return (double)Math.round(in1);
-        }
-    }
-
-    static class CeilFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return Math.ceil(in1);
-        }
-    }
-
-    static class FloorFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return Math.floor(in1);
-        }
-    }
-
-    static class MinFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return Math.min(in1, in2);
-        }
-    }
-
-    static class MaxFunction extends Function {
-        protected Double apply (Double in1, Double in2) {
-            return Math.max(in1, in2);
+    //Operations
+    static final int NONE = 0;
+    static final int ADD = 1;
+    static final int MULTIPLY = 2;
+    static final int SUBTRACT = 3;
+    static final int DIVIDE = 4;
+    static final int MODULO = 5;
+    static final int POWER = 6;
+    static final int MINUS = 7;
+    static final int SQRT = 8;
+    static final int SIN = 9;
+    static final int COS = 10;
+    static final int TAN = 11;
+    static final int ASIN = 12;
+    static final int ACOS = 13;
+    static final int ATAN = 14;
+    static final int ATAN2 = 15;
+    static final int SINH = 16;
+    static final int COSH = 17;
+    static final int TANH = 18;
+    static final int EXP = 19;
+    static final int LOG = 20;
+    static final int ABS = 21;
+    static final int SIGN = 22;
+    static final int HEAVISIDE = 23;
+    static final int ROUND = 24;
+    static final int CEIL = 25;
+    static final int FLOOR = 26;
+    static final int MIN = 27;
+    static final int MAX = 28;
+
+    private static boolean isBinary(int func) {
+        switch (func) {
+            case ADD:
+            case MULTIPLY:
+            case SUBTRACT:
+            case DIVIDE:
+            case MODULO:
+            case POWER:
+            case ATAN2:
+            case MIN:
+            case MAX:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    //Apply an operation to single values. Unary operations ignore in2.
+    static double apply(int func, double in1, double in2) {
+        switch (func) {
+            case ADD: return in1+in2;
+            case MULTIPLY: return in1*in2;
+            case SUBTRACT: return in1-in2;
+            case DIVIDE: return in1/in2;
+            case MODULO: return in1%in2;
+            case POWER: return Math.pow(in1, in2);
+            case MINUS: return -in1;
+            case SQRT: return Math.sqrt(in1);
+            case SIN: return Math.sin(in1);
+            case COS: return Math.cos(in1);
+            case TAN: return Math.tan(in1);
+            case ASIN: return Math.asin(in1);
+            case ACOS: return Math.acos(in1);
+            case ATAN: return Math.atan(in1);
+            case ATAN2: return Math.atan2(in1, in2);
+            case SINH: return Math.sinh(in1);
+            case COSH: return Math.cosh(in1);
+            case TANH: return Math.tanh(in1);
+            case EXP: return Math.exp(in1);
+            case LOG: return Math.log(in1);
+            case ABS: return Math.abs(in1);
+            case SIGN: return Math.signum(in1);
+            case HEAVISIDE:
+                if (Double.isNaN(in1))
+                    return Double.NaN;
+                return in1 >= 0 ? 1.0 : 0.0;
+            case ROUND: return (double)Math.round(in1);
+            case CEIL: return Math.ceil(in1);
+            case FLOOR: return Math.floor(in1);
+            case MIN: return Math.min(in1, in2);
+            case MAX: return Math.max(in1, in2);
+            default: return Double.NaN;
+        }
+    }
+
+    //Apply an operation to [n] values of the arrays a and b (starting at aOff and bOff) and write
+    //the results to d starting at dOff. Each operation gets its own loop, so the loops can be
+    //optimized (and vectorized) by the compiler. The rarely used ones fall back to apply().
+    static void apply(int func, double[] a, int aOff, double[] b, int bOff, double[] d, int dOff, int n) {
+        switch (func) {
+            case ADD:
+                for (int i = 0; i < n; i++)
+                    d[dOff+i] = a[aOff+i] + b[bOff+i];
+                break;
+            case MULTIPLY:
+                for (int i = 0; i < n; i++)
+                    d[dOff+i] = a[aOff+i] * b[bOff+i];
+                break;
+            case SUBTRACT:
+                for (int i = 0; i < n; i++)
+                    d[dOff+i] = a[aOff+i] - b[bOff+i];
+                break;
+            case DIVIDE:
+                for (int i = 0; i < n; i++)
+                    d[dOff+i] = a[aOff+i] / b[bOff+i];
+                break;
+            case POWER:
+                for (int i = 0; i < n; i++) {
+                    double y = b[bOff+i];
+                    //Squares are by far the most common power in formulas and a lot cheaper than pow
+                    d[dOff+i] = y == 2.0 ? a[aOff+i] * a[aOff+i] : Math.pow(a[aOff+i], y);
+                }
+                break;
+            case MINUS:
+                for (int i = 0; i < n; i++)
+                    d[dOff+i] = -a[aOff+i];
+                break;
+            case SQRT:
+                for (int i = 0; i < n; i++)
+                    d[dOff+i] = Math.sqrt(a[aOff+i]);
+                break;
+            case ABS:
+                for (int i = 0; i < n; i++)
+                    d[dOff+i] = Math.abs(a[aOff+i]);
+                break;
+            case MIN:
+                for (int i = 0; i < n; i++)
+                    d[dOff+i] = Math.min(a[aOff+i], b[bOff+i]);
+                break;
+            case MAX:
+                for (int i = 0; i < n; i++)
+                    d[dOff+i] = Math.max(a[aOff+i], b[bOff+i]);
+                break;
+            default:
+                for (int i = 0; i < n; i++)
+                    d[dOff+i] = apply(func, a[aOff+i], b[bOff+i]);
         }
     }
 
@@ -296,14 +244,14 @@ public class FormulaParser {
         }
 
         if (formula.charAt(start) == '-') {
-            return new Source(new FormulaNode(new MinusFunction(), parse(formula, start+1, end), null));
+            return new Source(new FormulaNode(MINUS, parse(formula, start+1, end), null));
         }
 
         int start1 = start;
         int start2 = start;
         int end1 = end;
         int end2 = end;
-        Function operator = null;
+        int operator = NONE;
 
         int previousPriority = 100;
         int brackets = 0;
@@ -325,7 +273,7 @@ public class FormulaParser {
                     case '+':
                         if (previousPriority >= 1 && (i == start || !cmd.equals("e"))) {
                             previousPriority = 1;
-                            operator = new AddFunction();
+                            operator = ADD;
                             start1 = start;
                             end2 = end;
                             end1 = i;
@@ -335,7 +283,7 @@ public class FormulaParser {
                     case '-':
                         if (previousPriority >= 1 && formula.charAt(i-1) != 'e' && formula.charAt(i-1) != '+' && formula.charAt(i-1) != '*' && formula.charAt(i-1) != '-' && formula.charAt(i-1) != '/' && formula.charAt(i-1) != '%' && formula.charAt(i-1) != '^') {
                             previousPriority = 1;
-                            operator = new SubtractFunction();
+                            operator = SUBTRACT;
                             start1 = start;
                             end2 = end;
                             end1 = i;
@@ -345,7 +293,7 @@ public class FormulaParser {
                     case '*':
                         if (previousPriority >= 2) {
                             previousPriority = 2;
-                            operator = new MultiplyFunction();
+                            operator = MULTIPLY;
                             start1 = start;
                             end2 = end;
                             end1 = i;
@@ -355,7 +303,7 @@ public class FormulaParser {
                     case '/':
                         if (previousPriority >= 2) {
                             previousPriority = 2;
-                            operator = new DivideFunction();
+                            operator = DIVIDE;
                             start1 = start;
                             end2 = end;
                             end1 = i;
@@ -365,7 +313,7 @@ public class FormulaParser {
                     case '%':
                         if (previousPriority >= 2) {
                             previousPriority = 2;
-                            operator = new ModuloFunction();
+                            operator = MODULO;
                             start1 = start;
                             end2 = end;
                             end1 = i;
@@ -375,7 +323,7 @@ public class FormulaParser {
                     case '^':
                         if (previousPriority >= 3) {
                             previousPriority = 3;
-                            operator = new PowerFunction();
+                            operator = POWER;
                             start1 = start;
                             end2 = end;
                             end1 = i;
@@ -424,47 +372,47 @@ public class FormulaParser {
 
                         previousPriority = 4;
                         switch (cmd) {
-                            case "sqrt": operator = new SqrtFunction();
+                            case "sqrt": operator = SQRT;
                                          break;
-                            case "sin":  operator = new SinFunction();
+                            case "sin":  operator = SIN;
                                          break;
-                            case "cos":  operator = new CosFunction();
+                            case "cos":  operator = COS;
                                          break;
-                            case "tan":  operator = new TanFunction();
+                            case "tan":  operator = TAN;
                                          break;
-                            case "asin": operator = new AsinFunction();
+                            case "asin": operator = ASIN;
                                          break;
-                            case "acos": operator = new AcosFunction();
+                            case "acos": operator = ACOS;
                                          break;
-                            case "atan": operator = new AtanFunction();
+                            case "atan": operator = ATAN;
                                          break;
-                            case "atan2": operator = new Atan2Function();
+                            case "atan2": operator = ATAN2;
                                          break;
-                            case "sinh": operator = new SinhFunction();
+                            case "sinh": operator = SINH;
                                          break;
-                            case "cosh": operator = new CoshFunction();
+                            case "cosh": operator = COSH;
                                          break;
-                            case "tanh": operator = new TanhFunction();
+                            case "tanh": operator = TANH;
                                          break;
-                            case "exp":  operator = new ExpFunction();
+                            case "exp":  operator = EXP;
                                          break;
-                            case "log":  operator = new LogFunction();
+                            case "log":  operator = LOG;
                                          break;
-                            case "abs":  operator = new AbsFunction();
+                            case "abs":  operator = ABS;
                                          break;
-                            case "sign": operator = new SignFunction();
+                            case "sign": operator = SIGN;
                                          break;
-                            case "heaviside": operator = new HeavisideFunction();
+                            case "heaviside": operator = HEAVISIDE;
                                          break;
-                            case "round": operator = new RoundFunction();
+                            case "round": operator = ROUND;
                                          break;
-                            case "ceil": operator = new CeilFunction();
+                            case "ceil": operator = CEIL;
                                          break;
-                            case "floor": operator = new FloorFunction();
+                            case "floor": operator = FLOOR;
                                          break;
-                            case "min": operator = new MinFunction();
+                            case "min": operator = MIN;
                                          break;
-                            case "max": operator = new MaxFunction();
+                            case "max": operator = MAX;
                                          break;
                         }
                     }
@@ -476,7 +424,7 @@ public class FormulaParser {
         if (brackets != 0)
             throw new FormulaException("Brackets do not match!");
 
-        if (operator != null)
+        if (operator != NONE)
             return new Source(new FormulaNode(operator, parse(formula, start1, end1), parse(formula, start2, end2)));
         else {
             try {
@@ -488,23 +436,181 @@ public class FormulaParser {
         }
     }
 
+
+    //Block size of the compiled evaluation. Intermediate results of a block stay in the cache.
+    private static final int BLOCK_SIZE = 256;
+
+    //Kinds of operands of the compiled program
+    private static final int CONSTANT = 0;
+    private static final int INPUT_SINGLE = 1; //Last value of an input ([1])
+    private static final int INPUT_ARRAY = 2; //Element-wise input ([1_])
+    private static final int RESULT_SINGLE = 3; //Result of an operation on single values
+    private static final int RESULT_ARRAY = 4; //Element-wise result of an operation
+
+    private static class Operand {
+        final int kind;
+        final int index; //Input index for INPUT_SINGLE and INPUT_ARRAY
+        double value; //Value of single operands
+        double[] data; //Array of element-wise values (or the value repeated for single operands)
+        int offset; //Offset in data for the first element of the current execution
+
+        Operand(int kind, int index, double value) {
+            this.kind = kind;
+            this.index = index;
+            this.value = value;
+        }
+
+        boolean isSingle() {
+            return kind == CONSTANT || kind == INPUT_SINGLE || kind == RESULT_SINGLE;
+        }
+    }
+
+    private static class Instruction {
+        final int func;
+        final Operand in1, in2, out;
+
+        Instruction(int func, Operand in1, Operand in2, Operand out) {
+            this.func = func;
+            this.in1 = in1;
+            this.in2 = in2;
+            this.out = out;
+        }
+    }
+
+    private Operand[] inputs; //Operands which refer to the inputs
+    private Operand[] repeated; //Single operands used in element-wise operations
+    private Instruction[] singleInstructions; //Operations on single values, calculated once per execution
+    private Instruction[] arrayInstructions; //Element-wise operations in the order of execution
+    private Operand result = null; //The final result or null if the formula can never be evaluated
+    private double[] resultData = new double[0];
+
+    //Compile a node of the formula tree into instructions. Returns null if the node can never be
+    //evaluated (i.e. a missing operand)
+    private Operand compile(Source source, List<Operand> inputList, List<Operand> repeatedList, List<Instruction> singleList, List<Instruction> arrayList) {
+        if (source == null)
+            return null;
+        if (source.node == null) {
+            if (source.index == null)
+                return new Operand(CONSTANT, -1, source.value);
+            Operand operand = new Operand(source.single ? INPUT_SINGLE : INPUT_ARRAY, source.index, Double.NaN);
+            inputList.add(operand);
+            return operand;
+        }
+
+        int func = source.node.func;
+        Operand in1 = compile(source.node.in1, inputList, repeatedList, singleList, arrayList);
+        Operand in2 = compile(source.node.in2, inputList, repeatedList, singleList, arrayList);
+        if (in1 == null || (in2 == null && isBinary(func)))
+            return null;
+        if (in2 == null)
+            in2 = in1; //Ignored by unary operations
+
+        if (in1.kind == CONSTANT && in2.kind == CONSTANT) //Constant folding
+            return new Operand(CONSTANT, -1, apply(func, in1.value, in2.value));
+
+        if (in1.isSingle() && in2.isSingle()) {
+            Operand out = new Operand(RESULT_SINGLE, -1, Double.NaN);
+            singleList.add(new Instruction(func, in1, in2, out));
+            return out;
+        }
+
+        Operand out = new Operand(RESULT_ARRAY, -1, Double.NaN);
+        out.data = new double[BLOCK_SIZE];
+        for (Operand in : new Operand[]{in1, in2}) {
+            if (in.isSingle() && in.data == null) {
+                in.data = new double[BLOCK_SIZE];
+                repeatedList.add(in);
+            }
+        }
+        arrayList.add(new Instruction(func, in1, in2, out));
+        return out;
+    }
+
     FormulaParser(String formula) throws FormulaException {
         String strippedFormula = formula.replaceAll("\\s+","").toLowerCase();
         base = parse(strippedFormula, 0, strippedFormula.length());
+
+        List<Operand> inputList = new ArrayList<>();
+        List<Operand> repeatedList = new ArrayList<>();
+        List<Instruction> singleList = new ArrayList<>();
+        List<Instruction> arrayList = new ArrayList<>();
+        result = compile(base, inputList, repeatedList, singleList, arrayList);
+        inputs = inputList.toArray(new Operand[0]);
+        repeated = repeatedList.toArray(new Operand[0]);
+        singleInstructions = singleList.toArray(new Instruction[0]);
+        arrayInstructions = arrayList.toArray(new Instruction[0]);
     }
 
-    public void execute(Vector<Double[]> in, DataOutput out) {
+    //Evaluate the formula for each element of the inputs and append the results to out. Inputs
+    //used element-wise limit the number of results to their length. If all inputs are used as
+    //single values, the result is repeated for the length of the longest input.
+    public void execute(Vector<DataBufferView> in, DataOutput out) {
+        if (result == null || out == null)
+            return;
+
         int n = 0;
-        for (Double[] i : in) {
-            n = Math.max(n, i.length);
+        for (DataBufferView view : in) {
+            if (view == null)
+                return;
+            n = Math.max(n, view.length);
+        }
+
+        //Resolve the inputs
+        for (Operand operand : inputs) {
+            if (operand.index >= in.size())
+                return; //Index too large
+            DataBufferView view = in.get(operand.index);
+            if (view.length == 0)
+                return; //Empty input
+            if (operand.kind == INPUT_SINGLE)
+                operand.value = view.get(view.length-1);
+            else {
+                operand.data = view.data;
+                operand.offset = view.offset;
+                n = Math.min(n, view.length);
+            }
         }
-        for (int i = 0; i < n; i++) {
-            try {
-                out.append(base.get(in, i));
-            } catch (Exception e) {
-                break;
+        if (n == 0)
+            return;
+
+        for (Instruction instruction : singleInstructions)
+            instruction.out.value = apply(instruction.func, instruction.in1.value, instruction.in2.value);
+
+        if (resultData.length < n)
+            resultData = new double[Math.max(n, 2*resultData.length)];
+
+        if (result.isSingle()) {
+            Arrays.fill(resultData, 0, n, result.value);
+        } else if (result.kind == INPUT_ARRAY) {
+            System.arraycopy(result.data, result.offset, resultData, 0, n);
+        } else {
+            //Single values that are used in element-wise operations are repeated to fill a block
+            for (Operand operand : repeated)
+                Arrays.fill(operand.data, operand.value);
+
+            Instruction last = arrayInstructions[arrayInstructions.length-1];
+            for (int start = 0; start < n; start += BLOCK_SIZE) {
+                int length = Math.min(BLOCK_SIZE, n - start);
+                for (Instruction instruction : arrayInstructions) {
+                    Operand in1 = instruction.in1;
+                    Operand in2 = instruction.in2;
+                    int in1Offset = in1.kind == INPUT_ARRAY ? in1.offset + start : 0;
+                    int in2Offset = in2.kind == INPUT_ARRAY ? in2.offset + start : 0;
+                    if (instruction == last) //The last instruction directly writes the result
+                        apply(instruction.func, in1.data, in1Offset, in2.data, in2Offset, resultData, start, length);
+                    else
+                        apply(instruction.func, in1.data, in1Offset, in2.data, in2Offset, instruction.out.data, 0, length);
+                }
             }
         }
+
+        //Do not keep references to the input data
+        for (Operand operand : inputs) {
+            if (operand.kind == INPUT_ARRAY)
+                operand.data = null;
+        }
+
+        out.append(resultData, n);
     }
 
 }
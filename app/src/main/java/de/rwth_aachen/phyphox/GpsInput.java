@@ -33,7 +33,7 @@ public class GpsInput implements Serializable {
     private ExperimentTimeReference experimentTimeReference; //the start time of the measurement. This allows for timestamps relative to the beginning of a measurement
     public double lastSatBasedLocation;
 
-    private Lock dataLock;
+    private Lock inputLock;
     private int lastStatus = 0;
     private GpsGeoid geoid;
 
@@ -44,7 +44,7 @@ public class GpsInput implements Serializable {
 
     //The constructor
     protected GpsInput(Vector<DataOutput> buffers, Lock lock, ExperimentTimeReference experimentTimeReference) {
-        this.dataLock = lock;
+        this.inputLock = lock;
         this.experimentTimeReference = experimentTimeReference;
 
         //Store the buffer references if any
@@ -137,17 +137,17 @@ public class GpsInput implements Serializable {
         if (dataStatus == null)
             return;
 
-        dataLock.lock();
+        inputLock.lock();
         try {
             if (locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER))
                 if (status == LocationProvider.AVAILABLE)
-                    dataStatus.append(1);
+                    dataStatus.stage(1);
                 else
-                    dataStatus.append(0);
+                    dataStatus.stage(0);
             else
-                dataStatus.append(-1);
+                dataStatus.stage(-1);
         } finally {
-            dataLock.unlock();
+            inputLock.unlock();
         }
     }
 
@@ -162,8 +162,15 @@ public class GpsInput implements Serializable {
 
         double newT = experimentTimeReference.getExperimentTimeFromEvent(inT);
 
-        if (dataT != null && newT < dataT.value)
-            return;
+        if (dataT != null) {
+            inputLock.lock();
+            try {
+                if (newT < dataT.getStagedValue())
+                    return;
+            } finally {
+                inputLock.unlock();
+            }
+        }
 
         if (event.getProvider().equals(LocationManager.GPS_PROVIDER))
             lastSatBasedLocation = newT;
@@ -173,41 +180,41 @@ public class GpsInput implements Serializable {
         }
 
         //Append the data to available buffers
-        dataLock.lock();
+        inputLock.lock();
         try {
             if (dataT != null)
-                dataT.append(newT);
+                dataT.stage(newT);
             if (dataLat != null)
-                dataLat.append(event.getLatitude());
+                dataLat.stage(event.getLatitude());
             if (dataLon != null)
-                dataLon.append(event.getLongitude());
+                dataLon.stage(event.getLongitude());
             if (dataZWGS84 != null) {
-                dataZWGS84.append(event.hasAltitude() ? event.getAltitude() : Double.NaN);
+                dataZWGS84.stage(event.hasAltitude() ? event.getAltitude() : Double.NaN);
             }
             if (dataZ != null) {
-                dataZ.append(event.hasAltitude() ? event.getAltitude() - geoid.height(event.getLatitude(), event.getLongitude()) : Double.NaN);
+                dataZ.stage(event.hasAltitude() ? event.getAltitude() - geoid.height(event.getLatitude(), event.getLongitude()) : Double.NaN);
             }
             if (dataV != null)
-                dataV.append(event.hasSpeed() ? event.getSpeed() : Double.NaN);
+                dataV.stage(event.hasSpeed() ? event.getSpeed() : Double.NaN);
             if (dataDir != null)
-                dataDir.append(event.hasBearing() ? event.getBearing() : Double.NaN);
+                dataDir.stage(event.hasBearing() ? event.getBearing() : Double.NaN);
 
             if (dataAccuracy != null)
-                dataAccuracy.append(event.getAccuracy());
+                dataAccuracy.stage(event.getAccuracy());
             if (dataZAccuracy != null) {
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                    dataZAccuracy.append(event.getVerticalAccuracyMeters());
+                    dataZAccuracy.stage(event.getVerticalAccuracyMeters());
                 } else
-                    dataZAccuracy.append(0); //Older Android does not provide vertical accuracy
+                    dataZAccuracy.stage(0); //Older Android does not provide vertical accuracy
             }
             if (dataSatellites != null) {
                 if (event.getExtras() != null)  //Not sure why this might happen, but there seem to be rare cases in which this leads to a crash
-                    dataSatellites.append(event.getExtras().getInt("satellites", 0));
+                    dataSatellites.stage(event.getExtras().getInt("satellites", 0));
                 else
-                    dataSatellites.append(-1);
+                    dataSatellites.stage(-1);
             }
         } finally {
-            dataLock.unlock();
+            inputLock.unlock();
         }
 
     }
@@ -75,6 +75,7 @@ public class GraphView extends View {
     private FloatBufferRepresentation[] graphX; //The x data to be displayed
     private double[] histMinX, histMaxX;
     private FloatBufferRepresentation[] graphY; //The y data to be displayed
+    private FloatBufferRepresentation indexX = null; //Index x data for graphs without x data. Reused if there is no history, so the renderer does not need to upload it again
     private double[] histMinY, histMaxY;
     private double histMinZ, histMaxZ;
 
@@ -325,6 +326,25 @@ public class GraphView extends View {
         return super.onTouchEvent(event);
     }
 
+    //Copy of the valid values of a float copy. The buffer may move the values at any time (see
+    //FloatBufferRepresentation.reserve()), so they are only read while holding its lock.
+    private static float[] getValues(FloatBufferRepresentation fb) {
+        synchronized (fb.lock) {
+            float[] values = new float[fb.size];
+            fb.data.position(fb.offset);
+            fb.data.get(values);
+            return values;
+        }
+    }
+
+    private static float getValue(FloatBufferRepresentation fb, int index) {
+        synchronized (fb.lock) {
+            if (index >= fb.size)
+                throw new IndexOutOfBoundsException();
+            return fb.data.get(fb.offset + index);
+        }
+    }
+
     private void highlightNearestPoint(float x, float y, int index) {
 
         double minDist = Double.POSITIVE_INFINITY;
@@ -356,43 +376,33 @@ public class GraphView extends View {
 
         for (int i = 0; i < graphSetup.dataSets.size(); i++) {
             CurveData cd = graphSetup.dataSets.get(i);
-            if (cd.style == Style.mapZ || cd.fbX == null || cd.fbY == null)
+            FloatBufferRepresentation fbX = cd.fbX; //Local pointers, as the float copies might be replaced by another thread
+            FloatBufferRepresentation fbY = cd.fbY;
+            if (cd.style == Style.mapZ || fbX == null || fbY == null)
                 continue;
             double vxi, vyi, dx, dy, d;
-            int n = cd.n;
-            int offX = cd.fbX.offset;
-            int offY = cd.fbY.offset;
-            int offZ = 0;
-            float[] xi = new float[cd.fbX.offset + n];
-            float[] yi = new float[cd.fbY.offset + n];
+            float[] xi = getValues(fbX);
+            float[] yi = getValues(fbY);
             float[] zi = null;
+            int n = Math.min(xi.length, yi.length);
             if (i+1 < graphSetup.dataSets.size() && graphSetup.dataSets.get(i+1).style == Style.mapZ) {
-                offZ = graphSetup.dataSets.get(i + 1).fbY.offset;
-                zi = new float[offZ + n];
-            }
-            try {
-                cd.fbX.data.position(0);
-                cd.fbY.data.position(0);
-                cd.fbX.data.get(xi, 0, offX + n);
-                cd.fbY.data.get(yi, 0, offY + n);
-                if (i+1 < graphSetup.dataSets.size() && graphSetup.dataSets.get(i+1).style == Style.mapZ) {
-                    graphSetup.dataSets.get(i+1).fbY.data.position(0);
-                    graphSetup.dataSets.get(i+1).fbY.data.get(zi, 0, offZ + n);
-                }
-            } catch (Exception e) {
-                break;
+                FloatBufferRepresentation fbZ = graphSetup.dataSets.get(i+1).fbY;
+                if (fbZ == null)
+                    break;
+                zi = getValues(fbZ);
+                n = Math.min(n, zi.length);
             }
-            for (int j = 0; j < cd.n; j++) {
+            for (int j = 0; j < n; j++) {
 
                 if (cd.style == Style.hbars || cd.style == Style.vbars) {
                     if (j % 6 != 2 && j % 6 != 3)
                         continue;
                 }
 
-                if (xi[offX + j] < searchRangeMinX || xi[offX + j] > searchRangeMaxX || yi[offY + j] < searchRangeMinY || yi[offY + j] > searchRangeMaxY)
+                if (xi[j] < searchRangeMinX || xi[j] > searchRangeMaxX || yi[j] < searchRangeMinY || yi[j] > searchRangeMaxY)
                     continue;
-                vxi = dataXToViewX(xi[offX + j] + (timeOnX ? offsetFromExperimentTime(xi[offX + j]) : 0.0));
-                vyi = dataYToViewY(yi[offY + j] + (timeOnY ? offsetFromExperimentTime(xi[offX + j]) : 0.0));
+                vxi = dataXToViewX(xi[j] + (timeOnX ? offsetFromExperimentTime(xi[j]) : 0.0));
+                vyi = dataYToViewY(yi[j] + (timeOnY ? offsetFromExperimentTime(xi[j]) : 0.0));
 
                 dx = vxi - x;
                 dy = vyi - y;
@@ -401,10 +411,10 @@ public class GraphView extends View {
                     minDist = d;
                     minIndex = j;
                     minGraphIndex = i;
-                    minX = xi[offX + j];
-                    minY = yi[offY + j];
+                    minX = xi[j];
+                    minY = yi[j];
                     if (zi != null)
-                        minZ = zi[offZ + j];
+                        minZ = zi[j];
                     else
                         minZ = Double.NaN;
                     minVX = vxi;
@@ -820,15 +830,24 @@ public class GraphView extends View {
             addGraphData(graphY, min, max, graphY, min, max, min, max, new ArrayList[graphY.length], new ArrayList[graphY.length]);
             return;
         }
-        FloatBuffer data = ByteBuffer.allocateDirect(graphY[0].size * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
-        graphY[0].data.position(0);
-        for (int i = 0; i < graphY[0].size; i++)
-            data.put((float)i);
+        int n = graphY[0].size;
+        if (historyLength > 1 || indexX == null || indexX.data.capacity() < n) {
+            int capacity = historyLength > 1 || indexX == null ? n : Math.max(n, 2 * indexX.data.capacity());
+            FloatBuffer data = ByteBuffer.allocateDirect(capacity * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+            for (int i = 0; i < capacity; i++)
+                data.put((float)i);
+            data.position(0);
+            indexX = new FloatBufferRepresentation(data, 0, n);
+        } else {
+            synchronized (indexX.lock) {
+                indexX.size = n;
+            }
+        }
 
         FloatBufferRepresentation[] graphX = new FloatBufferRepresentation[graphY.length];
         for (int i = 0; i < graphY.length; i++)
             graphX[i] = null;
-        graphX[0] = new FloatBufferRepresentation(data, 0, graphY[0].size);
+        graphX[0] = indexX;
 
         //Call the full addGraphData with the artificial x data
         addGraphData(graphY, min, max, graphX, 0, graphY[0].size-1, Double.NaN, Double.NaN, new ArrayList[graphY.length], new ArrayList[graphY.length]);
@@ -1409,11 +1428,11 @@ public class GraphView extends View {
             if (pickedPointIndex[i] >= 0) {
                 double xi, yi, zi, vxi, vyi, d;
                 try {
-                    xi = graphSetup.dataSets.get(pickedPointGraphIndex[i]).fbX.data.get(graphSetup.dataSets.get(pickedPointGraphIndex[i]).fbX.offset + pickedPointIndex[i]);
-                    yi = graphSetup.dataSets.get(pickedPointGraphIndex[i]).fbY.data.get(graphSetup.dataSets.get(pickedPointGraphIndex[i]).fbX.offset + pickedPointIndex[i]);
+                    xi = getValue(graphSetup.dataSets.get(pickedPointGraphIndex[i]).fbX, pickedPointIndex[i]);
+                    yi = getValue(graphSetup.dataSets.get(pickedPointGraphIndex[i]).fbY, pickedPointIndex[i]);
 
                     if (graphSetup.dataSets.size() > pickedPointGraphIndex[i]+1 && graphSetup.dataSets.get(pickedPointGraphIndex[i]+1).style == Style.mapZ) {
-                        zi = graphSetup.dataSets.get(pickedPointGraphIndex[i]+1).fbY.data.get(graphSetup.dataSets.get(pickedPointGraphIndex[i]+1).fbY.offset + pickedPointIndex[i]);
+                        zi = getValue(graphSetup.dataSets.get(pickedPointGraphIndex[i]+1).fbY, pickedPointIndex[i]);
                     } else
                         zi = Double.NaN;
 
@@ -504,7 +504,11 @@ public class InteractiveGraphView extends RelativeLayout implements GraphView.Po
         if (linearRegression) {
 
             CurveData cd = graphView.graphSetup.dataSets.get(0);
-            if (cd == null || cd.fbX == null || cd.fbX.data == null || cd.fbY == null || cd.fbY.data == null)
+            if (cd == null)
+                return;
+            FloatBufferRepresentation fbX = cd.fbX; //Local pointers, as the float copies might be replaced by another thread
+            FloatBufferRepresentation fbY = cd.fbY;
+            if (fbX == null || fbX.data == null || fbY == null || fbY.data == null)
                 return;
 
             int n;
@@ -514,15 +518,16 @@ public class InteractiveGraphView extends RelativeLayout implements GraphView.Po
             double sumY = 0.;
             double sumY2 = 0.;
             double sumXY = 0.;
-            synchronized (cd.fbX) {
-                synchronized (cd.fbY) {
-                    cd.fbX.data.position(cd.fbX.offset);
-                    cd.fbY.data.position(cd.fbY.offset);
+            //Same order of the locks as in PlotAreaView
+            synchronized (fbY.lock) {
+                synchronized (fbX.lock) {
+                    fbX.data.position(fbX.offset);
+                    fbY.data.position(fbY.offset);
 
-                    n = Math.min(cd.fbX.size, cd.fbY.size);
+                    n = Math.min(fbX.size, fbY.size);
                     for (int i = 0; i < n; i++) {
-                        float x = cd.fbX.data.get();
-                        float y = cd.fbY.data.get();
+                        float x = fbX.data.get();
+                        float y = fbY.data.get();
                         if (Float.isNaN(x) || Float.isNaN(y)) {
                             skipped++;
                             continue;
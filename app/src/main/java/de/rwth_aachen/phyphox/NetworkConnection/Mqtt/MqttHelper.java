@@ -3,16 +3,17 @@ package de.rwth_aachen.phyphox.NetworkConnection.Mqtt;
 import android.content.Context;
 import android.util.Log;
 
-import org.eclipse.paho.client.mqttv3.MqttException;
-import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.io.InputStream;
 import java.security.KeyStore;
 import java.text.DecimalFormat;
@@ -74,43 +75,42 @@ public class MqttHelper{
         mqttService.clientID = userName;
     }
 
-    private static void writeBufferValuesIntoJson(Map.Entry<String, NetworkConnection.NetworkSendableData> item,
+    private static void writeBufferValuesIntoJson(MqttPublisher.Entry entry,
                                                   JSONObject json)throws JSONException
     {
-        String datatype = item.getValue().additionalAttributes != null ? item.getValue().additionalAttributes.get("datatype") : null;
-        if (datatype != null && datatype.equals("number")) {
-            double v = item.getValue().buffer.value;
+        if (entry.number) {
+            double v = entry.value;
             if (Double.isNaN(v) || Double.isInfinite(v))
-                json.put(item.getKey(), null);
+                json.put(entry.key, null);
             else
-                json.put(item.getKey(), v);
+                json.put(entry.key, v);
         } else {
             JSONArray jsonArray = new JSONArray();
-            for (double v : item.getValue().buffer.getArray()) {
+            for (int i = 0; i < entry.values.length; i++) {
+                double v = entry.values.get(i);
                 if (Double.isNaN(v) || Double.isInfinite(v))
                     jsonArray.put(null);
                 else
                     jsonArray.put(v);
             }
-            json.put(item.getKey(), jsonArray);
+            json.put(entry.key, jsonArray);
         }
     }
 
-    private static JSONObject buildJson(Map<String, NetworkConnection.NetworkSendableData> send,
-                                        MqttService mqttService) throws JSONException{
+    private static JSONObject buildJson(MqttPublisher.Snapshot snapshot) throws JSONException{
 
         JSONObject json = new JSONObject();
 
-            for (Map.Entry<String, NetworkConnection.NetworkSendableData> item : send.entrySet()) {
-                if (item.getValue().type == NetworkConnection.NetworkSendableData.DataType.METADATA)
-                    json.put(item.getKey(), item.getValue().metadata.get(mqttService.address));
-                else if (item.getValue().type == NetworkConnection.NetworkSendableData.DataType.BUFFER) {
-                    writeBufferValuesIntoJson(item,json);
-                } else if (item.getValue().type == NetworkConnection.NetworkSendableData.DataType.TIME) {
+            for (MqttPublisher.Entry entry : snapshot.entries) {
+                if (entry.type == NetworkConnection.NetworkSendableData.DataType.METADATA)
+                    json.put(entry.key, entry.text);
+                else if (entry.type == NetworkConnection.NetworkSendableData.DataType.BUFFER) {
+                    writeBufferValuesIntoJson(entry,json);
+                } else if (entry.type == NetworkConnection.NetworkSendableData.DataType.TIME) {
                     JSONObject timeInfo = new JSONObject();
-                    timeInfo.put("now", System.currentTimeMillis() / 1000.0);
+                    timeInfo.put("now", entry.now);
                     JSONArray events = new JSONArray();
-                    for (ExperimentTimeReference.TimeMapping timeMapping : item.getValue().timeReference.timeMappings) {
+                    for (ExperimentTimeReference.TimeMapping timeMapping : entry.timeMappings) {
                         JSONObject eventJson = new JSONObject();
                         eventJson.put("event", timeMapping.event.name());
                         eventJson.put("experimentTime", timeMapping.experimentTime);
@@ -118,71 +118,91 @@ public class MqttHelper{
                         events.put(eventJson);
                     }
                     timeInfo.put("events", events);
-                    json.put(item.getKey(), timeInfo);
+                    json.put(entry.key, timeInfo);
                 }
             }
         return json;
     }
 
-    private static void sendPersistenceMassages(MqttService mqttService, String sendTopic) throws MqttException{
-        for(JSONObject persistenceMassage : mqttService.messageBuffer){
-            MqttMessage message = new MqttMessage();
-            message.setPayload(persistenceMassage.toString().getBytes());
-            message.setQos(2);
-            mqttService.client.publish(sendTopic, message);
-        }
-        mqttService.writeSequence = 0;
-        mqttService.messageBuffer.clear();
+    //The JSON object of a single snapshot or, for batches, an array with the objects of all snapshots
+    static byte[] buildJsonPayload(List<MqttPublisher.Snapshot> batch, boolean array) throws JSONException {
+        if (!array)
+            return buildJson(batch.get(0)).toString().getBytes();
+        JSONArray jsonArray = new JSONArray();
+        for (MqttPublisher.Snapshot snapshot : batch)
+            jsonArray.put(buildJson(snapshot));
+        return jsonArray.toString().getBytes();
     }
 
-    private static void recordPersistenceMassages(Map<String, NetworkConnection.NetworkSendableData> send,
-                                                  MqttService mqttService) throws JSONException{
-        int capacity = mqttService.messageBuffer.capacity();
-        mqttService.messageBuffer.insertElementAt(buildJson(send,mqttService),(mqttService.writeSequence % capacity));
-        mqttService.writeSequence++;
-        if(mqttService.writeSequence % capacity == 0) {
-            mqttService.writeSequence = 0;
+    //Compact binary alternative to the JSON payload, written by a DataOutputStream (big-endian).
+    //The payload starts with the number of snapshots (int). Each snapshot starts with its number
+    //of entries (int) followed by the entries. Each entry is its key (writeUTF()) and its type
+    //(byte) followed by
+    //  0 (buffer): the number of values (int) and the values (double)
+    //  1 (metadata): the text (writeUTF(), empty if not available)
+    //  2 (time): the current time (double, s), the number of events (int) and for each event its
+    //            name (writeUTF()), experiment time (double, s) and system time (double, s)
+    static byte[] buildBinaryPayload(List<MqttPublisher.Snapshot> batch) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(batch.size());
+        for (MqttPublisher.Snapshot snapshot : batch) {
+            out.writeInt(snapshot.entries.size());
+            for (MqttPublisher.Entry entry : snapshot.entries) {
+                out.writeUTF(entry.key);
+                switch (entry.type) {
+                    case BUFFER:
+                        out.writeByte(0);
+                        if (entry.number) {
+                            out.writeInt(1);
+                            out.writeDouble(entry.value);
+                        } else {
+                            out.writeInt(entry.values.length);
+                            for (int i = 0; i < entry.values.length; i++)
+                                out.writeDouble(entry.values.get(i));
+                        }
+                        break;
+                    case METADATA:
+                        out.writeByte(1);
+                        out.writeUTF(entry.text != null ? entry.text : "");
+                        break;
+                    case TIME:
+                        out.writeByte(2);
+                        out.writeDouble(entry.now);
+                        out.writeInt(entry.timeMappings.size());
+                        for (ExperimentTimeReference.TimeMapping timeMapping : entry.timeMappings) {
+                            out.writeUTF(timeMapping.event.name());
+                            out.writeDouble(timeMapping.experimentTime != null ? timeMapping.experimentTime : Double.NaN);
+                            out.writeDouble(timeMapping.systemTime / 1000.);
+                        }
+                        break;
+                }
+            }
         }
+        out.flush();
+        return bytes.toByteArray();
     }
 
-    public static void sendJson (MqttService mqttService,
-                                 String sendTopic,
-                                 Map<String, NetworkConnection.NetworkSendableData> send,
-                                 List<NetworkService.RequestCallback> requestCallbacks
-                                 ) {
+    //Hand the data to the outbound pipeline of the service (see MqttPublisher). The callbacks
+    //get the state of the connection and any error since the last call.
+    private static void send(MqttService mqttService,
+                             Map<String, NetworkConnection.NetworkSendableData> send,
+                             List<NetworkService.RequestCallback> requestCallbacks) {
 
         NetworkService.ServiceResult result;
-        try {
-            if (!mqttService.isConnected()) {
-                result = new NetworkService.ServiceResult(NetworkService.ResultEnum.noConnection, null);
-                if(mqttService.persistence){
-                    recordPersistenceMassages(send,mqttService);
-                }
-            } else if (!mqttService.subscribed && !mqttService.receiveTopic.isEmpty()) {
-                result = new NetworkService.ServiceResult(NetworkService.ResultEnum.genericError, "Not subscribed.");
-            } else {
-            JSONObject json = buildJson(send, mqttService);
-
-            MqttMessage message = new MqttMessage();
-            if(mqttService.persistence){
-                sendPersistenceMassages(mqttService,sendTopic);
-                message.setQos(2);
-            }else {
-                message.setQos(0);
-            }
-            message.setPayload(json.toString().getBytes());
-            mqttService.client.publish(sendTopic, message);
-
-            result = new NetworkService.ServiceResult(NetworkService.ResultEnum.success, "");
-
-        }
-
-        } catch (MqttException e) {
-            Log.e("MQTT","Could not publish: " +  e.getMessage());
-            result = new NetworkService.ServiceResult(NetworkService.ResultEnum.genericError, "Could not publish. " + e.getMessage());
-        } catch (JSONException e) {
-            Log.e("MQTT","Could not build JSON: " +  e.getMessage());
-            result = new NetworkService.ServiceResult(NetworkService.ResultEnum.genericError, "Could not build JSON. " + e.getMessage());
+        if (!mqttService.isConnected()) {
+            result = new NetworkService.ServiceResult(NetworkService.ResultEnum.noConnection, null);
+            if (mqttService.persistence)
+                mqttService.getPublisher().offer(new MqttPublisher.Snapshot(send, mqttService.address));
+        } else if (!mqttService.subscribed && !mqttService.receiveTopic.isEmpty()) {
+            result = new NetworkService.ServiceResult(NetworkService.ResultEnum.genericError, "Not subscribed.");
+        } else {
+            mqttService.getPublisher().offer(new MqttPublisher.Snapshot(send, mqttService.address));
+            String error = mqttService.getPublisher().takeError();
+            if (error == null)
+                result = new NetworkService.ServiceResult(NetworkService.ResultEnum.success, "");
+            else
+                result = new NetworkService.ServiceResult(NetworkService.ResultEnum.genericError, error);
         }
 
         for (NetworkService.RequestCallback callback : requestCallbacks) {
@@ -190,69 +210,49 @@ public class MqttHelper{
         }
     }
 
-    private static String writeBufferValuesIntoCsvPayload(Map.Entry<String, NetworkConnection.NetworkSendableData> item,
-                                                          String payload){
-        String datatype = item.getValue().additionalAttributes != null ? item.getValue().additionalAttributes.get("datatype") : null;
-        if (datatype != null && datatype.equals("number")) {
-            if (item.getValue().buffer.getFilledSize() == 0)
-                return payload;
-            double v = item.getValue().buffer.value;
+    public static void sendJson (MqttService mqttService,
+                                 Map<String, NetworkConnection.NetworkSendableData> send,
+                                 List<NetworkService.RequestCallback> requestCallbacks
+                                 ) {
+        send(mqttService, send, requestCallbacks);
+    }
+
+    static String buildCsvPayload(MqttPublisher.Entry entry) {
+        if (entry.type == NetworkConnection.NetworkSendableData.DataType.METADATA)
+            return entry.text;
+        if (entry.type == NetworkConnection.NetworkSendableData.DataType.TIME) {
+            DecimalFormat longformat = (DecimalFormat) NumberFormat.getInstance(Locale.ENGLISH);
+            longformat.applyPattern("############0.000");
+            longformat.setGroupingUsed(false);
+            return longformat.format(entry.now);
+        }
+        if (entry.number) {
+            if (entry.empty)
+                return "";
+            double v = entry.value;
             if (Double.isNaN(v) || Double.isInfinite(v))
-                payload = "null";
+                return "null";
+            return String.valueOf(v);
+        }
+        StringBuilder sb = new StringBuilder();
+        boolean first = true;
+        for (int i = 0; i < entry.values.length; i++) {
+            double v = entry.values.get(i);
+            if (first)
+                first = false;
             else
-                payload = String.valueOf(v);
-        } else {
-            StringBuilder sb = new StringBuilder();
-            boolean first = true;
-            for (double v : item.getValue().buffer.getArray()) {
-                if (first)
-                    first = false;
-                else
-                    sb.append(",");
-                if (Double.isNaN(v) || Double.isInfinite(v))
-                    sb.append("null");
-                else
-                    sb.append(v);
-            }
-            payload = sb.toString();
+                sb.append(",");
+            if (Double.isNaN(v) || Double.isInfinite(v))
+                sb.append("null");
+            else
+                sb.append(v);
         }
-        return payload;
+        return sb.toString();
     }
 
     public static void sendCsv (MqttService mqttService,
                                 Map<String, NetworkConnection.NetworkSendableData> send,
                                 List<NetworkService.RequestCallback> requestCallbacks) {
-
-        DecimalFormat longformat = (DecimalFormat) NumberFormat.getInstance(Locale.ENGLISH);
-        longformat.applyPattern("############0.000");
-        longformat.setGroupingUsed(false);
-
-        NetworkService.ServiceResult result;
-
-        if (!mqttService.isConnected()) {
-            result = new NetworkService.ServiceResult(NetworkService.ResultEnum.noConnection, null);
-        } else if (!mqttService.subscribed && !mqttService.receiveTopic.isEmpty()) {
-            result = new NetworkService.ServiceResult(NetworkService.ResultEnum.genericError, "Not subscribed.");
-        } else {
-                for (Map.Entry<String, NetworkConnection.NetworkSendableData> item : send.entrySet()) {
-                    String payload ="";
-                    if (item.getValue().type == NetworkConnection.NetworkSendableData.DataType.METADATA)
-                        payload = item.getValue().metadata.get(mqttService.address);
-                    else if (item.getValue().type == NetworkConnection.NetworkSendableData.DataType.BUFFER) {
-                        payload = writeBufferValuesIntoCsvPayload(item,payload);
-                    } else if (item.getValue().type == NetworkConnection.NetworkSendableData.DataType.TIME)
-                        payload = String.valueOf(longformat.format(System.currentTimeMillis()/1000.0));
-                    else
-                        continue;
-                    MqttMessage message = new MqttMessage();
-                    message.setPayload(payload.getBytes());
-                    mqttService.client.publish(item.getKey(), message);
-                }
-                result = new NetworkService.ServiceResult(NetworkService.ResultEnum.success, "");
-        }
-
-        for (NetworkService.RequestCallback callback : requestCallbacks) {
-            callback.requestFinished(result);
-        }
+        send(mqttService, send, requestCallbacks);
     }
 }
@@ -10,8 +10,6 @@ import de.rwth_aachen.phyphox.NetworkConnection.NetworkService;
 import de.rwth_aachen.phyphox.PhyphoxExperiment;
 
 public class MqttJson extends MqttService {
-    String sendTopic;
-
     public MqttJson(String receiveTopic,
                     String sendTopic,
                     Context context,
@@ -31,6 +29,6 @@ public class MqttJson extends MqttService {
     }
 
     public void execute(Map<String, NetworkConnection.NetworkSendableData> send, List<NetworkService.RequestCallback> requestCallbacks) {
-        MqttHelper.sendJson(this,sendTopic,send,requestCallbacks);
+        MqttHelper.sendJson(this,send,requestCallbacks);
     }
 }
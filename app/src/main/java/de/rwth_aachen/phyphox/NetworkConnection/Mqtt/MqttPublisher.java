@@ -0,0 +1,240 @@
+package de.rwth_aachen.phyphox.NetworkConnection.Mqtt;
+
+import android.util.Log;
+
+import info.mqtt.android.service.MqttAndroidClient;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.rwth_aachen.phyphox.DataBufferView;
+import de.rwth_aachen.phyphox.ExperimentTimeReference;
+import de.rwth_aachen.phyphox.NetworkConnection.NetworkConnection;
+
+//Outbound pipeline of the MQTT services
+//The analysis only captures a Snapshot of the data to be sent while it holds the dataLock, which
+//holds a read-only view of each buffer (see DataBuffer.getView()), so an unchanged buffer is not
+//copied again and a changed one only copies its new values. Building the payload and publishing it happens on a
+//separate thread, so large payloads or a slow broker do not delay the analysis cycles.
+//The snapshots wait in a bounded queue. If it is full, the oldest snapshot is dropped and the
+//number of dropped snapshots is reported with the next result of the service. With persistence,
+//the queue also keeps the snapshots while there is no connection to the broker. Without it,
+//snapshots that cannot be sent because the connection was lost are dropped as well.
+//With a batch latency, the snapshots of several analysis cycles are combined into one message
+//(see MqttHelper.buildJsonPayload()) once the oldest one has waited for the latency or the batch
+//has reached the batch size. Without it, each snapshot is sent as its own message like before.
+//Batching and the binary payload are only available to the JSON services, as the CSV services
+//send each item as its own message (see PhyphoxFile).
+
+class MqttPublisher {
+    //One item of the send map at the time of the snapshot
+    static class Entry {
+        final String key;
+        final NetworkConnection.NetworkSendableData.DataType type;
+        final boolean number; //Buffer with datatype "number", which only sends the last value
+        final boolean empty; //Buffer without values
+        final double value; //Last value of a "number" buffer
+        final DataBufferView values; //All values of any other buffer
+        final String text; //Metadata
+        final double now; //Time in seconds for the time information
+        final List<ExperimentTimeReference.TimeMapping> timeMappings;
+
+        Entry(String key, NetworkConnection.NetworkSendableData.DataType type, boolean number, boolean empty, double value, DataBufferView values, String text, double now, List<ExperimentTimeReference.TimeMapping> timeMappings) {
+            this.key = key;
+            this.type = type;
+            this.number = number;
+            this.empty = empty;
+            this.value = value;
+            this.values = values;
+            this.text = text;
+            this.now = now;
+            this.timeMappings = timeMappings;
+        }
+    }
+
+    static class Snapshot {
+        final List<Entry> entries = new ArrayList<>();
+        final long created = System.nanoTime();
+        int size = 0; //Rough estimate of the payload size in bytes
+
+        //Capture the data of send. Requires the dataLock.
+        Snapshot(Map<String, NetworkConnection.NetworkSendableData> send, String address) {
+            double now = System.currentTimeMillis() / 1000.0;
+            for (Map.Entry<String, NetworkConnection.NetworkSendableData> item : send.entrySet()) {
+                NetworkConnection.NetworkSendableData sendable = item.getValue();
+                Entry entry;
+                switch (sendable.type) {
+                    case METADATA:
+                        entry = new Entry(item.getKey(), sendable.type, false, false, Double.NaN, null, sendable.metadata.get(address), now, null);
+                        size += entry.text != null ? entry.text.length() : 4;
+                        break;
+                    case BUFFER: {
+                        String datatype = sendable.additionalAttributes != null ? sendable.additionalAttributes.get("datatype") : null;
+                        boolean number = datatype != null && datatype.equals("number");
+                        boolean empty = sendable.buffer.getFilledSize() == 0;
+                        DataBufferView values = number ? null : sendable.buffer.getView();
+                        entry = new Entry(item.getKey(), sendable.type, number, empty, sendable.buffer.value, values, null, now, null);
+                        size += 20 * (number ? 1 : values.length);
+                        break;
+                    }
+                    case TIME:
+                        entry = new Entry(item.getKey(), sendable.type, false, false, Double.NaN, null, null, now, new ArrayList<>(sendable.timeReference.timeMappings));
+                        size += 100 * (entry.timeMappings.size() + 1);
+                        break;
+                    default:
+                        continue;
+                }
+                size += item.getKey().length();
+                entries.add(entry);
+            }
+        }
+    }
+
+    private final MqttService mqttService;
+    private final String topic; //Topic of the JSON services or null to send each entry to its own topic (CSV)
+    private final ArrayBlockingQueue<Snapshot> queue;
+    private final long batchLatency; //ns
+    private final int batchSize;
+    private final boolean binary;
+
+    private volatile Thread thread = null;
+    private volatile boolean running = false;
+    private int dropped = 0; //Guarded by queue
+    private final AtomicReference<String> lastError = new AtomicReference<>();
+
+    MqttPublisher(MqttService mqttService, String topic, int queueSize, double batchLatency, int batchSize, boolean binary) {
+        this.mqttService = mqttService;
+        this.topic = topic;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        this.batchLatency = (long)(batchLatency * 1e9);
+        this.batchSize = batchSize;
+        this.binary = binary;
+    }
+
+    synchronized void start() {
+        if (running)
+            return;
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                publishLoop();
+            }
+        }, "MqttPublisher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    synchronized void stop() {
+        running = false;
+        if (thread != null)
+            thread.interrupt();
+        thread = null;
+    }
+
+    //Queue a snapshot. Drops the oldest snapshot if the queue is full.
+    void offer(Snapshot snapshot) {
+        synchronized (queue) {
+            while (!queue.offer(snapshot)) {
+                if (queue.poll() != null)
+                    dropped++;
+            }
+        }
+    }
+
+    //Error message for anything that went wrong since the last call or null if everything has been sent
+    String takeError() {
+        int n;
+        synchronized (queue) {
+            n = dropped;
+            dropped = 0;
+        }
+        String error = lastError.getAndSet(null);
+        if (n == 0)
+            return error;
+        String droppedError = "Dropped " + n + (n == 1 ? " message" : " messages") + " as the outbound queue was full or the connection was lost.";
+        return error == null ? droppedError : droppedError + " " + error;
+    }
+
+    private void publishLoop() {
+        List<Snapshot> batch = new ArrayList<>();
+        while (running && thread == Thread.currentThread()) { //A restarted publisher has a new thread
+            try {
+                Snapshot first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null)
+                    continue;
+                batch.clear();
+                batch.add(first);
+                if (batchLatency > 0) {
+                    int size = first.size;
+                    long deadline = first.created + batchLatency;
+                    while (size < batchSize) {
+                        long wait = deadline - System.nanoTime();
+                        Snapshot next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                        if (next == null)
+                            break;
+                        batch.add(next);
+                        size += next.size;
+                    }
+                }
+
+                //With persistence we wait for the connection, otherwise the data is outdated anyway
+                while (running && !mqttService.isConnected()) {
+                    if (!mqttService.persistence) {
+                        synchronized (queue) {
+                            dropped += batch.size();
+                        }
+                        batch.clear();
+                        break;
+                    }
+                    Thread.sleep(100);
+                }
+                if (batch.isEmpty())
+                    continue;
+                //disconnect() stops the publisher without waiting for it and removes the client. A
+                //batch that has already been taken from the queue is reported as dropped.
+                MqttAndroidClient client = mqttService.client;
+                if (!running || client == null) {
+                    synchronized (queue) {
+                        dropped += batch.size();
+                    }
+                    batch.clear();
+                    continue;
+                }
+                publish(batch, client);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                Log.e("MQTT", "Could not publish: " + e.getMessage());
+                if (running) //Otherwise the connection has been closed on purpose while publishing
+                    lastError.set("Could not publish. " + e.getMessage());
+            }
+        }
+    }
+
+    private void publish(List<Snapshot> batch, MqttAndroidClient client) throws Exception {
+        if (topic == null) {
+            for (Snapshot snapshot : batch) {
+                for (Entry entry : snapshot.entries) {
+                    MqttMessage message = new MqttMessage();
+                    message.setPayload(MqttHelper.buildCsvPayload(entry).getBytes());
+                    client.publish(entry.key, message);
+                }
+            }
+            return;
+        }
+
+        MqttMessage message = new MqttMessage();
+        message.setQos(mqttService.persistence ? 2 : 0);
+        if (binary)
+            message.setPayload(MqttHelper.buildBinaryPayload(batch));
+        else
+            message.setPayload(MqttHelper.buildJsonPayload(batch, batchLatency > 0));
+        client.publish(topic, message);
+    }
+}
@@ -14,11 +14,9 @@ import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
-import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Vector;
 
 import de.rwth_aachen.phyphox.NetworkConnection.NetworkService;
 import de.rwth_aachen.phyphox.PhyphoxExperiment;
@@ -29,14 +27,20 @@ public abstract class MqttService extends NetworkService.Service {
     String receiveTopic;
     String clientID;
     String address;
-    MqttAndroidClient client = null;
+    volatile MqttAndroidClient client = null;
     Context context;
     boolean subscribed = false;
     MqttConnectOptions mqttConnectOptions = new MqttConnectOptions();
     MemoryPersistence dataStore;
-    int writeSequence = 0;
-    Vector<JSONObject> messageBuffer = new Vector<JSONObject>(600);
     boolean clearBuffer, persistence = false;
+    String sendTopic = null; //Used by the JSON services. The CSV services send each item to its own topic.
+
+    //Settings of the outbound pipeline (see MqttPublisher)
+    int queueSize = 600;
+    double batchLatency = 0.0;
+    int batchSize = 65536;
+    boolean binary = false;
+    private MqttPublisher publisher = null;
     Toast toast;
     PhyphoxExperiment experiment;
 
@@ -48,6 +52,8 @@ public abstract class MqttService extends NetworkService.Service {
 
         mqttConnectOptions.setAutomaticReconnect(true);
 
+        getPublisher().start();
+
         client = new MqttAndroidClient(context, this.address, clientID, Ack.AUTO_ACK, dataStore, false, 0);
 
         client.setCallback(new MqttCallbackExtended() {
@@ -118,6 +124,7 @@ public abstract class MqttService extends NetworkService.Service {
     }
 
     public void disconnect() {
+        getPublisher().stop();
         client.disconnect();
         client = null;
         subscribed = false;
@@ -141,6 +148,21 @@ public abstract class MqttService extends NetworkService.Service {
     }
 
     public boolean isConnected(){
-        return client.isConnected();
+        MqttAndroidClient client = this.client;
+        return client != null && client.isConnected();
+    }
+
+    //Configure the outbound pipeline, see MqttPublisher. Has to be called before connecting.
+    public void setPublishing(int queueSize, double batchLatency, int batchSize, boolean binary) {
+        this.queueSize = queueSize;
+        this.batchLatency = batchLatency;
+        this.batchSize = batchSize;
+        this.binary = binary;
+    }
+
+    synchronized MqttPublisher getPublisher() {
+        if (publisher == null)
+            publisher = new MqttPublisher(this, sendTopic, queueSize, batchLatency, batchSize, binary);
+        return publisher;
     }
 }
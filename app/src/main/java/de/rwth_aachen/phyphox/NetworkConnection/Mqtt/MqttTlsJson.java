@@ -10,8 +10,6 @@ import de.rwth_aachen.phyphox.NetworkConnection.NetworkService;
 import de.rwth_aachen.phyphox.PhyphoxExperiment;
 
 public class MqttTlsJson extends MqttService{
-    String sendTopic;
-
     public MqttTlsJson(String receiveTopic,
                        String sendTopic,
                        String userName,
@@ -37,6 +35,6 @@ public class MqttTlsJson extends MqttService{
 
     @Override
     public void execute(Map<String, NetworkConnection.NetworkSendableData> send, List<NetworkService.RequestCallback> requestCallbacks) {
-        MqttHelper.sendJson(this,sendTopic,send,requestCallbacks);
+        MqttHelper.sendJson(this,send,requestCallbacks);
     }
 }
@@ -102,6 +102,7 @@ public class NetworkConnection implements NetworkService.RequestCallback, Networ
         this.conversion = conversion;
         this.send = send;
         this.receive = receive;
+        conversion.setIds(receive.keySet());
         this.interval = interval;
 
         this.mainHandler = new android.os.Handler(ctx.getMainLooper());
@@ -359,10 +360,10 @@ public class NetworkConnection implements NetworkService.RequestCallback, Networ
             try {
                 if (item.getValue().buffer == null)
                     continue;
-                Double[] data = conversion.get(item.getKey());
+                double[] data = conversion.get(item.getKey());
                 if (!item.getValue().append)
                     item.getValue().buffer.clear(false);
-                item.getValue().buffer.append(data, data.length);
+                item.getValue().buffer.append(data, data.length, true);
                 item.getValue().buffer.markSet();
             } catch (NetworkConversion.ConversionException e) {
                 displayErrorMessage(e.getMessage());
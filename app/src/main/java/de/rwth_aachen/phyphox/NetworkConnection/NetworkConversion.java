@@ -9,6 +9,9 @@ import org.json.JSONObject;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 
 public class NetworkConversion {
 
@@ -19,30 +22,166 @@ public class NetworkConversion {
     }
 
     public static abstract class Conversion {
+        //Called once with all ids that will be requested from get(), so a conversion can extract
+        //all of them in a single pass over the data in prepare()
+        protected void setIds(Set<String> ids) {
+        }
+
         protected abstract void prepare(byte[][] data) throws ConversionException;
-        protected abstract Double[] get(String id) throws ConversionException;
+        protected abstract double[] get(String id) throws ConversionException;
     }
 
     public static class None extends Conversion {
         public void prepare(byte[][] data) throws ConversionException {
         }
 
-        public Double[] get(String id) throws ConversionException {
-            return new Double[0];
+        public double[] get(String id) throws ConversionException {
+            return new double[0];
+        }
+    }
+
+    //Powers of ten that can be represented exactly as a double
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    //Same result as Double.parseDouble() on the text data[start..end), but plain decimal numbers
+    //with up to 15 significant digits are converted without creating a String. In this case a
+    //single multiplication or division by an exact power of ten gives the correctly rounded value.
+    static double parseDouble(byte[] data, int start, int end) throws NumberFormatException {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (data[i] == '-' || data[i] == '+')) {
+            negative = data[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        while (i < end && data[i] >= '0' && data[i] <= '9') {
+            int d = data[i] - '0';
+            if ((mantissa != 0 || d != 0) && ++digits > 15)
+                return parseDoubleSlow(data, start, end);
+            mantissa = 10 * mantissa + d;
+            any = true;
+            i++;
+        }
+        if (i < end && data[i] == '.') {
+            i++;
+            while (i < end && data[i] >= '0' && data[i] <= '9') {
+                int d = data[i] - '0';
+                if ((mantissa != 0 || d != 0) && ++digits > 15)
+                    return parseDoubleSlow(data, start, end);
+                mantissa = 10 * mantissa + d;
+                exponent--;
+                any = true;
+                i++;
+            }
         }
+        if (!any)
+            return parseDoubleSlow(data, start, end);
+        if (i < end && (data[i] == 'e' || data[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (data[i] == '-' || data[i] == '+')) {
+                negativeExponent = data[i] == '-';
+                i++;
+            }
+            int e = 0;
+            boolean anyExponent = false;
+            while (i < end && data[i] >= '0' && data[i] <= '9') {
+                e = 10 * e + (data[i] - '0');
+                if (e > 1000)
+                    return parseDoubleSlow(data, start, end);
+                anyExponent = true;
+                i++;
+            }
+            if (!anyExponent)
+                return parseDoubleSlow(data, start, end);
+            exponent += negativeExponent ? -e : e;
+        }
+        if (i != end)
+            return parseDoubleSlow(data, start, end);
+
+        double value;
+        if (mantissa == 0)
+            value = 0.0;
+        else if (exponent >= 0 && exponent < POWERS_OF_TEN.length)
+            value = mantissa * POWERS_OF_TEN[exponent];
+        else if (exponent < 0 && -exponent < POWERS_OF_TEN.length)
+            value = mantissa / POWERS_OF_TEN[-exponent];
+        else
+            return parseDoubleSlow(data, start, end);
+        return negative ? -value : value;
     }
 
+    private static double parseDoubleSlow(byte[] data, int start, int end) throws NumberFormatException {
+        return Double.parseDouble(new String(data, start, end - start, StandardCharsets.UTF_8));
+    }
+
+    //Each payload is split into lines and each line into columns separated by "," or ";". The id
+    //is the index of the column or anything else to get all values in the order they appear.
+    //The payloads are tokenized once in prepare() into a table of all values, from which get()
+    //picks the requested column.
     public static class Csv extends Conversion {
-        String data[] = null;
+        double[] values = new double[0];
+        int valueCount = 0;
+        int[] lineEnds = new int[0]; //Index in values behind the last value of each line
+        int lineCount = 0;
+
+        private void addValue(double v) {
+            if (valueCount == values.length)
+                values = Arrays.copyOf(values, Math.max(16, 2 * values.length));
+            values[valueCount++] = v;
+        }
+
+        private void endLine() {
+            if (lineCount == lineEnds.length)
+                lineEnds = Arrays.copyOf(lineEnds, Math.max(16, 2 * lineEnds.length));
+            lineEnds[lineCount++] = valueCount;
+        }
+
+        //Convert the column data[start..end) after trimming it like String.trim(). Columns that
+        //are not a number become NaN.
+        private void addColumn(byte[] data, int start, int end) {
+            while (start < end && (data[start] & 0xff) <= ' ')
+                start++;
+            while (end > start && (data[end-1] & 0xff) <= ' ')
+                end--;
+            try {
+                addValue(parseDouble(data, start, end));
+            } catch (NumberFormatException e) {
+                addValue(Double.NaN);
+            }
+        }
 
         public void prepare(byte[][] data) throws ConversionException {
-            this.data = new String[data.length];
-            for (int i = 0; i < data.length; i++)
-                this.data[i] = new String(data[i]);
+            valueCount = 0;
+            lineCount = 0;
+            for (byte[] payload : data) {
+                //A "\r" in front of the line break does not need to be removed as it is trimmed
+                //from the column anyway. Like String.split() with a negative limit, an empty
+                //trailing line still counts as a line with a single (NaN) column.
+                int columnStart = 0;
+                for (int i = 0; i < payload.length; i++) {
+                    byte b = payload[i];
+                    if (b == ',' || b == ';') {
+                        addColumn(payload, columnStart, i);
+                        columnStart = i + 1;
+                    } else if (b == '\n') {
+                        addColumn(payload, columnStart, i);
+                        endLine();
+                        columnStart = i + 1;
+                    }
+                }
+                addColumn(payload, columnStart, payload.length);
+                endLine();
+            }
         }
 
-        public Double[] get(String id) throws ConversionException {
-            ArrayList<Double> result = new ArrayList<>();
+        public double[] get(String id) throws ConversionException {
             int index;
             try {
                 index = Integer.parseInt(id);
@@ -50,88 +189,514 @@ public class NetworkConversion {
                 index = -1;
             }
 
-            for (int i = 0; i < data.length; i++) {
-                String[] lines = data[i].split("\\r?\\n", -1);
-                for (String line : lines) {
-                    String[] columns = line.split("[,;]", -1);
-                    if (index < 0) {
-                        for (String column : columns) {
-                            try {
-                                result.add(Double.parseDouble(column.trim()));
-                            } catch (NumberFormatException e) {
-                                result.add(Double.NaN);
-                            }
-                        }
-                    } else {
-                        if (columns.length > index) {
-                            try {
-                                result.add(Double.parseDouble(columns[index].trim()));
-                            } catch (NumberFormatException e) {
-                                result.add(Double.NaN);
-                            }
-                        }
-                    }
-                }
+            if (index < 0)
+                return Arrays.copyOf(values, valueCount);
+
+            double[] result = new double[lineCount];
+            int n = 0;
+            int lineStart = 0;
+            for (int i = 0; i < lineCount; i++) {
+                if (lineEnds[i] - lineStart > index)
+                    result[n++] = values[lineStart + index];
+                lineStart = lineEnds[i];
             }
-            return result.toArray(new Double[result.size()]);
+            return Arrays.copyOf(result, n);
         }
     }
 
+    //Each payload is a JSON object and the id is a path of keys separated by dots. The value at
+    //the path is used if it is a number or an array of numbers.
+    //Instead of building the JSON objects, prepare() scans each payload once and collects the
+    //values of all ids (see setIds()) into their columns. Anything the scanner does not expect in
+    //strict JSON (the org.json parser is more lenient) makes it fall back to org.json for this
+    //payload, so the results stay the same. Ids that have not been announced by setIds() are
+    //extracted with org.json when they are requested.
     public static class Json extends Conversion {
-        JSONObject json[] = null;
+        private static class MalformedException extends Exception {
+        }
+
+        //Node of the tree of all paths. A node is the end of the path of at most one id.
+        private static class PathNode {
+            final String key;
+            final byte[] keyBytes;
+            final ArrayList<PathNode> children = new ArrayList<>();
+            int column = -1;
+
+            PathNode(String key) {
+                this.key = key;
+                this.keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            }
+
+            PathNode getChild(String key) {
+                for (PathNode child : children)
+                    if (child.key.equals(key))
+                        return child;
+                return null;
+            }
+
+            //Find the child for the raw (unescaped) key data[start..end)
+            PathNode getChild(byte[] data, int start, int end) {
+                for (PathNode child : children) {
+                    if (child.keyBytes.length != end - start)
+                        continue;
+                    boolean match = true;
+                    for (int i = 0; i < child.keyBytes.length && match; i++)
+                        match = child.keyBytes[i] == data[start + i];
+                    if (match)
+                        return child;
+                }
+                return null;
+            }
+        }
+
+        private final PathNode root = new PathNode("");
+        private final Map<String, Integer> columnIndices = new HashMap<>();
+        private final ArrayList<String> ids = new ArrayList<>();
+        private double[][] columns = new double[0][];
+        private int[] counts = new int[0];
+        private int[] payloadStarts = new int[0]; //Size of each column before the current payload
+        private boolean[] noObject = new boolean[0]; //The path of the id runs through something that is not an object
+        private boolean[] noObjectInPayload = new boolean[0]; //Same for the current payload
+        private byte[][] payloads = new byte[0][];
+
+        //State of the scanner
+        private byte[] b;
+        private int pos;
+
+        @Override
+        protected void setIds(Set<String> ids) {
+            for (String id : ids) {
+                if (columnIndices.containsKey(id))
+                    continue;
+                PathNode node = root;
+                for (String component : id.split("\\.")) {
+                    PathNode child = node.getChild(component);
+                    if (child == null) {
+                        child = new PathNode(component);
+                        node.children.add(child);
+                    }
+                    node = child;
+                }
+                if (node.column >= 0) {
+                    columnIndices.put(id, node.column); //Different spelling of the same path like "a" and "a."
+                    continue;
+                }
+                node.column = this.ids.size();
+                columnIndices.put(id, node.column);
+                this.ids.add(id);
+            }
+            int n = this.ids.size();
+            columns = Arrays.copyOf(columns, n);
+            for (int i = 0; i < n; i++)
+                if (columns[i] == null)
+                    columns[i] = new double[16];
+            counts = new int[n];
+            payloadStarts = new int[n];
+            noObject = new boolean[n];
+            noObjectInPayload = new boolean[n];
+        }
 
         public void prepare(byte[][] data) throws ConversionException {
-            try {
-                json = new JSONObject[data.length];
-                for (int i = 0; i < data.length; i++) {
-                    json[i] = new JSONObject(new String(data[i]));
+            payloads = data;
+            Arrays.fill(counts, 0);
+            Arrays.fill(noObject, false);
+            for (byte[] payload : data) {
+                System.arraycopy(counts, 0, payloadStarts, 0, counts.length);
+                Arrays.fill(noObjectInPayload, false);
+                try {
+                    b = payload;
+                    pos = 0;
+                    skipWhitespace();
+                    parseObject(root);
+                } catch (MalformedException e) {
+                    System.arraycopy(payloadStarts, 0, counts, 0, counts.length);
+                    Arrays.fill(noObjectInPayload, false);
+                    prepareWithJSONObject(payload);
+                } finally {
+                    b = null;
                 }
-            } catch (JSONException e) {
-                throw new ConversionException("Could not parse JSON.");
+                for (int i = 0; i < noObject.length; i++)
+                    noObject[i] |= noObjectInPayload[i];
+            }
+        }
+
+        public double[] get(String id) throws ConversionException {
+            Integer column = columnIndices.get(id);
+            if (column == null) {
+                //Not announced by setIds(), so we have to look at the data again
+                ArrayList<Double> result = new ArrayList<>();
+                for (byte[] payload : payloads) {
+                    try {
+                        extract(new JSONObject(new String(payload)), id, result);
+                    } catch (JSONException e) {
+                        throw new ConversionException("Could not parse JSON.");
+                    }
+                }
+                double[] values = new double[result.size()];
+                for (int i = 0; i < values.length; i++)
+                    values[i] = result.get(i);
+                return values;
+            }
+            if (noObject[column])
+                throw new ConversionException("Could not find: " + id + " (No object)");
+            return Arrays.copyOf(columns[column], counts[column]);
+        }
+
+        private void add(int column, double v) {
+            if (counts[column] == columns[column].length)
+                columns[column] = Arrays.copyOf(columns[column], 2 * columns[column].length);
+            columns[column][counts[column]++] = v;
+        }
+
+        //Flag all ids below node as the value at node is not an object
+        private void setNoObject(PathNode node) {
+            for (PathNode child : node.children) {
+                if (child.column >= 0)
+                    noObjectInPayload[child.column] = true;
+                setNoObject(child);
             }
         }
 
-        public Double[] get(String id) throws ConversionException {
+        //Drop what has been found in this payload for node and the ids below it. Like in org.json,
+        //a repeated key replaces the previous value.
+        private void resetPayload(PathNode node) {
+            if (node.column >= 0) {
+                counts[node.column] = payloadStarts[node.column];
+                noObjectInPayload[node.column] = false;
+            }
+            for (PathNode child : node.children)
+                resetPayload(child);
+        }
+
+        private void prepareWithJSONObject(byte[] payload) throws ConversionException {
+            JSONObject json;
+            try {
+                json = new JSONObject(new String(payload));
+            } catch (JSONException e) {
+                throw new ConversionException("Could not parse JSON.");
+            }
             ArrayList<Double> result = new ArrayList<>();
-            String[] components = id.split("\\.");
-            for (Object jsonObject : json) {
-                Object currentJson = jsonObject;
+            for (int i = 0; i < ids.size(); i++) {
+                result.clear();
                 try {
-                    for (String component : components) {
-                        if (currentJson instanceof JSONObject) {
-                            currentJson = ((JSONObject) currentJson).get(component);
-                        } else {
-                            throw new ConversionException("Could not find: " + id + " (No object)");
-                        }
+                    extract(json, ids.get(i), result);
+                } catch (ConversionException e) {
+                    noObjectInPayload[i] = true;
+                }
+                for (Double v : result)
+                    add(i, v);
+            }
+        }
 
+        //Add the values at the path id of json to result
+        private static void extract(JSONObject json, String id, ArrayList<Double> result) throws ConversionException {
+            String[] components = id.split("\\.");
+            Object currentJson = json;
+            try {
+                for (String component : components) {
+                    if (currentJson instanceof JSONObject) {
+                        currentJson = ((JSONObject) currentJson).get(component);
+                    } else {
+                        throw new ConversionException("Could not find: " + id + " (No object)");
                     }
-                    if (currentJson instanceof JSONArray) {
-                        int n = ((JSONArray) currentJson).length();
-                        for (int j = 0; j < n; j++) {
-                            result.add(((JSONArray) currentJson).getDouble(j));
-                        }
-                        continue;
-                    }
-                    if (currentJson instanceof Integer) {
-                        result.add((double) (Integer) currentJson);
-                        continue;
-                    }
-                    if (currentJson instanceof Long) {
-                        result.add((double) (Long) currentJson);
-                        continue;
-                    }
-                    if (currentJson instanceof Float) {
-                        result.add((double) (Float) currentJson);
-                        continue;
+
+                }
+                if (currentJson instanceof JSONArray) {
+                    int n = ((JSONArray) currentJson).length();
+                    for (int j = 0; j < n; j++) {
+                        result.add(((JSONArray) currentJson).getDouble(j));
                     }
-                    if (currentJson instanceof Double) {
-                        result.add((double) (Double) currentJson);
-                        continue;
+                    return;
+                }
+                if (currentJson instanceof Integer) {
+                    result.add((double) (Integer) currentJson);
+                    return;
+                }
+                if (currentJson instanceof Long) {
+                    result.add((double) (Long) currentJson);
+                    return;
+                }
+                if (currentJson instanceof Float) {
+                    result.add((double) (Float) currentJson);
+                    return;
+                }
+                if (currentJson instanceof Double) {
+                    result.add((double) (Double) currentJson);
+                }
+            } catch (JSONException e) {
+            }
+        }
+
+        /* scanner for strict JSON */
+
+        private void skipWhitespace() {
+            while (pos < b.length && (b[pos] == ' ' || b[pos] == '\t' || b[pos] == '\n' || b[pos] == '\r'))
+                pos++;
+        }
+
+        //Byte at pos. The end of the payload within a value means that it is not valid JSON.
+        private byte peek() throws MalformedException {
+            if (pos >= b.length)
+                throw new MalformedException();
+            return b[pos];
+        }
+
+        private void expect(char c) throws MalformedException {
+            skipWhitespace();
+            if (pos >= b.length || b[pos] != c)
+                throw new MalformedException();
+            pos++;
+        }
+
+        //Object starting at pos. Values of keys that are not part of a path below node are skipped.
+        //node may be null to skip the whole object.
+        private void parseObject(PathNode node) throws MalformedException {
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return;
+            }
+            while (true) {
+                skipWhitespace();
+                if (peek() != '"')
+                    throw new MalformedException();
+                int keyStart = pos + 1;
+                boolean escaped = skipString();
+                PathNode child = null;
+                if (node != null && !node.children.isEmpty()) {
+                    if (escaped)
+                        child = node.getChild(decodeString(keyStart, pos - 1));
+                    else
+                        child = node.getChild(b, keyStart, pos - 1);
+                }
+                expect(':');
+                skipWhitespace();
+                if (child == null) {
+                    skipValue();
+                } else {
+                    resetPayload(child);
+                    parseValue(child);
+                }
+                skipWhitespace();
+                if (peek() == ',') {
+                    pos++;
+                } else if (peek() == '}') {
+                    pos++;
+                    return;
+                } else
+                    throw new MalformedException();
+            }
+        }
+
+        //Value at pos for the path node
+        private void parseValue(PathNode node) throws MalformedException {
+            byte c = peek();
+            if (c == '{') {
+                parseObject(node);
+                return;
+            }
+            setNoObject(node);
+            if (node.column < 0) {
+                skipValue();
+                return;
+            }
+            if (c == '[') {
+                parseArray(node.column);
+            } else if (c == '-' || (c >= '0' && c <= '9')) {
+                add(node.column, parseNumber());
+            } else
+                skipValue();
+        }
+
+        //Array at pos. Like JSONArray.getDouble(), numbers and strings with numbers are added
+        //until the first element that is not a number.
+        private void parseArray(int column) throws MalformedException {
+            pos++;
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+                return;
+            }
+            boolean stopped = false;
+            while (true) {
+                skipWhitespace();
+                byte c = peek();
+                if (!stopped && (c == '-' || (c >= '0' && c <= '9'))) {
+                    add(column, parseNumber());
+                } else if (!stopped && c == '"') {
+                    int start = pos + 1;
+                    skipString();
+                    try {
+                        add(column, Double.parseDouble(decodeString(start, pos - 1)));
+                    } catch (NumberFormatException e) {
+                        stopped = true;
                     }
-                } catch (JSONException e) {
+                } else {
+                    stopped = true;
+                    skipValue();
+                }
+                skipWhitespace();
+                if (peek() == ',') {
+                    pos++;
+                } else if (peek() == ']') {
+                    pos++;
+                    return;
+                } else
+                    throw new MalformedException();
+            }
+        }
+
+        private void skipValue() throws MalformedException {
+            byte c = peek();
+            if (c == '{') {
+                parseObject(null);
+            } else if (c == '[') {
+                pos++;
+                skipWhitespace();
+                if (peek() == ']') {
+                    pos++;
+                    return;
+                }
+                while (true) {
+                    skipWhitespace();
+                    skipValue();
+                    skipWhitespace();
+                    if (peek() == ',') {
+                        pos++;
+                    } else if (peek() == ']') {
+                        pos++;
+                        return;
+                    } else
+                        throw new MalformedException();
+                }
+            } else if (c == '"') {
+                skipString();
+            } else if (c == '-' || (c >= '0' && c <= '9')) {
+                parseNumber();
+            } else if (matchLiteral("true") || matchLiteral("false") || matchLiteral("null")) {
+                return;
+            } else
+                throw new MalformedException();
+        }
+
+        private boolean matchLiteral(String literal) {
+            int n = literal.length();
+            if (pos + n > b.length)
+                return false;
+            for (int i = 0; i < n; i++)
+                if (b[pos + i] != literal.charAt(i))
+                    return false;
+            if (pos + n < b.length && !isDelimiter(b[pos + n]))
+                return false;
+            pos += n;
+            return true;
+        }
+
+        private static boolean isDelimiter(byte c) {
+            return c == ',' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\n' || c == '\r';
+        }
+
+        //Number at pos. Numbers without a decimal point or exponent are read as long by org.json,
+        //so "-0" becomes 0 and a leading zero means an octal number. A number that is out of range
+        //of a double is rejected by org.json as a value of an object, so it is left to org.json.
+        private double parseNumber() throws MalformedException {
+            int start = pos;
+            boolean integer = true;
+            while (pos < b.length && !isDelimiter(b[pos])) {
+                byte c = b[pos];
+                if (c == '.' || c == 'e' || c == 'E')
+                    integer = false;
+                else if (c != '-' && c != '+' && (c < '0' || c > '9'))
+                    throw new MalformedException(); //Leave hexadecimal numbers and other literals to org.json
+                pos++;
+            }
+            double v;
+            try {
+                v = parseDouble(b, start, pos);
+            } catch (NumberFormatException e) {
+                throw new MalformedException();
+            }
+            if (Double.isInfinite(v))
+                throw new MalformedException();
+            if (integer && b[start] == '0' && pos - start > 1)
+                throw new MalformedException(); //Leave octal numbers to org.json
+            if (integer && v == 0)
+                return 0.0;
+            return v;
+        }
+
+        //Skip the string starting at pos, so pos is behind the closing quote. Returns true if
+        //the string contains escape sequences.
+        private boolean skipString() throws MalformedException {
+            pos++;
+            boolean escaped = false;
+            while (true) {
+                byte c = peek();
+                if (c == '"') {
+                    pos++;
+                    return escaped;
+                }
+                if (c == '\\') {
+                    escaped = true;
+                    pos++;
+                } else if (c == '\n' || c == '\r')
+                    throw new MalformedException();
+                pos++;
+            }
+        }
+
+        //Text of the string b[start..end) with its escape sequences replaced
+        private String decodeString(int start, int end) throws MalformedException {
+            String s = new String(b, start, end - start, StandardCharsets.UTF_8);
+            if (s.indexOf('\\') < 0)
+                return s;
+            StringBuilder sb = new StringBuilder(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (++i >= s.length())
+                    throw new MalformedException();
+                c = s.charAt(i);
+                switch (c) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        sb.append(c);
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        if (i + 4 >= s.length())
+                            throw new MalformedException();
+                        try {
+                            sb.append((char) Integer.parseInt(s.substring(i + 1, i + 5), 16));
+                        } catch (NumberFormatException e) {
+                            throw new MalformedException();
+                        }
+                        i += 4;
+                        break;
+                    default:
+                        throw new MalformedException();
                 }
             }
-            return result.toArray(new Double[result.size()]);
+            return sb.toString();
         }
     }
 }
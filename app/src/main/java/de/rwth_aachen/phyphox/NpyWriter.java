@@ -0,0 +1,87 @@
+package de.rwth_aachen.phyphox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+//Writes columns of data as npy files into a zip file, which makes it a NumPy archive (npz, see
+//DataExport.NumpyFormat). An npy file is a small text header describing the array followed by the
+//raw values, here little-endian float64. So numpy.load() can read the data without parsing any
+//text. The entries are stored without compression as measured values hardly compress anyway.
+
+class NpyWriter {
+    private static final int BLOCK_SIZE = 8192; //Number of values converted at once
+    private static final int HEADER_ALIGNMENT = 64; //The npy format asks for the data to start at a multiple of 64 bytes
+
+    private final ZipOutputStream zstream;
+    private final ByteBuffer block = ByteBuffer.allocate(8 * BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    NpyWriter(ZipOutputStream zstream) {
+        this.zstream = zstream;
+    }
+
+    //Header of an npy file (version 1.0) for a one-dimensional float64 array with n values
+    static byte[] header(int n) {
+        StringBuilder dict = new StringBuilder();
+        dict.append("{'descr': '<f8', 'fortran_order': False, 'shape': (").append(n).append(",), }");
+        int length = 10 + dict.length() + 1; //Magic string, version and header length + dict + newline
+        int padding = (HEADER_ALIGNMENT - length % HEADER_ALIGNMENT) % HEADER_ALIGNMENT;
+        for (int i = 0; i < padding; i++)
+            dict.append(' ');
+        dict.append('\n');
+
+        byte[] header = new byte[10 + dict.length()];
+        header[0] = (byte)0x93;
+        header[1] = 'N';
+        header[2] = 'U';
+        header[3] = 'M';
+        header[4] = 'P';
+        header[5] = 'Y';
+        header[6] = 1; //Major version
+        header[7] = 0; //Minor version
+        header[8] = (byte)(dict.length() & 0xff); //Header length as little-endian uint16
+        header[9] = (byte)(dict.length() >> 8);
+        for (int i = 0; i < dict.length(); i++)
+            header[10 + i] = (byte)dict.charAt(i);
+        return header;
+    }
+
+    //Convert the values starting at index from into the block
+    private void fillBlock(DataBufferView column, int from) {
+        int n = Math.min(BLOCK_SIZE, column.length - from);
+        block.clear();
+        block.asDoubleBuffer().put(column.data, column.offset + from, n);
+        block.limit(8 * n);
+    }
+
+    //Add the column as an npy file with the given name to the zip file
+    void write(String name, DataBufferView column) throws IOException {
+        byte[] header = header(column.length);
+
+        //Entries without compression need their size and checksum before the data can be written,
+        //so we convert the data twice. This is still much faster than compressing it.
+        CRC32 crc = new CRC32();
+        crc.update(header);
+        for (int i = 0; i < column.length; i += BLOCK_SIZE) {
+            fillBlock(column, i);
+            crc.update(block.array(), 0, block.limit());
+        }
+
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(header.length + 8L * column.length);
+        entry.setCompressedSize(header.length + 8L * column.length);
+        entry.setCrc(crc.getValue());
+        zstream.putNextEntry(entry);
+
+        zstream.write(header);
+        for (int i = 0; i < column.length; i += BLOCK_SIZE) {
+            fillBlock(column, i);
+            zstream.write(block.array(), 0, block.limit());
+        }
+        zstream.closeEntry();
+    }
+}
@@ -13,24 +13,14 @@ import android.util.Log;
 
 import androidx.collection.ArraySet;
 
-import org.w3c.dom.Attr;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-
-import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
@@ -40,13 +30,6 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
 import de.rwth_aachen.phyphox.Bluetooth.Bluetooth;
 import de.rwth_aachen.phyphox.Bluetooth.BluetoothInput;
 import de.rwth_aachen.phyphox.Bluetooth.BluetoothOutput;
@@ -87,7 +70,9 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
     public final Vector<DataBuffer> dataBuffers = new Vector<>(); //Instances of dataBuffers (see dataBuffer.java) that are used to store sensor data, analysis results etc.
     public final Map<String, Integer> dataMap = new HashMap<>(); //This maps key names (string) defined in the experiment-file to the index of a dataBuffer
     public Vector<Analysis.AnalysisModule> analysis = new Vector<>(); //Instances of analysisModules (see analysis.java) that define all the mathematical processes in this experiment
-    public Lock dataLock = new ReentrantLock();
+    transient private AnalysisScheduler analysisScheduler = null; //Runs independent analysis modules in parallel (see AnalysisScheduler.java)
+    public Lock dataLock = new ReentrantLock(); //Held by everything working on the buffers (analysis, views, remote server...)
+    public Lock inputLock = new ReentrantLock(); //Held by data producers while staging new values (see DataBuffer.stage()). Always acquire the dataLock first if both are needed.
 
     double analysisSleep = 0.; //Pause between analysis cycles. At 0 analysis is done as fast as possible.
     DataBuffer analysisDynamicSleep = null;
@@ -100,6 +85,9 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
     int requireFillThreshold = 1; //Threshold fore 'requireBuffer'
     DataBuffer requireFillDynamic = null; //Instead of using the threshold, use the last value of another buffer to control 'requireFill'
     boolean newData = true; //Will be set to true if we have fresh data to present
+    long analysisCount = 0; //Number of completed analysis cycles and other changes of the data or the measurement state (see announceChange()). Changes are announced through analysisMonitor.
+    transient final Object analysisMonitor = new Object(); //Notified after each analysis cycle and change for threads waiting for new results (like the event stream of the remote server)
+    transient SessionJournal journal = null; //Records the data to storage while the experiment is running (optional, see SessionJournal)
     boolean recordingUsed = true; //This keeps track, whether the recorded data has been used, so the next call reading from the mic can clear the old data first
 
     int cycle = 0; //Keeps track of the current cycle for the cycles attribute of analysis modules
@@ -193,11 +181,37 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
             processAnalysis(false);
     }
 
+    //Move the values staged by the data producers to their buffers (see DataBuffer.stage()). This
+    //has to be called while holding the dataLock and takes the inputLock only for the short moment
+    //it takes to copy the new values. Bluetooth inputs queue their values without taking the
+    //inputLock (see InputQueue), so these are staged here first.
+    public void commitInput() {
+        inputLock.lock();
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                for (BluetoothInput bti : bluetoothInputs)
+                    bti.commitQueued();
+            }
+            for (DataBuffer buffer : dataBuffers)
+                buffer.commitStaged();
+        } finally {
+            inputLock.unlock();
+        }
+    }
+
     //called by th main loop to initialize the analysis process
     public void processAnalysis(boolean measuring) {
         if (!loaded)
             return;
 
+        //Take over new data from the sensors and other inputs
+        dataLock.lock();
+        try {
+            commitInput();
+        } finally {
+            dataLock.unlock();
+        }
+
         //Send and receive network data if used
         for (NetworkConnection networkConnection : networkConnections) {
             dataLock.lock();
@@ -296,14 +310,12 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
 
         //Call all the analysis modules and let them do their work.
         try {
-            for (Analysis.AnalysisModule mod : analysis) {
-                try {
-                    Thread.yield();
-                    mod.updateIfNotStatic(cycle);
-                } catch (Exception e) {
-                    Log.e("processAnalysis", "Unhandled exception in analysis module " + mod.toString() + ".", e);
-                }
-            }
+            //Once more, so the analysis gets the latest data. The producers stage anything that
+            //arrives during the pass, so all modules work on the same state of the buffers.
+            commitInput();
+            if (analysisScheduler == null || !analysisScheduler.isFor(analysis))
+                analysisScheduler = new AnalysisScheduler(analysis);
+            analysisScheduler.run(cycle);
         } finally {
             dataLock.unlock();
         }
@@ -340,6 +352,18 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
         recordingUsed = true;
         newData = true; //We have fresh data to present.
         lastAnalysis = experimentTimeReference.getExperimentTime(); //Remember when we were done this time
+
+        announceChange();
+    }
+
+    //Wake up the threads waiting for new results. Besides the analysis, this is called for changes
+    //that happen without an analysis cycle, like starting or stopping the measurement, clearing the
+    //data or remote input.
+    public void announceChange() {
+        synchronized (analysisMonitor) {
+            analysisCount++;
+            analysisMonitor.notifyAll();
+        }
     }
 
     //called by the main loop after everything is processed. Here we have to send all the analysis results to the appropriate views
@@ -352,6 +376,7 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
         try {
             if (dataLock.tryLock(10, TimeUnit.MILLISECONDS)) {
                 try {
+                    commitInput();
                     for (ExpView experimentView : experimentViews) {
                         for (ExpView.expViewElement eve : experimentView.elements) {
                             eve.onMayReadFromBuffers(this); //Notify each view, that it should update from the buffers
@@ -521,6 +546,25 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
 
     }
 
+    //Start recording the data to a journal in filesDir, so it can be recovered after a crash (see SessionJournal)
+    public void startJournal(File filesDir) {
+        if (journal != null || source == null)
+            return;
+        try {
+            journal = new SessionJournal(this, filesDir);
+        } catch (IOException e) {
+            Log.e("startJournal", "Could not create session journal.", e);
+        }
+    }
+
+    //Stop and delete the journal once the experiment has been left regularly
+    public void discardJournal() {
+        if (journal == null)
+            return;
+        journal.discard();
+        journal = null;
+    }
+
     public void writeStateFileAsync(String customTitle, OutputStream os, Experiment.WriteStateFileCallback writeStateFileCallback){
 
         ExecutorService stateWriterExecutor = Executors.newSingleThreadExecutor();
@@ -563,107 +607,25 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
 
         if (source == null)
             return "Source is null.";
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        DocumentBuilder db;
-        try {
-            db = dbf.newDocumentBuilder();
-        } catch (Exception e) {
-            return "Could not create DocumentBuilder: " + e.getMessage();
-        }
 
-        Document doc;
-        InputStream is = new ByteArrayInputStream(source);
-        try {
-            doc = db.parse(is);
-        } catch (Exception e) {
-            return "Could not parse source: " + e.getMessage();
-        }
-
-        Element root = doc.getDocumentElement();
-        if (root == null)
-            return "Source has no root.";
-
-        root.normalize();
-
-        NodeList children = root.getChildNodes();
-        for (int i = 0; i < children.getLength(); i++)
-            if (children.item(i).getNodeName().equals("state-title") || children.item(i).getNodeName().equals("color") || children.item(i).getNodeName().equals("events") )
-                root.removeChild(children.item(i));
-
-        Element customTitleEl = doc.createElement("state-title");
-        customTitleEl.setTextContent(customTitle);
-        root.appendChild(customTitleEl);
-
-        Element colorEl = doc.createElement("color");
-        colorEl.setTextContent("blue");
-        root.appendChild(colorEl);
-
-        Element eventsEl = doc.createElement("events");
-        for (ExperimentTimeReference.TimeMapping event : experimentTimeReference.timeMappings) {
-
-            Element eventEl = doc.createElement(event.event.name().toLowerCase());
-            eventEl.setAttribute("experimentTime", event.experimentTime.toString());
-            eventEl.setAttribute("systemTime", Long.toString(event.systemTime));
-            eventsEl.appendChild(eventEl);
-        }
-        root.appendChild(eventsEl);
-
-        NodeList containers = root.getElementsByTagName("data-containers");
-        if (containers.getLength() != 1)
-            return "Source needs exactly one data-container block.";
-
-        NodeList buffers = containers.item(0).getChildNodes();
-
-        DecimalFormat format = (DecimalFormat) NumberFormat.getInstance(Locale.ENGLISH);
-        format.applyPattern("0.#########E0");
-        DecimalFormatSymbols dfs = format.getDecimalFormatSymbols();
-        dfs.setDecimalSeparator('.');
-        format.setDecimalFormatSymbols(dfs);
-        format.setGroupingUsed(false);
-
-        for (int i = 0; i < buffers.getLength(); i++) {
-            if (!buffers.item(i).getNodeName().equals("container"))
-                continue;
-
-            DataBuffer buffer = getBuffer(buffers.item(i).getTextContent());
-            if (buffer == null)
-                continue;
-
-            Attr attr = doc.createAttribute("init");
-
-            StringBuilder sb = new StringBuilder();
-            boolean first = true;
-            for (double v : buffer.getArray()) {
-                if (first)
-                    first = false;
-                else
-                    sb.append(",");
-                sb.append(format.format(v));
-            }
-
-            attr.setValue(sb.toString());
-
-            buffers.item(i).getAttributes().setNamedItem(attr);
-        }
-
-        TransformerFactory tf = TransformerFactory.newInstance();
-        Transformer t;
+        //Take a snapshot of the data. The views stay valid while the experiment continues, so
+        //the lock is only held for the snapshot and not while the file is written.
+        Map<String, DataBufferView> data = new HashMap<>();
+        List<ExperimentTimeReference.TimeMapping> events;
+        dataLock.lock();
         try {
-            t = tf.newTransformer();
-        } catch (Exception e) {
-            return "Could not create transformer: " + e.getMessage();
+            commitInput();
+            for (DataBuffer buffer : dataBuffers)
+                data.put(buffer.name, buffer.getView());
+            events = new ArrayList<>(experimentTimeReference.timeMappings);
+        } finally {
+            dataLock.unlock();
         }
 
-        DOMSource domSource = new DOMSource(doc);
-
-
-        StreamResult streamResult = new StreamResult(os);
         try {
-            t.transform(domSource, streamResult);
+            return new StateFile(os).write(source, customTitle, events, data);
         } catch (Exception e) {
-            return "Transform failed: " + e.getMessage();
+            return "Could not write state: " + e.getMessage();
         }
-
-        return null;
     }
 }
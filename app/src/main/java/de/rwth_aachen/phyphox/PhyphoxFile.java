@@ -42,8 +42,10 @@ import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
@@ -51,6 +53,7 @@ import java.util.Vector;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
 
 import de.rwth_aachen.phyphox.Bluetooth.Bluetooth;
 import de.rwth_aachen.phyphox.Bluetooth.BluetoothInput;
@@ -65,6 +68,7 @@ import de.rwth_aachen.phyphox.Helper.Helper;
 import de.rwth_aachen.phyphox.Helper.RGB;
 import de.rwth_aachen.phyphox.NetworkConnection.Mqtt.MqttCsv;
 import de.rwth_aachen.phyphox.NetworkConnection.Mqtt.MqttJson;
+import de.rwth_aachen.phyphox.NetworkConnection.Mqtt.MqttService;
 import de.rwth_aachen.phyphox.NetworkConnection.Mqtt.MqttTlsCsv;
 import de.rwth_aachen.phyphox.NetworkConnection.Mqtt.MqttTlsJson;
 import de.rwth_aachen.phyphox.NetworkConnection.NetworkConnection;
@@ -1159,6 +1163,9 @@ public abstract class PhyphoxFile {
     //Blockparser for the data-containers block
     private static class dataContainersBlockParser extends xmlBlockParser {
 
+        private final Map<DataBuffer, double[]> loadedValues = new LinkedHashMap<>();
+        private final Map<DataBuffer, Integer> valueCounts = new HashMap<>();
+
         dataContainersBlockParser(XmlPullParser xpp, PhyphoxExperiment experiment, Experiment parent) {
             super(xpp, experiment, parent);
         }
@@ -1184,7 +1191,7 @@ public abstract class PhyphoxFile {
 
                     if (strInit != null && !strInit.isEmpty()) {
                         String strInitArray[] = strInit.split(",");
-                        Double init[] = new Double[strInitArray.length];
+                        double init[] = new double[strInitArray.length];
                         for (int i = 0; i < init.length; i++) {
                             try {
                                 init[i] = Double.parseDouble(strInitArray[i].trim());
@@ -1195,11 +1202,52 @@ public abstract class PhyphoxFile {
                         newBuffer.setInit(init);
                     }
                     break;
+                case "values": //Binary values of a container in a state file (see StateFile)
+                    String container = getStringAttribute("container");
+                    DataBuffer buffer = experiment.getBuffer(container);
+                    if (buffer == null)
+                        throw new phyphoxFileException("Values for unknown container \"" + container + "\".", xpp.getLineNumber());
+                    String compression = getStringAttribute("compression");
+                    if (compression != null && !compression.equals("deflate"))
+                        throw new phyphoxFileException("Unknown compression \"" + compression + "\".", xpp.getLineNumber());
+                    double[] block;
+                    try {
+                        block = StateFile.decodeValues(getText(), compression != null);
+                    } catch (DataFormatException | IllegalArgumentException e) {
+                        throw new phyphoxFileException("Invalid values for container \"" + container + "\": " + e.getMessage(), xpp.getLineNumber());
+                    }
+
+                    //Collect the blocks, they become the initial values of the container once the block is done
+                    double[] values = values(buffer);
+                    int count = valueCounts.get(buffer);
+                    if (count + block.length > values.length) {
+                        values = Arrays.copyOf(values, Math.max(2 * values.length, count + block.length));
+                        loadedValues.put(buffer, values);
+                    }
+                    System.arraycopy(block, 0, values, count, block.length);
+                    valueCounts.put(buffer, count + block.length);
+                    break;
                 default: //Unknown tag
                     throw new phyphoxFileException("Unknown tag "+tag, xpp.getLineNumber());
             }
         }
 
+        private double[] values(DataBuffer buffer) {
+            double[] values = loadedValues.get(buffer);
+            if (values == null) {
+                values = new double[0];
+                loadedValues.put(buffer, values);
+                valueCounts.put(buffer, 0);
+            }
+            return values;
+        }
+
+        @Override
+        protected void done() throws IOException, XmlPullParserException, phyphoxFileException {
+            for (Map.Entry<DataBuffer, double[]> entry : loadedValues.entrySet())
+                entry.getKey().setInit(Arrays.copyOf(entry.getValue(), valueCounts.get(entry.getKey())));
+        }
+
     }
 
     //Blockparser for the events block
@@ -1891,7 +1939,7 @@ public abstract class PhyphoxFile {
 
                     //Add a sensor. If the string is unknown, sensorInput throws a phyphoxFileException
                     try {
-                        experiment.inputSensors.add(new SensorInput(type, nameFilter, typeFilter, ignoreUnavailable, rate, rateStrategy, stride, average, outputs, experiment.dataLock, experiment.experimentTimeReference));
+                        experiment.inputSensors.add(new SensorInput(type, nameFilter, typeFilter, ignoreUnavailable, rate, rateStrategy, stride, average, outputs, experiment.inputLock, experiment.experimentTimeReference));
                         experiment.inputSensors.lastElement().attachSensorManager(parent.sensorManager);
                     } catch (SensorInput.SensorException e) {
                         throw new phyphoxFileException(e.getMessage(), xpp.getLineNumber());
@@ -1929,7 +1977,7 @@ public abstract class PhyphoxFile {
                     Vector<DataOutput> outputs = new Vector<>();
                     (new ioBlockParser(xpp, experiment, parent, null, outputs, null, outputMapping, "component")).process(); //Load inputs and outputs
 
-                    experiment.gpsIn = new GpsInput(outputs, experiment.dataLock, experiment.experimentTimeReference);
+                    experiment.gpsIn = new GpsInput(outputs, experiment.inputLock, experiment.experimentTimeReference);
                     experiment.gpsIn.attachLocationManager((LocationManager)parent.getSystemService(Context.LOCATION_SERVICE));
 
                     if (!GpsInput.isAvailable(parent)) {
@@ -2053,7 +2101,7 @@ public abstract class PhyphoxFile {
 
                         CameraManager cameraManager = (CameraManager) parent.getSystemService(Context.CAMERA_SERVICE);
                         CameraHelper.updateCameraList(cameraManager);
-                        experiment.depthInput = new DepthInput(mode, (float) x1, (float) x2, (float) y1, (float) y2, outputs, experiment.dataLock, experiment.experimentTimeReference, cameraManager);
+                        experiment.depthInput = new DepthInput(mode, (float) x1, (float) x2, (float) y1, (float) y2, outputs, experiment.inputLock, experiment.experimentTimeReference, cameraManager);
 
                         if (!DepthInput.isAvailable()) {
                             throw new phyphoxFileException(parent.getResources().getString(R.string.sensorNotAvailableWarningText1) + " " + parent.getResources().getString(R.string.sensorDepth) + " " + parent.getResources().getString(R.string.sensorNotAvailableWarningText2));
@@ -2166,7 +2214,7 @@ public abstract class PhyphoxFile {
                                 (float) y1,
                                 (float) y2,
                                 outputs,
-                                experiment.dataLock,
+                                experiment.inputLock,
                                 experiment.experimentTimeReference,
                                 feature,
                                 autoExposure,
@@ -2236,7 +2284,7 @@ public abstract class PhyphoxFile {
                             Vector<Bluetooth.CharacteristicData> characteristics = new Vector<>();
                             (new bluetoothIoBlockParser(xpp, experiment, parent, outputs, null, characteristics)).process();
                             try {
-                                BluetoothInput b = new BluetoothInput(idString, nameFilter, addressFilter, modeFilter, uuidFilter, autoConnect, rate, subscribeOnStart, outputs, experiment.dataLock, parent, parent, characteristics, experiment.experimentTimeReference);
+                                BluetoothInput b = new BluetoothInput(idString, nameFilter, addressFilter, modeFilter, uuidFilter, autoConnect, rate, subscribeOnStart, outputs, experiment.inputLock, parent, parent, characteristics, experiment.experimentTimeReference);
                                 if (mtu > 0)
                                     b.requestMTU = mtu;
                                 experiment.bluetoothInputs.add(b);
@@ -2348,6 +2396,25 @@ public abstract class PhyphoxFile {
                         }
                     }
 
+                    if (service instanceof MqttService) {
+                        //Outbound pipeline, see MqttPublisher
+                        //The CSV services send each item as its own message, so they cannot batch
+                        //or use the binary payload
+                        if (!(service instanceof MqttJson || service instanceof MqttTlsJson)) {
+                            for (String attribute : new String[]{"batchLatency", "batchSize", "binary"}) {
+                                if (getStringAttribute(attribute) != null)
+                                    throw new phyphoxFileException(attribute + " is only supported by the mqtt/json and mqtts/json services.", xpp.getLineNumber());
+                            }
+                        }
+                        int queueSize = getIntAttribute("queueSize", 600);
+                        double batchLatency = getDoubleAttribute("batchLatency", 0.0);
+                        int batchSize = getIntAttribute("batchSize", 65536);
+                        boolean binary = getBooleanAttribute("binary", false);
+                        if (queueSize < 1)
+                            throw new phyphoxFileException("queueSize must be at least 1.", xpp.getLineNumber());
+                        ((MqttService) service).setPublishing(queueSize, batchLatency, batchSize, binary);
+                    }
+
                     String conversionStr = getStringAttribute("conversion");
                     NetworkConversion.Conversion conversion = null;
                     if (conversionStr != null) {
@@ -45,8 +45,21 @@ public class PlotAreaView extends TextureView {
 
 }
 
+//Keeps track of the part of a FloatBufferRepresentation that has already been copied to a vbo. The
+//vbo mirrors the layout of the backing FloatBuffer, so as long as the representation has not been
+//moved (see FloatBufferRepresentation.generation) only newly appended values need to be uploaded.
+class VboUpload {
+    transient FloatBufferRepresentation source = null;
+    int generation = 0;
+    int capacity = 0;
+    int end = 0; //End of the uploaded range within the vbo
+    int offset = 0; //First valid value within the vbo
+}
+
 class CurveData implements Serializable {
     int vboX, vboY;
+    VboUpload uploadX = new VboUpload();
+    VboUpload uploadY = new VboUpload();
     int ibo;
     int ibCount, ibUsedCount;
     transient IntBuffer ib;
@@ -837,7 +850,7 @@ class PlotRenderer extends Thread implements TextureView.SurfaceTextureListener
         GLES20.glDisableVertexAttribArray(timeRangePositionHandle);
     }
 
-    private void drawCurve(int i, int lastValidX, List<ExperimentTimeReferenceSet> lastValidXTimeReference) {
+    private void drawCurve(int i, int lastValidX, int lastValidXOffset, List<ExperimentTimeReferenceSet> lastValidXTimeReference) {
 
         GLES20.glUseProgram(glProgram);
 
@@ -856,11 +869,11 @@ class PlotRenderer extends Thread implements TextureView.SurfaceTextureListener
 
         GLES20.glEnableVertexAttribArray(positionXHandle);
         GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, lastValidX);
-        GLES20.glVertexAttribPointer(positionXHandle, 1, GLES20.GL_FLOAT, false, 0, 0);
+        GLES20.glVertexAttribPointer(positionXHandle, 1, GLES20.GL_FLOAT, false, 0, lastValidXOffset * 4);
 
         GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, dataSet.vboY);
         GLES20.glEnableVertexAttribArray(positionYHandle);
-        GLES20.glVertexAttribPointer(positionYHandle, 1, GLES20.GL_FLOAT, false, 0, 0);
+        GLES20.glVertexAttribPointer(positionYHandle, 1, GLES20.GL_FLOAT, false, 0, dataSet.uploadY.offset * 4);
 
         GLES20.glUniform4fv(colorHandle, 1, dataSet.color, 0);
 
@@ -937,15 +950,15 @@ class PlotRenderer extends Thread implements TextureView.SurfaceTextureListener
 
         GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, dataSet.vboX);
         GLES20.glEnableVertexAttribArray(mapPositionXHandle);
-        GLES20.glVertexAttribPointer(mapPositionXHandle, 1, GLES20.GL_FLOAT, false, 0, 0);
+        GLES20.glVertexAttribPointer(mapPositionXHandle, 1, GLES20.GL_FLOAT, false, 0, dataSet.uploadX.offset * 4);
 
         GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, dataSet.vboY);
         GLES20.glEnableVertexAttribArray(mapPositionYHandle);
-        GLES20.glVertexAttribPointer(mapPositionYHandle, 1, GLES20.GL_FLOAT, false, 0, 0);
+        GLES20.glVertexAttribPointer(mapPositionYHandle, 1, GLES20.GL_FLOAT, false, 0, dataSet.uploadY.offset * 4);
 
         GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, dataSetZ.vboY);
         GLES20.glEnableVertexAttribArray(mapPositionZHandle);
-        GLES20.glVertexAttribPointer(mapPositionZHandle, 1, GLES20.GL_FLOAT, false, 0, 0);
+        GLES20.glVertexAttribPointer(mapPositionZHandle, 1, GLES20.GL_FLOAT, false, 0, dataSetZ.uploadY.offset * 4);
 
         if (dataSet.ibUsedCount < 4)
             return;
@@ -993,6 +1006,7 @@ class PlotRenderer extends Thread implements TextureView.SurfaceTextureListener
         //Draw graph
 
         int lastValidX = 0;
+        int lastValidXOffset = 0;
         List<ExperimentTimeReferenceSet> lastValidXTimeReference = null;
         for (int i = graphSetup.dataSets.size()-1; i >= 0; i--) {
             if (graphSetup.style.get(i) == GraphView.Style.mapXY) {
@@ -1011,16 +1025,42 @@ class PlotRenderer extends Thread implements TextureView.SurfaceTextureListener
 
             if (graphSetup.dataSets.get(i).vboX != 0) {
                 lastValidX = graphSetup.dataSets.get(i).vboX;
+                lastValidXOffset = graphSetup.dataSets.get(i).uploadX.offset;
                 lastValidXTimeReference = graphSetup.dataSets.get(i).timeReferencesX;
             }
 
-            drawCurve(i, lastValidX, lastValidXTimeReference);
+            drawCurve(i, lastValidX, lastValidXOffset, lastValidXTimeReference);
         }
 
         GLES20.glUseProgram(0);
 
     }
 
+    //Copy a float representation to a vbo. If the vbo already holds an earlier state of the same
+    //representation, only the values appended since then are uploaded. Has to be called while
+    //holding the lock of the representation.
+    private void uploadToVbo(int vbo, FloatBufferRepresentation fb, VboUpload upload) {
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+        int capacity = fb.data.capacity();
+        int end = fb.offset + fb.size;
+        if (upload.source != fb || upload.generation != fb.generation || upload.capacity != capacity || end < upload.end) {
+            //Full upload
+            GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, capacity * 4, null, GLES20.GL_DYNAMIC_DRAW);
+            fb.data.position(fb.offset);
+            GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, fb.offset * 4, fb.size * 4, fb.data);
+            upload.source = fb;
+            upload.generation = fb.generation;
+            upload.capacity = capacity;
+        } else if (end > upload.end) {
+            //Only upload the new values
+            fb.data.position(upload.end);
+            GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, upload.end * 4, (end - upload.end) * 4, fb.data);
+        }
+        fb.data.position(0);
+        upload.end = end;
+        upload.offset = fb.offset;
+    }
+
     private void doUpdateBuffers() {
         for (CurveData data : graphSetup.dataSets) {
             if (data.vboY == 0 || (data.vboX == 0 && data.fbX != null)) {
@@ -1035,6 +1075,8 @@ class PlotRenderer extends Thread implements TextureView.SurfaceTextureListener
                     data.vboX = 0;
                     data.vboY = ref[0];
                 }
+                data.uploadX = new VboUpload();
+                data.uploadY = new VboUpload();
             }
             if (data.ibo == 0 && data.style == GraphView.Style.mapXY) {
                 int ref[] = new int[1];
@@ -1050,15 +1092,8 @@ class PlotRenderer extends Thread implements TextureView.SurfaceTextureListener
                         synchronized (fbX.lock) {
                             data.n = Math.min(fbX.size, fbY.size);
                             if (data.n > 0) {
-
-                                GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, data.vboX);
-                                fbX.data.position(fbX.offset);
-                                GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, data.n * 4, fbX.data, GLES20.GL_DYNAMIC_DRAW);
-
-                                GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, data.vboY);
-                                fbY.data.position(fbY.offset);
-                                GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, data.n * 4, fbY.data, GLES20.GL_DYNAMIC_DRAW);
-
+                                uploadToVbo(data.vboX, fbX, data.uploadX);
+                                uploadToVbo(data.vboY, fbY, data.uploadY);
                                 GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
                             }
                         }
@@ -1066,11 +1101,7 @@ class PlotRenderer extends Thread implements TextureView.SurfaceTextureListener
                         data.n = fbY.size;
 
                         if (data.n > 0) {
-
-                            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, data.vboY);
-                            fbY.data.position(fbY.offset);
-                            GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, data.n * 4, fbY.data, GLES20.GL_DYNAMIC_DRAW);
-
+                            uploadToVbo(data.vboY, fbY, data.uploadY);
                             GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
                         }
                     }
@@ -32,20 +32,31 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.zip.CRC32;
 
 //RemoteServer implements a web interface to remote control the experiment and receive the data
 
@@ -56,6 +67,13 @@ public class RemoteServer {
     HTTPServer httpServer; //Holds our http service
     ExecutorService executor;
     static int httpServerPort = 8080; //We have to pick a high port number. We may not use 80...
+    private volatile boolean running = false; //Ends the event streams when the server is stopped
+    static final long STREAM_MIN_INTERVAL = 40; //Minimum time between two events of an event stream in ms (like the view updates of the Experiment activity)
+    static final long STREAM_KEEP_ALIVE = 15000; //Time in ms after which an event stream sends a comment if there has been no data, so closed connections are noticed
+    static final int MAX_THREADS = 32; //Maximum number of connections handled at the same time. Further connections have to wait.
+    static final int MAX_STREAMS = MAX_THREADS / 2; //Each event stream keeps a thread busy, so we need to leave some for the other requests
+    static final int RESPONSE_CACHE_SIZE = 8; //Number of get responses that are kept for other clients requesting the same data
+    private final AtomicInteger streamCount = new AtomicInteger(0);
     Context context; //Resource reference for comfortable access
     Experiment callActivity; //Reference to the parent activity. Needed to provide its status on the webinterface
 
@@ -64,6 +82,8 @@ public class RemoteServer {
     public boolean forceFullUpdate = false; //Something has happened (clear) that makes it necessary to force a full buffer update to the remote interface
 
     static String indexHTML, styleCSS; //These strings will hold the html and css document when loaded from our resources
+    static byte[] indexHTMLBytes, styleCSSBytes, logoBytes; //Encoded html and css documents and the logo, so they do not need to be prepared again for each request
+    static String indexHTMLETag, styleCSSETag, logoETag; //Identify the versions of these documents for the cache of the browser (see respondCached())
 
     private Vector<Integer> htmlID2View = new Vector<>(); //This maps htmlIDs to the view of the element
     private Vector<Integer> htmlID2Element = new Vector<>(); //This maps htmlIDs to the view of the element
@@ -109,6 +129,8 @@ public class RemoteServer {
         } finally {
             //Create a simple string
             styleCSS = sb.toString();
+            styleCSSBytes = styleCSS.getBytes();
+            styleCSSETag = getETag(styleCSSBytes);
         }
     }
 
@@ -288,6 +310,8 @@ public class RemoteServer {
             Log.e("remoteServer","Error loading index.html", e);
         } finally {
             indexHTML = sb.toString();
+            indexHTMLBytes = indexHTML.getBytes();
+            indexHTMLETag = getETag(indexHTMLBytes);
         }
     }
 
@@ -356,7 +380,11 @@ public class RemoteServer {
     public synchronized void start() {
         httpServerPort = Integer.parseInt(PreferenceManager.getDefaultSharedPreferences(context).getString("remoteAccessPort", "8080"));
         httpServer = new HTTPServer(httpServerPort);
-        executor = Executors.newCachedThreadPool();
+        //Limit the number of threads, so many clients cannot exhaust the resources of the phone.
+        //Further connections are queued until a thread becomes available.
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
         httpServer.setExecutor(executor);
         HTTPServer.VirtualHost host = httpServer.getVirtualHost(null);
 
@@ -365,12 +393,16 @@ public class RemoteServer {
         host.addContext("/style.css", this::handleStyle); //The style sheet (style.css) linked from index.html
         host.addContext("/logo", this::handleLogo); //The phyphox logo, also included in style.css
         host.addContext("/get", this::handleGet); //A get command takes parameters which define, which buffers and how much of them is requested - the response is a JSON set with the data
+        host.addContext("/getbinary", this::handleGetBinary); //Same as get, but the response contains the data as binary double precision values
+        host.addContext("/getbinary32", this::handleGetBinary32); //Same as get, but the response contains the data as binary single precision values
+        host.addContext("/stream", this::handleStream); //Same parameters as get, but new data is pushed to the client as server-sent events after each analysis cycle
         host.addContext("/control", this::handleControl, "GET", "POST"); //The control command starts and stops measurements
         host.addContext("/export", this::handleExport); //The export command requests a data file containing sets as requested by the parameters
         host.addContext("/config", this::handleConfig); //The config command requests information on the currently active experiment configuration
         host.addContext("/meta", this::handleMeta); //The meta command requests information on the device
         host.addContext("/time", this::handleTime); //The meta command requests information on the current time reference
         host.addContext("/res", this::handleRes); //Fetch resource files (like images embedded in the experiment configuration)
+        running = true;
         try {
             httpServer.start();
         } catch (IOException e) {
@@ -380,6 +412,10 @@ public class RemoteServer {
 
     //Stop the server by simply setting RUNNING to false
     public synchronized void stop() {
+        running = false;
+        synchronized (experiment.analysisMonitor) {
+            experiment.analysisMonitor.notifyAll(); //Wake up the event streams, so they can end
+        }
         httpServer.stop();
         executor.shutdown();
     }
@@ -394,10 +430,13 @@ public class RemoteServer {
         return 0; // response fully handled
     }
 
+    protected int respond(Response response, String contentType, byte[] content) throws IOException {
+        InputStream in = new ByteArrayInputStream(content);
+        return respond(response, contentType, in, content.length);
+    }
+
     protected int respond(Response response, String contentType, String content) throws IOException {
-        byte[] bytes = content.getBytes();
-        InputStream in = new ByteArrayInputStream(bytes);
-        return respond(response, contentType, in, bytes.length);
+        return respond(response, contentType, content.getBytes());
     }
 
     protected int respond(Response response, String contentType, File content) throws IOException {
@@ -413,20 +452,75 @@ public class RemoteServer {
         return respond(response, result ? "{\"result\": true}" : "{\"result\": false}");
     }
 
+    //Identify a version of a document for the cache of the browser
+    static String getETag(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(content.length) + "\"";
+    }
+
+    //Does the browser already have this version (If-None-Match header)?
+    protected static boolean isCached(Request request, String etag) {
+        String ifNoneMatch = request.getHeaders().get("If-None-Match");
+        if (ifNoneMatch == null)
+            return false;
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/"))
+                tag = tag.substring(2);
+            if (tag.equals(etag) || tag.equals("*"))
+                return true;
+        }
+        return false;
+    }
+
+    //Documents that rarely change may be kept by the browser, but it has to ask if they are still
+    //valid. In this case we only answer "304 Not Modified" instead of sending them again.
+    //Returns true if this response has been sent.
+    protected boolean respondNotModified(Request request, Response response, String etag) throws IOException {
+        response.getHeaders().add("Cache-Control", "no-cache");
+        response.getHeaders().add("ETag", etag);
+        if (!isCached(request, etag))
+            return false;
+        response.sendHeaders(304);
+        return true;
+    }
+
+    protected int respondCached(Request request, Response response, String contentType, String etag, byte[] content) throws IOException {
+        if (respondNotModified(request, response, etag))
+            return 0; // response fully handled
+        return respond(response, contentType, content);
+    }
+
     //The home handler simply sends the already compiled index.html
     public int handleHome(Request request, Response response) throws IOException {
-        return respond(response, "text/html", indexHTML);
+        return respondCached(request, response, "text/html", indexHTMLETag, indexHTMLBytes);
     }
 
     //The style handler simply sends the already compiled style.css
     public int handleStyle(Request request, Response response) throws IOException {
-        return respond(response, "text/css", styleCSS);
+        return respondCached(request, response, "text/css", styleCSSETag, styleCSSBytes);
     }
 
-    //The logo handler simply reads the logo from resources and sends it
+    //The logo handler reads the logo from resources and sends it. It is kept for later requests.
     public int handleLogo(Request request, Response response) throws IOException {
-        InputStream inputStream = context.getAssets().open("remote/phyphox_orange.png");
-        return respond(response, "image/png", inputStream, -1);
+        synchronized (RemoteServer.class) {
+            if (logoBytes == null) {
+                InputStream inputStream = context.getAssets().open("remote/phyphox_orange.png");
+                try {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[8192];
+                    int n;
+                    while ((n = inputStream.read(buffer)) > 0)
+                        out.write(buffer, 0, n);
+                    logoBytes = out.toByteArray();
+                    logoETag = getETag(logoBytes);
+                } finally {
+                    inputStream.close();
+                }
+            }
+        }
+        return respondCached(request, response, "image/png", logoETag, logoBytes);
     }
 
     //This structure (ok, class) holds one element of the request corresponding to a buffer
@@ -434,6 +528,7 @@ public class RemoteServer {
         public String name;         //Name of the requested buffer
         public Double threshold;    //Threshold from which to read data
         public String reference;    //The buffer to which the threshold should be applied
+        public long index = -1;     //Absolute index from which to read data (delta request) or -1 if a threshold is used
     }
 
     protected BufferRequest parseBufferRequest(String name, String value, boolean forceFullUpdate) {
@@ -444,6 +539,10 @@ public class RemoteServer {
             br.threshold = Double.NaN; //No special request - the last value should be ok
         } else if (value.equals("full") || forceFullUpdate) {
             br.threshold = Double.NEGATIVE_INFINITY; //Get every single value
+        } else if (value.charAt(0) == '@') {
+            //The client knows all values up to this index (as reported in "end" of a previous response)
+            br.threshold = Double.NEGATIVE_INFINITY;
+            br.index = Math.max(0, Long.parseLong(value.substring(1)));
         } else {
             //So we get a threshold. We just have to figure out the reference buffer
             int subsplit = value.indexOf('|');
@@ -473,53 +572,124 @@ public class RemoteServer {
         return buffers;
     }
 
-    protected void buildBuffer(BufferRequest buffer, DataBuffer db, DecimalFormat format, StringBuilder sb) {
-        //Get the threshold reference data buffer
-        DataBuffer db_reference = buffer.reference.isEmpty() ? db : experiment.getBuffer(buffer.reference);
+    //The part of a buffer that has been requested. It only holds views (see DataBuffer.getView())
+    //which do not change anymore, so it can be taken while holding the data lock and the response
+    //can be built after releasing it again.
+    protected static class BufferSnapshot {
+        String name;
+        int size;                   //Size of the buffer
+        long first;                 //Absolute index of the first value in the buffer
+        long end;                   //Absolute index behind the last value in the buffer
+        String updateMode;          //single, full or partial
+        double value;               //The last value for single updates
+        DataBufferView data;        //All values of the buffer, null for single updates
+        DataBufferView reference;   //The values to which the threshold is applied, null if all values from start should be sent
+        double threshold;
+        int start;                  //Index in data of the first value that may be sent
+        int count;                  //Number of values in data (and reference) that may be sent
+    }
+
+    protected BufferSnapshot takeSnapshot(BufferRequest buffer, DataBuffer db) {
+        BufferSnapshot snapshot = new BufferSnapshot();
+        snapshot.name = db.name;
+        snapshot.size = db.size;
+        snapshot.first = db.getFirstIndex();
+        snapshot.end = db.getEndIndex();
+        snapshot.value = db.value;
+        snapshot.threshold = buffer.threshold;
+
+        if (buffer.index >= 0) {
+            //Delta request. Only send values the client does not know yet.
+            snapshot.data = db.getView();
+            snapshot.count = snapshot.data.length;
+            if (buffer.index < snapshot.first || buffer.index > snapshot.end) {
+                //Some of the values the client is missing are gone (the buffer has been cleared or
+                //the values have been pushed out) or the index is from another buffer. Send everything,
+                //so the client replaces its data.
+                snapshot.updateMode = "full";
+                snapshot.start = 0;
+            } else {
+                snapshot.updateMode = "partial";
+                snapshot.start = (int)(buffer.index - snapshot.first);
+            }
+        } else if (Double.isNaN(buffer.threshold)) {
+            snapshot.updateMode = "single";
+        } else {
+            snapshot.updateMode = Double.isInfinite(buffer.threshold) ? "full" : "partial";
+            snapshot.data = db.getView();
+            DataBuffer db_reference = buffer.reference.isEmpty() ? db : experiment.getBuffer(buffer.reference);
+            if (db_reference == null)
+                db_reference = db;
+            if (db_reference == db)
+                snapshot.reference = snapshot.data;
+            else
+                snapshot.reference = db_reference.getView();
+            snapshot.count = Math.min(snapshot.data.length, snapshot.reference.length);
+            if (db_reference.isMonotonic()) {
+                //The values above the threshold are all at the end and can be found with a binary
+                //search, so an incremental request does not need to look at the entire buffer.
+                snapshot.start = Math.min(snapshot.reference.indexAbove(snapshot.threshold), snapshot.count);
+                snapshot.reference = null;
+            }
+        }
+        return snapshot;
+    }
+
+    //Take snapshots of all requested buffers. These are consistent with each other as they are taken
+    //while holding the data lock.
+    protected List<BufferSnapshot> takeSnapshots(Collection<BufferRequest> buffers) {
+        List<BufferSnapshot> snapshots = new ArrayList<>(buffers.size());
+        experiment.dataLock.lock();
+        try {
+            experiment.commitInput();
+            for (BufferRequest buffer : buffers) {
+                DataBuffer db = experiment.getBuffer(buffer.name);
+                if (db == null)
+                    continue;
+                snapshots.add(takeSnapshot(buffer, db));
+            }
+        } finally {
+            experiment.dataLock.unlock();
+        }
+        return snapshots;
+    }
+
+    //Should the value at index i of the snapshot be sent? Values below the threshold are skipped.
+    protected static boolean isRequested(BufferSnapshot snapshot, int i) {
+        return snapshot.reference == null || !(snapshot.reference.get(i) <= snapshot.threshold);
+    }
 
+    protected void buildBuffer(BufferSnapshot buffer, DecimalFormat format, StringBuilder sb) {
         //Buffer name
         sb.append("\"");
-        sb.append(db.name);
+        sb.append(buffer.name);
 
         //Buffer size
         sb.append("\":{\"size\":");
-        sb.append(db.size);
+        sb.append(buffer.size);
+
+        //Absolute indices of the values in the buffer. The client should drop any values before
+        //first and can use end for the next delta request.
+        sb.append(",\"first\":");
+        sb.append(buffer.first);
+        sb.append(",\"end\":");
+        sb.append(buffer.end);
 
         //Does the response contain a single value, the whole buffer or a part of it?
         sb.append(",\"updateMode\":\"");
-        if (Double.isNaN(buffer.threshold))
-            sb.append("single");
-        else if (Double.isInfinite(buffer.threshold))
-            sb.append("full");
-        else
-            sb.append("partial");
+        sb.append(buffer.updateMode);
         sb.append("\", \"buffer\":[");
 
-        if (Double.isNaN(buffer.threshold)) //Single value. Get the last one directly from our buffer class
-            if (Double.isNaN(db.value) || Double.isInfinite(db.value))
+        if (buffer.data == null) //Single value. Get the last one directly from our buffer class
+            if (Double.isNaN(buffer.value) || Double.isInfinite(buffer.value))
                 sb.append("null");
             else
-                sb.append(format.format(db.value));
+                sb.append(format.format(buffer.value));
         else {
             //Get all the values...
             boolean firstValue = true; //Find first iteration, so the other ones can add a separator
-            Double[] data = db.getArray();
-            int n = db.getFilledSize();
-            Double[] dataRef;
-            if (db_reference == db)
-                dataRef = data;
-            else {
-                dataRef = db_reference.getArray();
-                n = Math.min(n, db_reference.getFilledSize());
-            }
-
-
-            Double v;
-            for (int i = 0; i < n; i++) {
-                //Simultaneously get the values from both iterators
-                v = data[i];
-                Double v_dep = dataRef[i];
-                if (v_dep <= buffer.threshold) //Skip this value if it is below the threshold or NaN
+            for (int i = buffer.start; i < buffer.count; i++) {
+                if (!isRequested(buffer, i))
                     continue;
 
                 //Add a separator if this is not the first value
@@ -528,6 +698,7 @@ public class RemoteServer {
                 else
                     sb.append(",");
 
+                double v = buffer.data.get(i);
                 if (Double.isNaN(v) || Double.isInfinite(v))
                     sb.append("null");
                 else
@@ -538,77 +709,362 @@ public class RemoteServer {
         sb.append("]}");
     }
 
+    //The experiment status as JSON object
+    protected void buildStatus(StringBuilder sb) {
+        sb.append("{\n");
+
+        //Session ID
+        sb.append("\"session\":\"");
+        sb.append(sessionID);
+
+        //Measuring?
+        sb.append("\", \"measuring\":");
+        sb.append(callActivity.measuring);
+
+        //Timed run?
+        sb.append(", \"timedRun\":");
+        sb.append(callActivity.timedRun);
+
+        //Countdown state
+        sb.append(", \"countDown\":");
+        sb.append(callActivity.millisUntilFinished);
+        sb.append("\n}");
+    }
+
     //The get query has the form
-    //get?buffer1=full&buffer2=12345&buffer3=67890|buffer1
+    //get?buffer1=full&buffer2=12345&buffer3=67890|buffer1&buffer4=@42
     //This query requests the whole buffer1, all values from buffer2 greater than 12345 and all
     // values from buffer3 at indices at which values of buffer2 are greater than 67890
     //Example: If you have a graph of sensor data y against time t and already have data to
     // 20 seconds, you would request t=20 and y=20|t to receive any data beyond 20 seconds
+    //Alternatively, a client can request all values it has not received yet by passing the "end"
+    // index of the previous response (here 42 for buffer4). Values before the "first" index of the
+    // response have been removed from the buffer (cleared or pushed out) and should be dropped by
+    // the client. If the client is missing values that are already gone, the whole buffer is sent
+    // as a full update.
     public int handleGet(Request request, Response response) throws IOException {
         Set<BufferRequest> buffers = getBufferRequests(request);
 
-        //We now know what the query request. Let's build our answer
-        StringBuilder sb;
+        //Only the snapshot needs the lock. The slow formatting is done afterwards.
+        List<BufferSnapshot> snapshots = takeSnapshots(buffers);
 
-        //Lock the data, to get a consistent data block
-        experiment.dataLock.lock();
-        try {
-            //First let's take a guess at how much memory we will need
-            int sizeEstimate = 0;
-            for (BufferRequest buffer : buffers) {
-                DataBuffer db = experiment.getBuffer(buffer.name);
-                if (db != null)
-                    sizeEstimate += 14 * db.size + 100;
+        byte[] content = getCachedResponse("json", buffers, snapshots, new ResponseBuilder() {
+            @Override
+            public byte[] build(List<BufferSnapshot> snapshots) {
+                //Set our decimal format (English to make sure we use decimal points, not comma
+                DecimalFormat format = (DecimalFormat) NumberFormat.getInstance(Locale.ENGLISH);
+                format.applyPattern("0.#######E0");
+
+                return buildResponse(snapshots, format).getBytes();
             }
+        });
 
-            //Create the string builder
-            sb = new StringBuilder(sizeEstimate);
+        //Done. Return it as usual
+        return respond(response, "application/json", content);
+    }
 
-            boolean firstBuffer = true; //Helper to recognize the first iteration
+    //Several clients showing the same experiment usually request the same data. So we keep the
+    //last responses and only build them again if the snapshots or the status have changed.
+    protected interface ResponseBuilder {
+        byte[] build(List<BufferSnapshot> snapshots) throws IOException;
+    }
 
-            //Set our decimal format (English to make sure we use decimal points, not comma
-            DecimalFormat format = (DecimalFormat) NumberFormat.getInstance(Locale.ENGLISH);
-            format.applyPattern("0.#######E0");
+    protected static class CachedResponse {
+        List<BufferSnapshot> snapshots;
+        String status;
+        byte[] content;
+    }
 
-            //Start building...
-            sb.append("{\"buffer\":{\n");
-            for (BufferRequest buffer : buffers) {
-                DataBuffer db = experiment.getBuffer(buffer.name);
-                if (db == null)
-                    continue;
-                if (firstBuffer)
-                    firstBuffer = false;
-                else
-                    sb.append(",\n"); //Separate the object with a comma, if this is not the first item
+    private final Map<String, CachedResponse> responseCache = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+            return size() > RESPONSE_CACHE_SIZE;
+        }
+    };
+
+    //Two snapshots have the same content if they are based on the same views. Views do not change
+    //and an unchanged buffer returns the same view again (see DataBuffer.getView()).
+    protected static boolean isSameSnapshot(BufferSnapshot a, BufferSnapshot b) {
+        return a.data == b.data && a.reference == b.reference && a.first == b.first && a.end == b.end
+                && a.start == b.start && a.count == b.count && a.size == b.size
+                && Double.compare(a.value, b.value) == 0 && a.updateMode.equals(b.updateMode);
+    }
 
-                buildBuffer(buffer, db, format, sb);
+    protected byte[] getCachedResponse(String type, Collection<BufferRequest> buffers, List<BufferSnapshot> snapshots, ResponseBuilder builder) throws IOException {
+        //The key holds everything that has been requested (after parsing, so equivalent requests share the key)
+        StringBuilder key = new StringBuilder(type);
+        for (BufferRequest buffer : buffers) {
+            key.append("\n").append(buffer.name).append("\n").append(buffer.threshold).append("\n").append(buffer.reference).append("\n").append(buffer.index);
+        }
+        StringBuilder status = new StringBuilder();
+        buildStatus(status);
+
+        CachedResponse cached;
+        synchronized (responseCache) {
+            cached = responseCache.get(key.toString());
+            if (cached == null) {
+                cached = new CachedResponse();
+                responseCache.put(key.toString(), cached);
             }
+        }
 
-            //We also send the experiment status
-            sb.append("\n},\n\"status\":{\n");
+        //Clients requesting the same data at the same time wait here until the first one has built the response
+        synchronized (cached) {
+            boolean valid = cached.content != null && cached.status.equals(status.toString()) && cached.snapshots.size() == snapshots.size();
+            for (int i = 0; valid && i < snapshots.size(); i++)
+                valid = isSameSnapshot(cached.snapshots.get(i), snapshots.get(i));
+            if (!valid) {
+                cached.content = builder.build(snapshots);
+                cached.snapshots = snapshots;
+                cached.status = status.toString();
+            }
+            return cached.content;
+        }
+    }
+
+    //The JSON response of the get query for the given snapshots
+    protected String buildResponse(List<BufferSnapshot> snapshots, DecimalFormat format) {
+        //First let's take a guess at how much memory we will need
+        int sizeEstimate = 0;
+        for (BufferSnapshot snapshot : snapshots)
+            sizeEstimate += 14 * (snapshot.count - snapshot.start) + 100;
 
-            //Session ID
-            sb.append("\"session\":\"");
-            sb.append(sessionID);
+        //Create the string builder
+        StringBuilder sb = new StringBuilder(sizeEstimate);
 
-            //Measuring?
-            sb.append("\", \"measuring\":");
-            sb.append(callActivity.measuring);
+        boolean firstBuffer = true; //Helper to recognize the first iteration
 
-            //Timed run?
-            sb.append(", \"timedRun\":");
-            sb.append(callActivity.timedRun);
+        //Start building...
+        sb.append("{\"buffer\":{\n");
+        for (BufferSnapshot snapshot : snapshots) {
+            if (firstBuffer)
+                firstBuffer = false;
+            else
+                sb.append(",\n"); //Separate the object with a comma, if this is not the first item
+
+            buildBuffer(snapshot, format, sb);
+        }
 
-            //Countdown state
-            sb.append(", \"countDown\":");
-            sb.append(callActivity.millisUntilFinished);
-            sb.append("\n}\n}\n");
+        //We also send the experiment status
+        sb.append("\n},\n\"status\":");
+        buildStatus(sb);
+        sb.append("\n}\n");
+
+        return sb.toString();
+    }
+
+    //The stream query takes the same parameters as the get query. Instead of a single response, the
+    //connection is kept open and the client receives server-sent events (text/event-stream) whenever
+    //the analysis has produced new results or the data or measurement state has changed otherwise
+    //(see PhyphoxExperiment.announceChange()). Each event holds the same JSON as the get response.
+    //After the first event, the buffers are continued with delta requests (see handleGet), so only
+    //new values are sent and no threshold has to be searched again. Requests for single values
+    //remain as they are.
+    //Each client is served by its own thread, which waits for the next analysis cycle. A slow client
+    //does not hold up the others or the analysis: Any cycles completed while it is still receiving
+    //an event are combined into its next event.
+    public int handleStream(Request request, Response response) throws IOException {
+        if (streamCount.incrementAndGet() > MAX_STREAMS) {
+            streamCount.decrementAndGet();
+            response.sendError(503, "Too many event streams. Use get instead.");
+            return 0; // response fully handled
+        }
+        try {
+            return respondStream(request, response);
         } finally {
-            experiment.dataLock.unlock();
+            streamCount.decrementAndGet();
+        }
+    }
+
+    protected int respondStream(Request request, Response response) throws IOException {
+        //Only keep the requests for buffers that exist, so they match the snapshots
+        List<BufferRequest> buffers = new ArrayList<>();
+        for (BufferRequest buffer : getBufferRequests(request)) {
+            if (experiment.getBuffer(buffer.name) != null)
+                buffers.add(buffer);
         }
 
-        //Done. Build a string and return it as usual
-        return respond(response, sb.toString());
+        response.getHeaders().add("Cache-Control", "no-cache");
+        if (request.getVersion().endsWith("1.1"))
+            response.getHeaders().add("Transfer-Encoding", "chunked"); //Set explicitly, so the stream is not compressed, which would hold back the events
+        response.sendHeaders(200, -1, -1, null, "text/event-stream", null);
+        OutputStream out = response.getBody();
+
+        DecimalFormat format = (DecimalFormat) NumberFormat.getInstance(Locale.ENGLISH);
+        format.applyPattern("0.#######E0");
+
+        long lastAnalysis = -1;
+        long[] lastFirst = new long[buffers.size()];
+        long[] lastEnd = new long[buffers.size()];
+        String lastStatus = null;
+        try {
+            while (running) {
+                //Wait for the next analysis cycle or change
+                long analysisCount;
+                synchronized (experiment.analysisMonitor) {
+                    if (experiment.analysisCount == lastAnalysis && running)
+                        experiment.analysisMonitor.wait(STREAM_KEEP_ALIVE);
+                    analysisCount = experiment.analysisCount;
+                }
+                if (!running)
+                    break;
+                //Even after a timeout, the status and buffers are compared, so a change that has
+                //not been announced is not held back forever
+                boolean timeout = analysisCount == lastAnalysis;
+                boolean first = lastAnalysis < 0;
+                lastAnalysis = analysisCount;
+
+                List<BufferSnapshot> snapshots = takeSnapshots(buffers);
+
+                //Skip the event if nothing has changed
+                StringBuilder status = new StringBuilder();
+                buildStatus(status);
+                boolean changed = first || !status.toString().equals(lastStatus);
+                lastStatus = status.toString();
+                for (int i = 0; i < snapshots.size(); i++) {
+                    BufferSnapshot snapshot = snapshots.get(i);
+                    if (snapshot.first != lastFirst[i] || snapshot.end != lastEnd[i])
+                        changed = true;
+                    lastFirst[i] = snapshot.first;
+                    lastEnd[i] = snapshot.end;
+
+                    //Continue from here with the next event
+                    BufferRequest buffer = buffers.get(i);
+                    if (!Double.isNaN(buffer.threshold)) {
+                        buffer.index = snapshot.end;
+                        buffer.reference = "";
+                    }
+                }
+
+                if (changed) {
+                    //Each line of the event data needs its own prefix
+                    String data = "data: " + buildResponse(snapshots, format).trim().replace("\n", "\ndata: ") + "\n\n";
+                    out.write(data.getBytes());
+                    out.flush();
+                } else if (timeout) {
+                    out.write(": keep-alive\n\n".getBytes());
+                    out.flush();
+                }
+
+                //Do not send events faster than the client can reasonably use them. Cycles in the meantime are combined.
+                Thread.sleep(STREAM_MIN_INTERVAL);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return 0; // response fully handled
+    }
+
+    private static int padding(int position) {
+        return (8 - position % 8) % 8;
+    }
+
+    private static void pad(ByteBuffer bb) {
+        for (int i = padding(bb.position()); i > 0; i--)
+            bb.put((byte)0);
+    }
+
+    //The binary get query takes the same parameters as the get query, but the values are sent as
+    //little-endian floating point numbers (double precision for getbinary, single precision for
+    //getbinary32). They can be used as a Float64Array or Float32Array in JavaScript without parsing
+    //any text, which also makes the response a lot smaller. Every block starts at a multiple of 8 bytes.
+    //  int32 length of the status, int32 number of buffers, status (JSON as in the get query), padding
+    //  For each buffer:
+    //    int32 length of the name, uint8 update mode (0 = single, 1 = full, 2 = partial),
+    //    uint8 bytes per value (8 or 4), 2 bytes reserved, int32 size of the buffer,
+    //    int32 number of values, float64 "first" index, float64 "end" index, name, padding,
+    //    values, padding
+    //Unlike the JSON response, NaN and infinite values are sent as they are.
+    protected int respondBinary(Request request, Response response, final boolean singlePrecision) throws IOException {
+        Set<BufferRequest> buffers = getBufferRequests(request);
+        List<BufferSnapshot> snapshots = takeSnapshots(buffers);
+
+        byte[] content = getCachedResponse(singlePrecision ? "binary32" : "binary64", buffers, snapshots, new ResponseBuilder() {
+            @Override
+            public byte[] build(List<BufferSnapshot> snapshots) throws IOException {
+                return buildBinaryResponse(snapshots, singlePrecision);
+            }
+        });
+        if (content == null)
+            return respond(response, "{\"error\": \"Too much data.\"}");
+        return respond(response, "application/octet-stream", content);
+    }
+
+    //The binary response for the given snapshots or null if it is too large
+    protected byte[] buildBinaryResponse(List<BufferSnapshot> snapshots, boolean singlePrecision) throws IOException {
+        StringBuilder status = new StringBuilder();
+        buildStatus(status);
+        byte[] statusBytes = status.toString().getBytes("UTF-8");
+
+        //Get the size of the response. Values below the threshold have to be skipped, so the number
+        //of values might be smaller than this.
+        int bytesPerValue = singlePrecision ? 4 : 8;
+        List<byte[]> names = new ArrayList<>(snapshots.size());
+        long size = 8 + statusBytes.length + padding(statusBytes.length);
+        for (BufferSnapshot snapshot : snapshots) {
+            byte[] name = snapshot.name.getBytes("UTF-8");
+            names.add(name);
+            size += 32 + name.length + padding(name.length);
+            int n = snapshot.data == null ? 1 : snapshot.count - snapshot.start;
+            size += (long)bytesPerValue * n + padding(bytesPerValue * n);
+        }
+        if (size > Integer.MAX_VALUE)
+            return null;
+
+        ByteBuffer bb = ByteBuffer.allocate((int)size).order(ByteOrder.LITTLE_ENDIAN);
+        bb.putInt(statusBytes.length);
+        bb.putInt(snapshots.size());
+        bb.put(statusBytes);
+        pad(bb);
+
+        for (int j = 0; j < snapshots.size(); j++) {
+            BufferSnapshot snapshot = snapshots.get(j);
+            byte[] name = names.get(j);
+            bb.putInt(name.length);
+            bb.put((byte)(snapshot.updateMode.equals("single") ? 0 : snapshot.updateMode.equals("full") ? 1 : 2));
+            bb.put((byte)bytesPerValue);
+            bb.putShort((short)0);
+            bb.putInt(snapshot.size);
+            int countPosition = bb.position();
+            bb.putInt(0); //Number of values, set below
+            bb.putDouble(snapshot.first);
+            bb.putDouble(snapshot.end);
+            bb.put(name);
+            pad(bb);
+
+            int count = 0;
+            if (snapshot.data == null) {
+                if (singlePrecision)
+                    bb.putFloat((float)snapshot.value);
+                else
+                    bb.putDouble(snapshot.value);
+                count = 1;
+            } else {
+                for (int i = snapshot.start; i < snapshot.count; i++) {
+                    if (!isRequested(snapshot, i))
+                        continue;
+                    if (singlePrecision)
+                        bb.putFloat((float)snapshot.data.get(i));
+                    else
+                        bb.putDouble(snapshot.data.get(i));
+                    count++;
+                }
+            }
+            bb.putInt(countPosition, count);
+            pad(bb);
+        }
+
+        byte[] result = new byte[bb.position()];
+        System.arraycopy(bb.array(), 0, result, 0, result.length);
+        return result;
+    }
+
+    public int handleGetBinary(Request request, Response response) throws IOException {
+        return respondBinary(request, response, false);
+    }
+
+    public int handleGetBinary32(Request request, Response response) throws IOException {
+        return respondBinary(request, response, true);
     }
 
     //This query has the simple form control?cmd=start or control?cmd=set&buffer=name&value=42
@@ -656,6 +1112,7 @@ public class RemoteServer {
                             } finally {
                                 experiment.dataLock.unlock();
                             }
+                            experiment.announceChange();
                             return respond(response, true);
                         }
                     }
@@ -875,6 +1332,9 @@ public class RemoteServer {
         if (src != null && !src.isEmpty() && experiment.resources.contains(src)) {
             try {
                 File file = new File(experiment.resourceFolder, src);
+                String etag = "\"" + Long.toHexString(file.lastModified()) + "-" + Long.toHexString(file.length()) + "\"";
+                if (respondNotModified(request, response, etag))
+                    return 0; // response fully handled
                 return respond(response, null, file);
             } catch (Exception e) {
                 return respond(response, "{\"error\": \"Unknown file.\"}");
@@ -75,7 +75,7 @@ public class SensorInput implements SensorEventListener, Serializable {
     private boolean average = false; //Avergae over aquisition period?
     private int aquisitions; //Number of aquisitions for this average
 
-    private Lock dataLock;
+    private Lock inputLock;
 
     public boolean vendorSensor = false;
     public Sensor sensor;
@@ -122,7 +122,7 @@ public class SensorInput implements SensorEventListener, Serializable {
     }
 
     private SensorInput(boolean ignoreUnavailable, double rate, SensorRateStrategy rateStrategy, int stride, boolean average, Vector<DataOutput> buffers, Lock lock, ExperimentTimeReference experimentTimeReference) throws SensorException {
-        this.dataLock = lock;
+        this.inputLock = lock;
         this.experimentTimeReference = experimentTimeReference;
 
         if (rate <= 0)
@@ -359,14 +359,14 @@ public class SensorInput implements SensorEventListener, Serializable {
         } else {
             strideCount = 0;
         }
-        dataLock.lock();
+        inputLock.lock();
         try {
             if (dataX != null)
-                dataX.append(x);
+                dataX.stage(x);
             if (dataY != null)
-                dataY.append(y);
+                dataY.stage(y);
             if (dataZ != null)
-                dataZ.append(z);
+                dataZ.stage(z);
             if (dataT != null) {
                 double t;
                 if (timestamp == 0) {
@@ -393,17 +393,17 @@ public class SensorInput implements SensorEventListener, Serializable {
                         t = 0.0;
                     }
                 }
-                dataT.append(t);
+                dataT.stage(t);
             }
             if (dataAbs != null)
                 if (type == Sensor.TYPE_ROTATION_VECTOR)
-                    dataAbs.append(Math.sqrt(aquisitions*aquisitions-avgX*avgX-avgY*avgY-avgZ*avgZ) / aquisitions);
+                    dataAbs.stage(Math.sqrt(aquisitions*aquisitions-avgX*avgX-avgY*avgY-avgZ*avgZ) / aquisitions);
                 else
-                    dataAbs.append(Math.sqrt(avgX*avgX+avgY*avgY+avgZ*avgZ) / aquisitions);
+                    dataAbs.stage(Math.sqrt(avgX*avgX+avgY*avgY+avgZ*avgZ) / aquisitions);
             if (dataAccuracy != null)
-                dataAccuracy.append(accuracy);
+                dataAccuracy.stage(accuracy);
         } finally {
-            dataLock.unlock();
+            inputLock.unlock();
         }
     }
 
@@ -0,0 +1,361 @@
+package de.rwth_aachen.phyphox;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//Journal of the data of a running experiment, so a measurement survives a crash, the app being
+//killed or an empty battery (opt-in, see the setting "sessionJournal").
+//A journal is a directory with the source of the experiment, the names of its buffers, the events
+//of the time reference and one memory-mapped file per buffer. Every SYNC_INTERVAL the values that
+//have been added since the last sync are copied to the files, which are then synced to storage.
+//Each buffer file starts with a header (size of the buffer and base, first and end index of the
+//valid values, see DataBufferStorage) followed by the values as little-endian doubles. The value
+//with index i is stored in slot i-base. For buffers with a fixed size, the slots are a ring of
+//twice the size of the buffer, so new values never overwrite a value that is still valid according
+//to the header. The header is only updated once the values have been synced, so after a crash the
+//file holds the buffer as it was at the last complete sync. If values have been cleared or
+//dropped before they could be written, the header is reset before anything is overwritten.
+//When the app is started again, journals that have been left behind are turned into states in the
+//collection (see recover()). A file lock cannot tell a journal of this process from one that has
+//been left behind (locks do not conflict within a process), so the journals of this process are
+//tracked in openJournals instead.
+
+public class SessionJournal {
+    static final String DIRECTORY = "journal";
+    private static final String SOURCE = "source.phyphox";
+    private static final String BUFFERS = "buffers";
+    private static final String EVENTS = "events";
+    private static final String VALUES_EXTENSION = ".values";
+
+    private static final long SYNC_INTERVAL = 1000; //ms
+    private static final int HEADER_SIZE = 32;
+    private static final long CHUNK_SIZE = 1 << 20; //Size of the regions of a file that are mapped at once
+    private static final int READ_BLOCK_SIZE = 16384; //Number of values read at once when recovering
+
+    private final PhyphoxExperiment experiment;
+    //Names of the journals that are used or still being deleted by this process. Guarded by the
+    //class lock, which is also held by recover().
+    private static final Set<String> openJournals = new HashSet<>();
+
+    private final File dir;
+    private final BufferFile[] files;
+    private int eventCount = -1; //Number of events in the events file
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    //File of a single buffer
+    private static class BufferFile {
+        final FileChannel channel;
+        final long slots; //Number of slots of the ring or 0 if the buffer has no size limit
+        final MappedByteBuffer header;
+        MappedByteBuffer chunk = null;
+        long chunkStart = -1;
+        long base = 0, first = 0, end = 0;
+
+        BufferFile(File file, int size) throws IOException {
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            slots = size > 0 ? 2L * size : 0;
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0, size);
+            writeHeader();
+        }
+
+        private void writeHeader() {
+            header.putLong(8, base);
+            header.putLong(16, first);
+            header.putLong(24, end);
+            header.force();
+        }
+
+        //Map the region of the file containing the given position
+        private void map(long position) throws IOException {
+            long start = position - position % CHUNK_SIZE;
+            if (start == chunkStart)
+                return;
+            if (chunk != null)
+                chunk.force();
+            long size = CHUNK_SIZE;
+            if (slots > 0)
+                size = Math.min(size, HEADER_SIZE + 8 * slots - start);
+            chunk = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+            chunk.order(ByteOrder.LITTLE_ENDIAN);
+            chunkStart = start;
+        }
+
+        //Write the values with the indices from to to. view holds the values from index viewFirst.
+        private void write(DataBufferView view, long viewFirst, long from, long to) throws IOException {
+            while (from < to) {
+                long slot = from - base;
+                long n = to - from;
+                if (slots > 0) {
+                    slot %= slots;
+                    n = Math.min(n, slots - slot);
+                }
+                long position = HEADER_SIZE + 8 * slot;
+                map(position);
+                int offset = (int)(position - chunkStart);
+                n = Math.min(n, (chunk.capacity() - offset) / 8);
+                chunk.position(offset);
+                chunk.asDoubleBuffer().put(view.data, view.offset + (int)(from - viewFirst), (int)n);
+                from += n;
+            }
+        }
+
+        //Bring the file up to date with the buffer, which holds the values from newFirst to newEnd
+        void update(DataBufferView view, long newFirst, long newEnd) throws IOException {
+            if (newFirst == first && newEnd == end)
+                return;
+            if (newFirst >= end && newFirst > base) {
+                //None of the values in the file are valid anymore. Start over.
+                base = newFirst;
+                first = newFirst;
+                end = newFirst;
+                writeHeader();
+            }
+            write(view, newFirst, end, newEnd);
+            if (chunk != null)
+                chunk.force();
+            first = newFirst;
+            end = newEnd;
+            writeHeader();
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    SessionJournal(PhyphoxExperiment experiment, File filesDir) throws IOException {
+        this.experiment = experiment;
+        dir = new File(new File(filesDir, DIRECTORY), UUID.randomUUID().toString().replaceAll("-", ""));
+        synchronized (SessionJournal.class) {
+            openJournals.add(dir.getName());
+        }
+        if (!dir.mkdirs()) {
+            unregister(dir);
+            throw new IOException("Could not create " + dir.getPath());
+        }
+
+        FileUtils.writeByteArrayToFile(new File(dir, SOURCE), experiment.source);
+
+        files = new BufferFile[experiment.dataBuffers.size()];
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < files.length; i++) {
+            DataBuffer buffer = experiment.dataBuffers.get(i);
+            names.append(buffer.name).append("\n");
+            files[i] = new BufferFile(new File(dir, i + VALUES_EXTENSION), buffer.size);
+        }
+        FileUtils.writeStringToFile(new File(dir, BUFFERS), names.toString(), "UTF-8");
+
+        executor.scheduleWithFixedDelay(() -> sync(), 0, SYNC_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    //Copy new data to the journal. This is called periodically on the executor of the journal.
+    private void sync() {
+        DataBufferView[] views = new DataBufferView[files.length];
+        long[] firsts = new long[files.length];
+        long[] ends = new long[files.length];
+        List<ExperimentTimeReference.TimeMapping> events;
+        experiment.dataLock.lock();
+        try {
+            experiment.commitInput();
+            for (int i = 0; i < files.length; i++) {
+                DataBuffer buffer = experiment.dataBuffers.get(i);
+                views[i] = buffer.getView();
+                firsts[i] = buffer.getFirstIndex();
+                ends[i] = buffer.getEndIndex();
+            }
+            events = new ArrayList<>(experiment.experimentTimeReference.timeMappings);
+        } finally {
+            experiment.dataLock.unlock();
+        }
+
+        try {
+            for (int i = 0; i < files.length; i++)
+                files[i].update(views[i], firsts[i], ends[i]);
+            if (events.size() != eventCount)
+                writeEvents(events);
+        } catch (Exception e) {
+            Log.e("SessionJournal", "Could not write journal.", e);
+        }
+    }
+
+    //The events are few, so the file is simply replaced
+    private void writeEvents(List<ExperimentTimeReference.TimeMapping> events) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (ExperimentTimeReference.TimeMapping event : events)
+            sb.append(event.event.name()).append(" ").append(event.experimentTime).append(" ").append(event.systemTime).append("\n");
+        File tmp = new File(dir, EVENTS + ".tmp");
+        FileOutputStream os = new FileOutputStream(tmp);
+        try {
+            os.write(sb.toString().getBytes("UTF-8"));
+            os.getFD().sync();
+        } finally {
+            os.close();
+        }
+        if (!tmp.renameTo(new File(dir, EVENTS)))
+            throw new IOException("Could not replace events.");
+        eventCount = events.size();
+    }
+
+    //Stop the journal and delete it. This is called when the experiment is left regularly. If the
+    //app is killed instead, the journal stays behind for recover().
+    //This is called from onDestroy(), so waiting for the last sync and deleting the files happens
+    //on a separate thread.
+    void discard() {
+        executor.shutdown();
+        new Thread(() -> {
+            try {
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Log.w("SessionJournal", "Interrupted while waiting for the last sync.");
+            }
+            try {
+                for (BufferFile file : files) {
+                    if (file != null)
+                        file.close();
+                }
+                FileUtils.deleteDirectory(dir);
+            } catch (IOException e) {
+                Log.e("SessionJournal", "Could not delete journal.", e);
+            } finally {
+                unregister(dir);
+            }
+        }, "SessionJournal").start();
+    }
+
+    private static synchronized void unregister(File journal) {
+        openJournals.remove(journal.getName());
+    }
+
+    //Read the valid values of a buffer file
+    private static double[] readValues(File file) throws IOException {
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (channel.read(header, 0) != HEADER_SIZE)
+                throw new IOException("Incomplete header in " + file.getName());
+            long slots = 2L * header.getInt(0);
+            long base = header.getLong(8);
+            long first = header.getLong(16);
+            long end = header.getLong(24);
+            if (first < base || end < first || end - first > Integer.MAX_VALUE || (slots > 0 && end - first > slots / 2))
+                throw new IOException("Invalid header in " + file.getName());
+
+            double[] values = new double[(int)(end - first)];
+            ByteBuffer block = ByteBuffer.allocate(8 * READ_BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            int count = 0;
+            while (count < values.length) {
+                long slot = first + count - base;
+                int n = Math.min(values.length - count, READ_BLOCK_SIZE);
+                if (slots > 0) {
+                    slot %= slots;
+                    n = (int)Math.min(n, slots - slot);
+                }
+                block.clear();
+                block.limit(8 * n);
+                long position = HEADER_SIZE + 8 * slot;
+                while (block.hasRemaining()) {
+                    if (channel.read(block, position + block.position()) < 0)
+                        throw new IOException("Incomplete data in " + file.getName());
+                }
+                block.flip();
+                block.asDoubleBuffer().get(values, count, n);
+                count += n;
+            }
+            return values;
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static List<ExperimentTimeReference.TimeMapping> readEvents(File file) throws IOException {
+        List<ExperimentTimeReference.TimeMapping> events = new ArrayList<>();
+        if (!file.exists())
+            return events;
+        for (Object line : FileUtils.readLines(file, "UTF-8")) {
+            String[] parts = ((String)line).trim().split(" ");
+            if (parts.length != 3)
+                continue;
+            events.add(new ExperimentTimeReference.TimeMapping(ExperimentTimeReference.TimeMappingEvent.valueOf(parts[0]), Double.parseDouble(parts[1]), 0, Long.parseLong(parts[2])));
+        }
+        return events;
+    }
+
+    //Write a journal as a state file into the collection
+    private static void recoverJournal(Context context, File journal) throws Exception {
+        byte[] source = FileUtils.readFileToByteArray(new File(journal, SOURCE));
+        List names = FileUtils.readLines(new File(journal, BUFFERS), "UTF-8");
+        Map<String, DataBufferView> data = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            double[] values = readValues(new File(journal, i + VALUES_EXTENSION));
+            data.put((String)names.get(i), new DataBufferView(values, 0, values.length));
+        }
+        List<ExperimentTimeReference.TimeMapping> events = readEvents(new File(journal, EVENTS));
+
+        DateFormat df = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+        String title = context.getString(R.string.recoveredSessionTitle) + " " + df.format(new Date(journal.lastModified()));
+        File target = new File(context.getFilesDir(), UUID.randomUUID().toString().replaceAll("-", "") + ".phyphox");
+        OutputStream os = new FileOutputStream(target);
+        String result;
+        try {
+            result = new StateFile(os).write(source, title, events, data);
+        } finally {
+            os.close();
+        }
+        if (result != null) {
+            target.delete();
+            throw new Exception(result);
+        }
+    }
+
+    //Turn the journals that have been left behind by a crashed or killed session into states in the
+    //collection. Journals of this process are skipped. This is called once when the app is started
+    //(see App). Returns the number of recovered sessions.
+    public static synchronized int recover(Context context) {
+        File[] journals = new File(context.getFilesDir(), DIRECTORY).listFiles();
+        if (journals == null)
+            return 0;
+        int count = 0;
+        for (File journal : journals) {
+            if (!journal.isDirectory() || openJournals.contains(journal.getName()))
+                continue;
+            try {
+                recoverJournal(context, journal);
+                count++;
+            } catch (Exception e) {
+                Log.e("SessionJournal", "Could not recover " + journal.getName(), e);
+            }
+            try {
+                FileUtils.deleteDirectory(journal);
+            } catch (IOException e) {
+                Log.e("SessionJournal", "Could not delete " + journal.getName(), e);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,359 @@
+package de.rwth_aachen.phyphox;
+
+import android.util.Base64;
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+//Writes the state of an experiment (see PhyphoxExperiment.writeStateFile())
+//A state file is the source of the experiment with the current data of each container. The source
+//is copied token by token from a pull parser to the output, so unlike a DOM the memory use does
+//not depend on the size of the file. While copying, the state-title, color and events of the
+//state are replaced and the data is added to the containers.
+//Small containers get their values as text in the init attribute as always. Larger containers
+//are followed by values elements in the data-containers block, which hold blocks of
+//VALUES_PER_BLOCK values as little-endian doubles, compressed with deflate and encoded as base64:
+//  <container size="0">t</container>
+//  <values container="t" compression="deflate">eJw...</values>
+//This is exact, several times smaller than the text and quick to read, as no number has to be
+//parsed. The blocks keep the text of each element small for the pull parser when loading.
+
+class StateFile {
+    static final int TEXT_INIT_LIMIT = 1000; //Containers with up to this number of values use the init attribute
+    static final int VALUES_PER_BLOCK = 16384;
+
+    private final Writer out;
+    private String lastWhitespace = "\n"; //Whitespace in front of the last tag, used to indent the values elements
+    private String indentation = ""; //Indentation of the elements within the phyphox element, used for the state elements
+    private final StringBuilder pendingWhitespace = new StringBuilder();
+
+    StateFile(OutputStream os) throws IOException {
+        out = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"), 65536);
+    }
+
+    private void writeEscaped(String s, boolean attribute) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '&': out.write("&amp;"); break;
+                case '<': out.write("&lt;"); break;
+                case '>': out.write("&gt;"); break;
+                case '"': out.write(attribute ? "&quot;" : "\""); break;
+                case '\n': out.write(attribute ? "&#10;" : "\n"); break;
+                case '\r': out.write(attribute ? "&#13;" : "\r"); break;
+                case '\t': out.write(attribute ? "&#9;" : "\t"); break;
+                default: out.write(c);
+            }
+        }
+    }
+
+    private void writeAttribute(String name, String value) throws IOException {
+        out.write(' ');
+        out.write(name);
+        out.write("=\"");
+        writeEscaped(value, true);
+        out.write('"');
+    }
+
+    private void writeElement(String name, String text) throws IOException {
+        out.write('<');
+        out.write(name);
+        out.write('>');
+        writeEscaped(text, false);
+        out.write("</");
+        out.write(name);
+        out.write('>');
+    }
+
+    //Write the current start tag of the parser (without closing it)
+    private void writeStartTag(XmlPullParser xpp) throws IOException {
+        out.write('<');
+        out.write(xpp.getName());
+        for (int i = 0; i < xpp.getAttributeCount(); i++)
+            writeAttribute(xpp.getAttributeName(i), xpp.getAttributeValue(i));
+    }
+
+    //Whitespace is held back until we know if the following element is written at all, so
+    //replacing the state elements does not leave empty lines
+    private void writePendingWhitespace() throws IOException {
+        out.write(pendingWhitespace.toString());
+        pendingWhitespace.setLength(0);
+    }
+
+    //Values of a container as text for the init attribute
+    static String formatValues(DataBufferView values) {
+        DecimalFormat format = (DecimalFormat) NumberFormat.getInstance(Locale.ENGLISH);
+        format.applyPattern("0.#########E0");
+        DecimalFormatSymbols dfs = format.getDecimalFormatSymbols();
+        dfs.setDecimalSeparator('.');
+        format.setDecimalFormatSymbols(dfs);
+        format.setGroupingUsed(false);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                sb.append(",");
+            sb.append(format.format(values.get(i)));
+        }
+        return sb.toString();
+    }
+
+    //Write the values elements of a container
+    private void writeValues(String name, DataBufferView values) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(8 * VALUES_PER_BLOCK).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] compressed = new byte[8 * VALUES_PER_BLOCK + 1024]; //Deflate adds a few bytes to data that does not compress
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            for (int i = 0; i < values.length; i += VALUES_PER_BLOCK) {
+                int n = Math.min(VALUES_PER_BLOCK, values.length - i);
+                block.clear();
+                block.asDoubleBuffer().put(values.data, values.offset + i, n);
+
+                deflater.reset();
+                deflater.setInput(block.array(), 0, 8 * n);
+                deflater.finish();
+                int length = 0;
+                while (!deflater.finished()) {
+                    if (length == compressed.length) {
+                        byte[] larger = new byte[2 * compressed.length];
+                        System.arraycopy(compressed, 0, larger, 0, length);
+                        compressed = larger;
+                    }
+                    length += deflater.deflate(compressed, length, compressed.length - length);
+                }
+
+                out.write(lastWhitespace);
+                out.write("<values");
+                writeAttribute("container", name);
+                writeAttribute("compression", "deflate");
+                out.write('>');
+                out.write(Base64.encodeToString(compressed, 0, length, Base64.NO_WRAP));
+                out.write("</values>");
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    //Copy the source to the output with the given state. data maps the names of the containers to their values.
+    //Returns null on success or an error message.
+    String write(byte[] source, String customTitle, List<ExperimentTimeReference.TimeMapping> events, Map<String, DataBufferView> data) throws IOException, XmlPullParserException {
+        XmlPullParser xpp = Xml.newPullParser();
+        xpp.setInput(new ByteArrayInputStream(source), null);
+
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+
+        int containerBlocks = 0;
+        String parentName = null; //Name of the element at depth 2, i.e. the block we are in
+        int skipDepth = -1; //Depth of an element that is skipped with all of its content
+        boolean skipEndTag = false; //An empty element tag has already been closed
+
+        int eventType = xpp.getEventType();
+        while (eventType != XmlPullParser.END_DOCUMENT) {
+            if (skipDepth >= 0) {
+                //Skip an element of the old state
+                if (eventType == XmlPullParser.END_TAG && xpp.getDepth() == skipDepth)
+                    skipDepth = -1;
+                eventType = xpp.nextToken();
+                continue;
+            }
+
+            if (eventType == XmlPullParser.TEXT || eventType == XmlPullParser.IGNORABLE_WHITESPACE) {
+                String text = xpp.getText();
+                if (text.trim().isEmpty()) {
+                    pendingWhitespace.append(text);
+                    int lineBreak = text.lastIndexOf('\n');
+                    if (lineBreak >= 0)
+                        lastWhitespace = text.substring(lineBreak);
+                } else {
+                    writePendingWhitespace();
+                    writeEscaped(text, false);
+                }
+                eventType = xpp.nextToken();
+                continue;
+            }
+
+            if (eventType == XmlPullParser.START_TAG) {
+                String name = xpp.getName();
+                if (xpp.getDepth() == 2) {
+                    parentName = name;
+                    indentation = lastWhitespace.substring(1);
+                    if (name.equals("state-title") || name.equals("color") || name.equals("events")) {
+                        pendingWhitespace.setLength(0);
+                        skipDepth = 2;
+                        eventType = xpp.nextToken();
+                        continue;
+                    }
+                    if (name.equals("data-containers"))
+                        containerBlocks++;
+                }
+                if (xpp.getDepth() == 3 && "data-containers".equals(parentName) && name.equals("values")) {
+                    //Values of an old state
+                    pendingWhitespace.setLength(0);
+                    skipDepth = 3;
+                    eventType = xpp.nextToken();
+                    continue;
+                }
+            }
+
+            writePendingWhitespace();
+            switch (eventType) {
+                case XmlPullParser.START_TAG:
+                    if (xpp.getDepth() == 3 && "data-containers".equals(parentName) && xpp.getName().equals("container")) {
+                        writeContainer(xpp, data);
+                        break;
+                    }
+                    writeStartTag(xpp);
+                    if (xpp.isEmptyElementTag()) {
+                        out.write("/>");
+                        skipEndTag = true;
+                    } else
+                        out.write('>');
+                    break;
+                case XmlPullParser.END_TAG:
+                    if (skipEndTag) {
+                        skipEndTag = false;
+                        break;
+                    }
+                    if (xpp.getDepth() == 1) {
+                        //End of the phyphox element. Add the state.
+                        out.write(indentation);
+                        writeElement("state-title", customTitle);
+                        out.write("\n");
+                        out.write(indentation);
+                        writeElement("color", "blue");
+                        out.write("\n");
+                        out.write(indentation);
+                        out.write("<events>");
+                        for (ExperimentTimeReference.TimeMapping event : events) {
+                            out.write('<');
+                            out.write(event.event.name().toLowerCase());
+                            writeAttribute("experimentTime", event.experimentTime.toString());
+                            writeAttribute("systemTime", Long.toString(event.systemTime));
+                            out.write("/>");
+                        }
+                        out.write("</events>\n");
+                    }
+                    out.write("</");
+                    out.write(xpp.getName());
+                    out.write('>');
+                    break;
+                case XmlPullParser.ENTITY_REF:
+                    writeEscaped(xpp.getText(), false);
+                    break;
+                case XmlPullParser.CDSECT:
+                    out.write("<![CDATA[");
+                    out.write(xpp.getText());
+                    out.write("]]>");
+                    break;
+                case XmlPullParser.COMMENT:
+                    out.write("<!--");
+                    out.write(xpp.getText());
+                    out.write("-->");
+                    break;
+                case XmlPullParser.PROCESSING_INSTRUCTION:
+                    if (!xpp.getText().toLowerCase().startsWith("xml ")) { //We have already written our own declaration
+                        out.write("<?");
+                        out.write(xpp.getText());
+                        out.write("?>");
+                    }
+                    break;
+                case XmlPullParser.DOCDECL:
+                    out.write("<!DOCTYPE");
+                    out.write(xpp.getText());
+                    out.write('>');
+                    break;
+            }
+            eventType = xpp.nextToken();
+        }
+        writePendingWhitespace();
+        out.flush();
+
+        if (containerBlocks != 1)
+            return "Source needs exactly one data-container block.";
+        return null;
+    }
+
+    //Copy a container element and add its current values
+    private void writeContainer(XmlPullParser xpp, Map<String, DataBufferView> data) throws IOException, XmlPullParserException {
+        //We need the name of the container (its text) to know what to write into the start tag
+        List<String> attributeNames = new ArrayList<>();
+        List<String> attributeValues = new ArrayList<>();
+        for (int i = 0; i < xpp.getAttributeCount(); i++) {
+            attributeNames.add(xpp.getAttributeName(i));
+            attributeValues.add(xpp.getAttributeValue(i));
+        }
+        String tag = xpp.getName();
+        String name = xpp.nextText();
+
+        DataBufferView values = data.get(name.trim());
+        out.write('<');
+        out.write(tag);
+        for (int i = 0; i < attributeNames.size(); i++) {
+            if (values != null && attributeNames.get(i).equals("init"))
+                continue;
+            writeAttribute(attributeNames.get(i), attributeValues.get(i));
+        }
+        if (values != null && values.length <= TEXT_INIT_LIMIT)
+            writeAttribute("init", formatValues(values));
+        out.write('>');
+        writeEscaped(name, false);
+        out.write("</");
+        out.write(tag);
+        out.write('>');
+
+        if (values != null && values.length > TEXT_INIT_LIMIT)
+            writeValues(name.trim(), values);
+    }
+
+    //Decode the text of a values element (see above)
+    static double[] decodeValues(String text, boolean deflate) throws DataFormatException {
+        byte[] bytes = Base64.decode(text, Base64.DEFAULT);
+        int length = bytes.length;
+        if (deflate) {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(bytes);
+                byte[] inflated = new byte[8 * VALUES_PER_BLOCK];
+                length = 0;
+                while (!inflater.finished()) {
+                    if (length == inflated.length) {
+                        byte[] larger = new byte[2 * inflated.length];
+                        System.arraycopy(inflated, 0, larger, 0, length);
+                        inflated = larger;
+                    }
+                    int n = inflater.inflate(inflated, length, inflated.length - length);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                        throw new DataFormatException("Incomplete data.");
+                    length += n;
+                }
+                bytes = inflated;
+            } finally {
+                inflater.end();
+            }
+        }
+        double[] values = new double[length / 8];
+        ByteBuffer.wrap(bytes, 0, 8 * values.length).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(values);
+        return values;
+    }
+}
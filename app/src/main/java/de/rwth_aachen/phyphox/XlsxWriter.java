@@ -0,0 +1,222 @@
+package de.rwth_aachen.phyphox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+//Streaming writer for Excel files (xlsx, see DataExport.ExcelFormat)
+//An xlsx file is a zip file with a few XML documents. The worksheets are written row by row
+//directly into the zip stream through a small buffer, so unlike the in-memory workbooks of
+//Apache POI the memory use does not depend on the amount of data. The remaining parts (workbook,
+//relations, content types and styles) only depend on the names of the sheets and are added when
+//the writer is closed.
+//Strings are written inline instead of using a shared string table. Cells and rows do not get an
+//explicit reference, so they are placed one after another.
+
+class XlsxWriter {
+    static final int MAX_ROWS = 1048576; //Row limit of a worksheet in Excel
+    private static final int MAX_SHEET_NAME_LENGTH = 31;
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+    private static final String NS_MAIN = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String NS_RELATIONSHIPS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String NS_PACKAGE_RELATIONSHIPS = "http://schemas.openxmlformats.org/package/2006/relationships";
+
+    private final ZipOutputStream zstream;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int count = 0;
+    private final List<String> sheetNames = new ArrayList<>();
+    private final Set<String> usedNames = new HashSet<>();
+    private boolean inSheet = false;
+
+    XlsxWriter(OutputStream out) {
+        zstream = new ZipOutputStream(out);
+    }
+
+    private void flush() throws IOException {
+        if (count > 0) {
+            zstream.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private void reserve(int n) throws IOException {
+        if (count + n > buffer.length)
+            flush();
+    }
+
+    //Write ASCII text without escaping
+    private void writeRaw(String s) throws IOException {
+        int n = s.length();
+        if (n > buffer.length) {
+            flush();
+            zstream.write(s.getBytes("UTF-8"));
+            return;
+        }
+        reserve(n);
+        for (int i = 0; i < n; i++)
+            buffer[count++] = (byte)s.charAt(i);
+    }
+
+    //Write text escaped for XML content and attributes
+    private void writeEscaped(String s) throws IOException {
+        StringBuilder sb = new StringBuilder(s.length() + 16);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '&': sb.append("&amp;"); break;
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                case '"': sb.append("&quot;"); break;
+                default:
+                    if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') //Other control characters are not allowed in XML
+                        sb.append(c);
+            }
+        }
+        byte[] b = sb.toString().getBytes("UTF-8");
+        if (b.length > buffer.length) {
+            flush();
+            zstream.write(b);
+            return;
+        }
+        reserve(b.length);
+        System.arraycopy(b, 0, buffer, count, b.length);
+        count += b.length;
+    }
+
+    //Sheet names are limited to 31 characters, may not contain some characters and have to be unique
+    private String getSheetName(String name) {
+        String base = name.replaceAll("[\\\\/?*\\[\\]:\\x00-\\x1f]", "_").trim();
+        if (base.startsWith("'"))
+            base = "_" + base.substring(1);
+        if (base.isEmpty())
+            base = "Sheet";
+        if (base.length() > MAX_SHEET_NAME_LENGTH)
+            base = base.substring(0, MAX_SHEET_NAME_LENGTH);
+        String unique = base;
+        for (int i = 2; usedNames.contains(unique.toLowerCase()); i++) {
+            String suffix = " (" + i + ")";
+            unique = base.substring(0, Math.min(base.length(), MAX_SHEET_NAME_LENGTH - suffix.length())) + suffix;
+        }
+        usedNames.add(unique.toLowerCase());
+        return unique;
+    }
+
+    //Start a new worksheet. Each sheet has to be closed with endSheet() before the next one is started.
+    void startSheet(String name) throws IOException {
+        sheetNames.add(getSheetName(name));
+        zstream.putNextEntry(new ZipEntry("xl/worksheets/sheet" + sheetNames.size() + ".xml"));
+        writeRaw(XML_HEADER);
+        writeRaw("<worksheet xmlns=\"" + NS_MAIN + "\"><sheetData>");
+        inSheet = true;
+    }
+
+    void endSheet() throws IOException {
+        writeRaw("</sheetData></worksheet>");
+        flush();
+        zstream.closeEntry();
+        inSheet = false;
+    }
+
+    void startRow() throws IOException {
+        writeRaw("<row>");
+    }
+
+    void endRow() throws IOException {
+        writeRaw("</row>");
+    }
+
+    //Add a text cell to the current row, optionally in bold
+    void writeString(String s, boolean bold) throws IOException {
+        writeRaw(bold ? "<c t=\"inlineStr\" s=\"1\"><is><t xml:space=\"preserve\">" : "<c t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+        writeEscaped(s);
+        writeRaw("</t></is></c>");
+    }
+
+    //Add a numeric cell to the current row. Like Apache POI, NaN and infinite values are shown as
+    //errors as they cannot be represented in the file.
+    void writeNumber(double v) throws IOException {
+        if (Double.isNaN(v)) {
+            writeRaw("<c t=\"e\"><v>#NUM!</v></c>");
+        } else if (Double.isInfinite(v)) {
+            writeRaw("<c t=\"e\"><v>#DIV/0!</v></c>");
+        } else {
+            writeRaw("<c><v>");
+            writeRaw(Double.toString(v));
+            writeRaw("</v></c>");
+        }
+    }
+
+    private void writePart(String name, String content) throws IOException {
+        zstream.putNextEntry(new ZipEntry(name));
+        writeRaw(XML_HEADER);
+        writeRaw(content);
+        flush();
+        zstream.closeEntry();
+    }
+
+    //Add the remaining parts of the document and close the underlying stream
+    void close() throws IOException {
+        try {
+            if (inSheet)
+                endSheet();
+            if (sheetNames.isEmpty()) { //Excel does not open a workbook without sheets
+                startSheet("Sheet");
+                endSheet();
+            }
+
+            StringBuilder contentTypes = new StringBuilder();
+            contentTypes.append("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">");
+            contentTypes.append("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>");
+            contentTypes.append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>");
+            contentTypes.append("<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>");
+            contentTypes.append("<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>");
+            for (int i = 1; i <= sheetNames.size(); i++)
+                contentTypes.append("<Override PartName=\"/xl/worksheets/sheet").append(i).append(".xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+            contentTypes.append("</Types>");
+            writePart("[Content_Types].xml", contentTypes.toString());
+
+            writePart("_rels/.rels", "<Relationships xmlns=\"" + NS_PACKAGE_RELATIONSHIPS + "\">"
+                    + "<Relationship Id=\"rId1\" Type=\"" + NS_RELATIONSHIPS + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                    + "</Relationships>");
+
+            zstream.putNextEntry(new ZipEntry("xl/workbook.xml"));
+            writeRaw(XML_HEADER);
+            writeRaw("<workbook xmlns=\"" + NS_MAIN + "\" xmlns:r=\"" + NS_RELATIONSHIPS + "\"><sheets>");
+            for (int i = 1; i <= sheetNames.size(); i++) {
+                writeRaw("<sheet name=\"");
+                writeEscaped(sheetNames.get(i-1));
+                writeRaw("\" sheetId=\"" + i + "\" r:id=\"rId" + i + "\"/>");
+            }
+            writeRaw("</sheets></workbook>");
+            flush();
+            zstream.closeEntry();
+
+            StringBuilder relationships = new StringBuilder();
+            relationships.append("<Relationships xmlns=\"" + NS_PACKAGE_RELATIONSHIPS + "\">");
+            for (int i = 1; i <= sheetNames.size(); i++)
+                relationships.append("<Relationship Id=\"rId").append(i).append("\" Type=\"" + NS_RELATIONSHIPS + "/worksheet\" Target=\"worksheets/sheet").append(i).append(".xml\"/>");
+            relationships.append("<Relationship Id=\"rId").append(sheetNames.size() + 1).append("\" Type=\"" + NS_RELATIONSHIPS + "/styles\" Target=\"styles.xml\"/>");
+            relationships.append("</Relationships>");
+            writePart("xl/_rels/workbook.xml.rels", relationships.toString());
+
+            //Style 0 is the default, style 1 uses a bold font for the table headers
+            writePart("xl/styles.xml", "<styleSheet xmlns=\"" + NS_MAIN + "\">"
+                    + "<fonts count=\"2\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font><font><b/><sz val=\"11\"/><name val=\"Calibri\"/></font></fonts>"
+                    + "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill><fill><patternFill patternType=\"gray125\"/></fill></fills>"
+                    + "<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>"
+                    + "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>"
+                    + "<cellXfs count=\"2\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/><xf numFmtId=\"0\" fontId=\"1\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyFont=\"1\"/></cellXfs>"
+                    + "<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>"
+                    + "</styleSheet>");
+        } finally {
+            zstream.close();
+        }
+    }
+}
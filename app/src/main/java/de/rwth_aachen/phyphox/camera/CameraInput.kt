@@ -71,7 +71,7 @@ class CameraInput : Serializable, AnalyzingOpenGLRenderer.ExposureStatisticsList
 
     var thresholdAnalyzerThreshold: Double = 0.5
 
-    val dataLock: Lock
+    val inputLock: Lock
 
     val _cameraSettingState: MutableStateFlow<CameraSettingState>
     public val cameraSettingState: StateFlow<CameraSettingState>
@@ -168,7 +168,7 @@ class CameraInput : Serializable, AnalyzingOpenGLRenderer.ExposureStatisticsList
 
     private fun startCamera() {
         if (analyzingOpenGLRenderer == null)
-            analyzingOpenGLRenderer = AnalyzingOpenGLRenderer(this, dataLock, cameraSettingState, this)
+            analyzingOpenGLRenderer = AnalyzingOpenGLRenderer(this, inputLock, cameraSettingState, this)
 
         val cameraSelector = CameraHelper.cameraLensToSelector(cameraSettingState.value.currentLens)
 
@@ -466,7 +466,7 @@ class CameraInput : Serializable, AnalyzingOpenGLRenderer.ExposureStatisticsList
         if (buffers.size > 8 && buffers[8] != null) isoDataBuffer = buffers[8].buffer
         if (buffers.size > 9 && buffers[9] != null) apertureDataBuffer = buffers[9].buffer
 
-        this.dataLock = lock
+        this.inputLock = lock
         this.aeStrategy = aeStrategy
         this.thresholdAnalyzerThreshold = thresholdAnalyzerThreshold
     }
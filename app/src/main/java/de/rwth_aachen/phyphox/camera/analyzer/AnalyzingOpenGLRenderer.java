@@ -57,7 +57,7 @@ public class AnalyzingOpenGLRenderer implements Preview.SurfaceProvider, Surface
 
     ExposureStatisticsListener exposureStatisticsListener;
 
-    Lock dataLock;
+    Lock inputLock;
     List<AnalyzingModule> analyzingModules = new ArrayList<>();
     ExposureAnalyzer exposureAnalyzer;
     Deque<AnalyzingOpenGLRendererPreviewOutput> previewOutputs = new ConcurrentLinkedDeque<>();
@@ -79,7 +79,7 @@ public class AnalyzingOpenGLRenderer implements Preview.SurfaceProvider, Surface
         this.apertureOutput = cameraInput.getApertureDataBuffer();
         this.isoOutput = cameraInput.getIsoDataBuffer();
 
-        this.dataLock = lock;
+        this.inputLock = lock;
         if (cameraInput.getDataLuminance() != null) {
             analyzingModules.add(new LuminanceAnalyzer(cameraInput.getDataLuminance(), true));
         }
@@ -227,13 +227,13 @@ public class AnalyzingOpenGLRenderer implements Preview.SurfaceProvider, Surface
         for (AnalyzingModule analyzingModule : analyzingModules)
             analyzingModule.writeToBuffers(state);
         if (timeOutput != null)
-            timeOutput.append(t);
+            timeOutput.stage(t);
         if (shutterSpeedOutput != null)
-            shutterSpeedOutput.append(state.getCurrentShutterValue()/1.0e9);
+            shutterSpeedOutput.stage(state.getCurrentShutterValue()/1.0e9);
         if (apertureOutput != null)
-            apertureOutput.append(state.getCurrentApertureValue());
+            apertureOutput.stage(state.getCurrentApertureValue());
         if (isoOutput != null)
-            isoOutput.append(state.getCurrentIsoValue());
+            isoOutput.stage(state.getCurrentIsoValue());
     }
 
     void draw() {
@@ -268,11 +268,11 @@ public class AnalyzingOpenGLRenderer implements Preview.SurfaceProvider, Surface
                         if (!running)
                             return;
 
-                        if (dataLock.tryLock()) { //First try to write to buffers. If they available at the moment, draw preview first
+                        if (inputLock.tryLock()) { //First try to write to buffers. If they available at the moment, draw preview first
                             if (measuring) //This might have changed while analyzing
                                 writeToBuffers(t, state);
                             dataNeedsToBeWrittenToBuffers = false;
-                            dataLock.unlock();
+                            inputLock.unlock();
                         }
                     } else
                         dataNeedsToBeWrittenToBuffers = false;
@@ -298,10 +298,10 @@ public class AnalyzingOpenGLRenderer implements Preview.SurfaceProvider, Surface
                     if (!running)
                         return;
                     if (dataNeedsToBeWrittenToBuffers && measuring) {
-                        dataLock.lock();
+                        inputLock.lock();
                         if (measuring) //This might still have changed while waiting for the lock. In fact, if the user clears all data without explicitly stopping the measurement we would otherwise add old data to the freshly cleared buffers
                             writeToBuffers(t, state);
-                        dataLock.unlock();
+                        inputLock.unlock();
                     }
 
                     checkGLError("draw");
@@ -268,7 +268,7 @@ public class HSVAnalyzer extends AnalyzingModule {
 
     @Override
     public void writeToBuffers(CameraSettingState state) {
-        out.append(latestResult);
+        out.stage(latestResult);
     }
 
     public void makeCurrent(EGLSurface eglSurface, int w, int h) {
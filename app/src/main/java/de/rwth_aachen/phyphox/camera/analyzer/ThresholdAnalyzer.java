@@ -135,7 +135,7 @@ public class ThresholdAnalyzer extends AnalyzingModule {
 
     @Override
     public void writeToBuffers(CameraSettingState state) {
-        out.append(latestResult);
+        out.stage(latestResult);
     }
 
     public void makeCurrent(EGLSurface eglSurface, int w, int h) {
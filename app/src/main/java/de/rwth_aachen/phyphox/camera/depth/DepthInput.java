@@ -39,7 +39,7 @@ public class DepthInput {
     float x1, x2, y1, y2;
 
     private final ExperimentTimeReference experimentTimeReference;
-    private Lock dataLock;
+    private Lock inputLock;
 
     public DataBuffer dataZ; //Data-buffer for x
     public DataBuffer dataT; //Data-buffer for t
@@ -81,7 +81,7 @@ public class DepthInput {
     }
 
     public DepthInput(DepthExtractionMode mode, float x1, float x2, float y1, float y2, Vector<DataOutput> buffers, Lock lock, ExperimentTimeReference experimentTimeReference, CameraManager cameraManager) {
-        this.dataLock = lock;
+        this.inputLock = lock;
         this.experimentTimeReference = experimentTimeReference;
         this.cameraManager = cameraManager;
 
@@ -659,15 +659,15 @@ public class DepthInput {
                     if (Double.isInfinite(z))
                         z = Double.NaN;
 
-                    dataLock.lock();
+                    inputLock.lock();
                     try {
                         if (dataZ != null)
-                            dataZ.append(z*0.001); //Given in millimeters, but phyphox uses meter
+                            dataZ.stage(z*0.001); //Given in millimeters, but phyphox uses meter
                         if (dataT != null) {
-                            dataT.append(t);
+                            dataT.stage(t);
                         }
                     } finally {
-                        dataLock.unlock();
+                        inputLock.unlock();
                     }
                 } else {
                     Log.e("DepthInput", "imageReader encountered unexpected number of planes: " + planes.length);
@@ -0,0 +1,162 @@
+package de.rwth_aachen.phyphox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Contention benchmark for the data buffers: A sensor thread delivers a set of four values (x, y, z
+//and t) every 200µs while an analysis thread repeatedly holds the dataLock for a slow pass of 20ms.
+//We compare the time the sensor thread has to wait for a lock when appending directly under the
+//dataLock (as phyphox used to do) and when staging its values under the inputLock, as well as how
+//late the samples are delivered compared to their schedule.
+//In both cases, no value may be lost and each analysis pass has to see the same number of values in
+//all buffers, which is asserted by the test. Wall-clock timing is not reliable on a loaded machine,
+//so the benchmark only reports the timing and is run manually.
+
+public class DataBufferContentionTest {
+    private static final long RUN_TIME_NS = TimeUnit.MILLISECONDS.toNanos(1000);
+    private static final long SAMPLE_INTERVAL_NS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long ANALYSIS_PASS_MS = 20;
+
+    private static class Result {
+        long samples = 0;
+        long maxWaitNs = 0;
+        long totalWaitNs = 0;
+        long maxLatenessNs = 0;
+        long totalLatenessNs = 0;
+        int inconsistentPasses = 0;
+        int passes = 0;
+    }
+
+    private Result run(final boolean staged) throws InterruptedException {
+        final Lock dataLock = new ReentrantLock();
+        final Lock inputLock = new ReentrantLock();
+        final DataBuffer[] buffers = new DataBuffer[4];
+        for (int i = 0; i < buffers.length; i++)
+            buffers[i] = new DataBuffer("b" + i, 0, null);
+
+        final Result result = new Result();
+        final AtomicBoolean running = new AtomicBoolean(true);
+
+        Thread analysis = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running.get()) {
+                    dataLock.lock();
+                    try {
+                        if (staged) {
+                            inputLock.lock();
+                            try {
+                                for (DataBuffer buffer : buffers)
+                                    buffer.commitStaged();
+                            } finally {
+                                inputLock.unlock();
+                            }
+                        }
+                        //All modules of a pass have to see the same number of values in each buffer
+                        int n = buffers[0].getFilledSize();
+                        for (DataBuffer buffer : buffers) {
+                            if (buffer.getFilledSize() != n)
+                                result.inconsistentPasses++;
+                        }
+                        result.passes++;
+                        Thread.sleep(ANALYSIS_PASS_MS);
+                    } catch (InterruptedException e) {
+                        return;
+                    } finally {
+                        dataLock.unlock();
+                    }
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                }
+            }
+        });
+
+        Thread sensor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Lock lock = staged ? inputLock : dataLock;
+                long start = System.nanoTime();
+                long next = start;
+                while (System.nanoTime() - start < RUN_TIME_NS) {
+                    double t = (next - start) * 1e-9;
+                    long beforeLock = System.nanoTime();
+                    lock.lock();
+                    long wait = System.nanoTime() - beforeLock;
+                    try {
+                        for (int i = 0; i < buffers.length; i++) {
+                            if (staged)
+                                buffers[i].stage(t + i);
+                            else
+                                buffers[i].append(t + i);
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                    long lateness = Math.max(0, System.nanoTime() - next);
+                    result.samples++;
+                    result.totalWaitNs += wait;
+                    result.maxWaitNs = Math.max(result.maxWaitNs, wait);
+                    result.totalLatenessNs += lateness;
+                    result.maxLatenessNs = Math.max(result.maxLatenessNs, lateness);
+                    next += SAMPLE_INTERVAL_NS;
+                    LockSupport.parkNanos(next - System.nanoTime());
+                }
+            }
+        });
+
+        analysis.start();
+        sensor.start();
+        sensor.join();
+        running.set(false);
+        analysis.join();
+
+        dataLock.lock();
+        inputLock.lock();
+        try {
+            for (DataBuffer buffer : buffers) {
+                buffer.commitStaged();
+                assertEquals(result.samples, buffer.getFilledSize());
+            }
+        } finally {
+            inputLock.unlock();
+            dataLock.unlock();
+        }
+
+        return result;
+    }
+
+    private static void report(String mode, Result result) {
+        long n = Math.max(1, result.samples);
+        System.out.println(mode + " " + result.samples + " samples, " + result.passes + " analysis passes, wait max "
+                + result.maxWaitNs / 1000 + "µs / total " + result.totalWaitNs / 1000 + "µs / mean " + result.totalWaitNs / n / 1000.0
+                + "µs, lateness max " + result.maxLatenessNs / 1000 + "µs / mean " + result.totalLatenessNs / n / 1000.0 + "µs");
+    }
+
+    @Test
+    public void valuesStayConsistent() throws InterruptedException {
+        for (boolean staged : new boolean[]{false, true}) {
+            Result result = run(staged);
+
+            assertEquals(0, result.inconsistentPasses);
+            assertTrue(result.passes > 0);
+        }
+    }
+
+    @Ignore("Benchmark, depends on the load of the machine")
+    @Test
+    public void producerWaitTimes() throws InterruptedException {
+        Result direct = run(false);
+        Result staged = run(true);
+
+        report("dataLock:", direct);
+        report("staged:  ", staged);
+    }
+}
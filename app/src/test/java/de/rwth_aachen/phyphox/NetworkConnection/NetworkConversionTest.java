@@ -0,0 +1,279 @@
+package de.rwth_aachen.phyphox.NetworkConnection;
+
+import static org.junit.Assert.assertEquals;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+//Compares the single-pass scanner of NetworkConversion.Json on random payloads with extracting the
+//values from org.json objects and the single-pass NetworkConversion.Csv with splitting the payloads
+//into strings, which is how the conversions used to work. The android.jar of unit
+//tests only has stubs of org.json, so the tests use the Android implementation from android-json
+//(see build.gradle).
+
+public class NetworkConversionTest {
+    private static final String[] NUMBERS = {
+            "0", "-0", "1", "-12", "3.25", "1e5", "-2.5E-3", "012", "0.1", "123456789012345678",
+            "1.7976931348623157e308", "4.9e-324", "0x1F", "7.", "-.5", "1e400", "-1e400",
+            "2.2250738585072014E-308", "99999999999999999999"
+    };
+    private static final String[] KEYS = {"a", "b", "c", "d\\u0065", "de"};
+    //"a." is a second spelling of "a" and "a.de" is not announced to setIds()
+    private static final String[] IDS = {"a", "b", "a.b", "b.c", "c", "a.b.c", "de", "a.", "a.de"};
+    private static final int ANNOUNCED_IDS = 8;
+
+    private static final String[] CSV_TOKENS = {
+            ",", ";", "\n", "\r\n", "\r", " ", "\t", "", "abc", "-", "1e", "é", "NaN", "Infinity"
+    };
+    private static final String[] CSV_IDS = {"0", "1", "2", "5", "-1", "x", ""};
+
+    private final Random random = new Random(42);
+
+    private String randomNumber() {
+        if (random.nextInt(3) == 0)
+            return NUMBERS[random.nextInt(NUMBERS.length)];
+        return Double.toString((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(40) - 20));
+    }
+
+    private String randomValue(int depth) {
+        switch (random.nextInt(depth > 3 ? 5 : 8)) {
+            case 0:
+            case 1:
+                return randomNumber();
+            case 2:
+                return random.nextBoolean() ? "\"1.5\"" : "\" x\"";
+            case 3:
+                return random.nextBoolean() ? "true" : "null";
+            case 4:
+                return random.nextInt(10) == 0 ? "abc" : randomNumber(); //Only accepted by the lenient org.json
+            case 5:
+            case 6:
+                return randomObject(depth + 1);
+            default: {
+                StringBuilder sb = new StringBuilder("[");
+                int n = random.nextInt(5);
+                for (int i = 0; i < n; i++) {
+                    if (i > 0)
+                        sb.append(", ");
+                    sb.append(random.nextInt(4) == 0 ? randomValue(depth + 1) : randomNumber());
+                }
+                return sb.append("]").toString();
+            }
+        }
+    }
+
+    private String randomObject(int depth) {
+        StringBuilder sb = new StringBuilder("{");
+        int n = random.nextInt(4);
+        for (int i = 0; i < n; i++) {
+            if (i > 0)
+                sb.append(",");
+            sb.append(random.nextBoolean() ? " " : "").append("\"").append(KEYS[random.nextInt(KEYS.length)]).append("\"");
+            sb.append(random.nextBoolean() ? " : " : ":").append(randomValue(depth));
+        }
+        return sb.append("}").toString();
+    }
+
+    //Values of id in the payloads or the error message, like the conversion before the scanner
+    private static String reference(byte[][] data, String id) {
+        JSONObject[] json = new JSONObject[data.length];
+        try {
+            for (int i = 0; i < data.length; i++)
+                json[i] = new JSONObject(new String(data[i], StandardCharsets.UTF_8));
+        } catch (JSONException e) {
+            return "Could not parse JSON.";
+        }
+        List<Double> result = new ArrayList<>();
+        for (JSONObject jsonObject : json) {
+            Object currentJson = jsonObject;
+            try {
+                for (String component : id.split("\\.")) {
+                    if (!(currentJson instanceof JSONObject))
+                        return "Could not find: " + id + " (No object)";
+                    currentJson = ((JSONObject) currentJson).get(component);
+                }
+                if (currentJson instanceof JSONArray) {
+                    for (int j = 0; j < ((JSONArray) currentJson).length(); j++)
+                        result.add(((JSONArray) currentJson).getDouble(j));
+                } else if (currentJson instanceof Integer || currentJson instanceof Long || currentJson instanceof Float || currentJson instanceof Double) {
+                    result.add(((Number) currentJson).doubleValue());
+                }
+            } catch (JSONException e) {
+            }
+        }
+        double[] values = new double[result.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = result.get(i);
+        return Arrays.toString(values);
+    }
+
+    //Values of column id in the payloads like the CSV conversion before the single-pass version
+    private static String csvReference(byte[][] data, String id) {
+        List<Double> result = new ArrayList<>();
+        int index;
+        try {
+            index = Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            index = -1;
+        }
+        for (byte[] payload : data) {
+            for (String line : new String(payload, StandardCharsets.UTF_8).split("\\r?\\n", -1)) {
+                String[] columns = line.split("[,;]", -1);
+                for (int i = 0; i < columns.length; i++) {
+                    if (index >= 0 && i != index)
+                        continue;
+                    try {
+                        result.add(Double.parseDouble(columns[i].trim()));
+                    } catch (NumberFormatException e) {
+                        result.add(Double.NaN);
+                    }
+                }
+            }
+        }
+        double[] values = new double[result.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = result.get(i);
+        return Arrays.toString(values);
+    }
+
+    private static String convert(byte[][] data, String[] ids, String id) {
+        NetworkConversion.Json conversion = new NetworkConversion.Json();
+        conversion.setIds(new HashSet<>(Arrays.asList(ids)));
+        try {
+            conversion.prepare(data);
+            return Arrays.toString(conversion.get(id));
+        } catch (NetworkConversion.ConversionException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static byte[][] payloads(String... payloads) {
+        byte[][] data = new byte[payloads.length][];
+        for (int i = 0; i < payloads.length; i++)
+            data[i] = payloads[i].getBytes(StandardCharsets.UTF_8);
+        return data;
+    }
+
+    @Test
+    public void parseDoubleMatchesDoubleParseDouble() {
+        for (int i = 0; i < 100000; i++) {
+            String text = randomNumber();
+            if (random.nextBoolean())
+                text = text.toUpperCase();
+            byte[] data = text.getBytes(StandardCharsets.UTF_8);
+            String expected, actual;
+            try {
+                expected = Double.toString(Double.parseDouble(text));
+            } catch (NumberFormatException e) {
+                expected = "NumberFormatException";
+            }
+            try {
+                actual = Double.toString(NetworkConversion.parseDouble(data, 0, data.length));
+            } catch (NumberFormatException e) {
+                actual = "NumberFormatException";
+            }
+            assertEquals(text, expected, actual);
+        }
+    }
+
+    @Test
+    public void jsonMatchesJSONObject() {
+        String[] announced = Arrays.copyOf(IDS, ANNOUNCED_IDS);
+        for (int i = 0; i < 20000; i++) {
+            byte[][] data = new byte[1 + random.nextInt(3)][];
+            for (int j = 0; j < data.length; j++) {
+                String payload = random.nextInt(50) == 0 ? "[1]" : randomObject(0);
+                if (random.nextInt(20) == 0) //Ends within a value
+                    payload = payload.substring(0, random.nextInt(payload.length()));
+                data[j] = payload.getBytes(StandardCharsets.UTF_8);
+            }
+
+            NetworkConversion.Json conversion = new NetworkConversion.Json();
+            conversion.setIds(new HashSet<>(Arrays.asList(announced)));
+            String prepareError = null;
+            try {
+                conversion.prepare(data);
+            } catch (NetworkConversion.ConversionException e) {
+                prepareError = e.getMessage();
+            }
+
+            for (String id : IDS) {
+                String expected = reference(data, id);
+                String actual;
+                if (prepareError != null) {
+                    actual = prepareError;
+                } else {
+                    try {
+                        actual = Arrays.toString(conversion.get(id));
+                    } catch (NetworkConversion.ConversionException e) {
+                        actual = e.getMessage();
+                    }
+                }
+                StringBuilder message = new StringBuilder("id " + id + " in");
+                for (byte[] payload : data)
+                    message.append(" ").append(new String(payload, StandardCharsets.UTF_8));
+                assertEquals(message.toString(), expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void csvMatchesSplit() throws NetworkConversion.ConversionException {
+        NetworkConversion.Csv conversion = new NetworkConversion.Csv();
+        for (int i = 0; i < 20000; i++) {
+            byte[][] data = new byte[random.nextInt(4)][];
+            for (int j = 0; j < data.length; j++) {
+                StringBuilder sb = new StringBuilder();
+                int n = random.nextInt(30);
+                for (int k = 0; k < n; k++)
+                    sb.append(random.nextBoolean() ? randomNumber() : CSV_TOKENS[random.nextInt(CSV_TOKENS.length)]);
+                data[j] = sb.toString().getBytes(StandardCharsets.UTF_8);
+            }
+
+            conversion.prepare(data); //The same instance is reused like in a NetworkConnection
+            for (String id : CSV_IDS) {
+                StringBuilder message = new StringBuilder("id " + id + " in");
+                for (byte[] payload : data)
+                    message.append(" \"").append(new String(payload, StandardCharsets.UTF_8)).append("\"");
+                assertEquals(message.toString(), csvReference(data, id), Arrays.toString(conversion.get(id)));
+            }
+        }
+    }
+
+    @Test
+    public void outOfRangeNumberInObjectIsRejected() {
+        //org.json does not allow non-finite numbers as values of an object, even if they are not requested
+        byte[][] data = payloads("{\"x\":1e400,\"a\":1}");
+        assertEquals("Could not parse JSON.", convert(data, new String[]{"a"}, "a"));
+        assertEquals("Could not parse JSON.", convert(data, new String[]{"x"}, "x"));
+        //Within an array it is accepted
+        assertEquals("[Infinity, 2.0]", convert(payloads("{\"x\":[1e400,2]}"), new String[]{"x"}, "x"));
+    }
+
+    @Test
+    public void repeatedKeyReplacesValue() {
+        assertEquals("[2.0, 3.0]", convert(payloads("{\"a\":1,\"a\":[2,3]}"), new String[]{"a"}, "a"));
+        byte[][] data = payloads("{\"a\":{\"b\":4},\"a\":{\"c\":5}}");
+        assertEquals("[5.0]", convert(data, new String[]{"a.b", "a.c"}, "a.c"));
+        assertEquals("[]", convert(data, new String[]{"a.b", "a.c"}, "a.b"));
+        //A value that is not an object hides the ids below it
+        assertEquals("Could not find: a.b (No object)", convert(payloads("{\"a\":{\"b\":4},\"a\":5}"), new String[]{"a.b"}, "a.b"));
+    }
+
+    @Test
+    public void differentSpellingsShareColumn() {
+        byte[][] data = payloads("{\"a\":1}", "{\"a\":2,\"b\":3}");
+        assertEquals("[1.0, 2.0]", convert(data, new String[]{"a", "a."}, "a"));
+        assertEquals("[1.0, 2.0]", convert(data, new String[]{"a", "a."}, "a."));
+        assertEquals("[3.0]", convert(data, new String[]{"a", "a.", "b"}, "b"));
+    }
+}